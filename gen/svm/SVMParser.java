@@ -23,7 +23,10 @@ public class SVMParser extends Parser {
 		PUSH=1, POP=2, ADD=3, SUB=4, MULT=5, DIV=6, STOREW=7, LOADW=8, BRANCH=9, 
 		BRANCHEQ=10, BRANCHLESSEQ=11, JS=12, LOADRA=13, STORERA=14, LOADTM=15, 
 		STORETM=16, LOADFP=17, STOREFP=18, COPYFP=19, LOADHP=20, STOREHP=21, PRINT=22, 
-		HALT=23, COL=24, LABEL=25, INTEGER=26, COMMENT=27, WHITESP=28, ERR=29;
+		HALT=23, NEW=24, DUP=25, SWAP=26, POPN=27, NEG=28, MOD=29, BRANCHLESS=30, 
+		BRANCHNOTEQ=31, BRANCHGREATEREQ=32, SHIFTLEFT=33, SHIFTRIGHT=34, LOADDISPLAY=35, 
+		STOREDISPLAY=36, STOREFRAME=37, DISPATCH=38, COL=39, LABEL=40, INTEGER=41, 
+		COMMENT=42, WHITESP=43, ERR=44;
 	public static final int
 		RULE_assembly = 0, RULE_instruction = 1;
 	private static String[] makeRuleNames() {
@@ -38,7 +41,8 @@ public class SVMParser extends Parser {
 			null, "'push'", "'pop'", "'add'", "'sub'", "'mult'", "'div'", "'sw'", 
 			"'lw'", "'b'", "'beq'", "'bleq'", "'js'", "'lra'", "'sra'", "'ltm'", 
 			"'stm'", "'lfp'", "'sfp'", "'cfp'", "'lhp'", "'shp'", "'print'", "'halt'", 
-			"':'"
+			"'new'", "'dup'", "'swap'", "'popn'", "'neg'", "'mod'", "'blt'", "'bneq'", 
+			"'bgeq'", "'shl'", "'shr'", "'ldisp'", "'sdisp'", "'swf'", "'dsp'", "':'"
 		};
 	}
 	private static final String[] _LITERAL_NAMES = makeLiteralNames();
@@ -47,7 +51,10 @@ public class SVMParser extends Parser {
 			null, "PUSH", "POP", "ADD", "SUB", "MULT", "DIV", "STOREW", "LOADW", 
 			"BRANCH", "BRANCHEQ", "BRANCHLESSEQ", "JS", "LOADRA", "STORERA", "LOADTM", 
 			"STORETM", "LOADFP", "STOREFP", "COPYFP", "LOADHP", "STOREHP", "PRINT", 
-			"HALT", "COL", "LABEL", "INTEGER", "COMMENT", "WHITESP", "ERR"
+			"HALT", "NEW", "DUP", "SWAP", "POPN", "NEG", "MOD", "BRANCHLESS", "BRANCHNOTEQ", 
+			"BRANCHGREATEREQ", "SHIFTLEFT", "SHIFTRIGHT", "LOADDISPLAY", "STOREDISPLAY", 
+			"STOREFRAME", "DISPATCH", "COL", "LABEL", "INTEGER", "COMMENT", "WHITESP", 
+			"ERR"
 		};
 	}
 	private static final String[] _SYMBOLIC_NAMES = makeSymbolicNames();
@@ -102,6 +109,15 @@ public class SVMParser extends Parser {
 	private Map<String,Integer> labelDef = new HashMap<>();
 	private Map<Integer,String> labelRef = new HashMap<>();
 
+	private void emit(int word) { // the code segment grows on demand
+		if (i == code.length) code = Arrays.copyOf(code, 2 * code.length);
+		code[i++] = word;
+	}
+
+	public Map<String,Integer> getLabels() { // label -> code address, e.g. the entries of the functions
+		return Collections.unmodifiableMap(labelDef);
+	}
+
 	public SVMParser(TokenStream input) {
 		super(input);
 		_interp = new ParserATNSimulator(this,_ATN,_decisionToDFA,_sharedContextCache);
@@ -144,7 +160,7 @@ public class SVMParser extends Parser {
 			setState(7);
 			_errHandler.sync(this);
 			_la = _input.LA(1);
-			while ((((_la) & ~0x3f) == 0 && ((1L << _la) & ((1L << PUSH) | (1L << POP) | (1L << ADD) | (1L << SUB) | (1L << MULT) | (1L << DIV) | (1L << STOREW) | (1L << LOADW) | (1L << BRANCH) | (1L << BRANCHEQ) | (1L << BRANCHLESSEQ) | (1L << JS) | (1L << LOADRA) | (1L << STORERA) | (1L << LOADTM) | (1L << STORETM) | (1L << LOADFP) | (1L << STOREFP) | (1L << COPYFP) | (1L << LOADHP) | (1L << STOREHP) | (1L << PRINT) | (1L << HALT) | (1L << LABEL))) != 0)) {
+			while ((((_la) & ~0x3f) == 0 && ((1L << _la) & ((1L << PUSH) | (1L << POP) | (1L << ADD) | (1L << SUB) | (1L << MULT) | (1L << DIV) | (1L << STOREW) | (1L << LOADW) | (1L << BRANCH) | (1L << BRANCHEQ) | (1L << BRANCHLESSEQ) | (1L << JS) | (1L << LOADRA) | (1L << STORERA) | (1L << LOADTM) | (1L << STORETM) | (1L << LOADFP) | (1L << STOREFP) | (1L << COPYFP) | (1L << LOADHP) | (1L << STOREHP) | (1L << PRINT) | (1L << HALT) | (1L << NEW) | (1L << DUP) | (1L << SWAP) | (1L << POPN) | (1L << NEG) | (1L << MOD) | (1L << BRANCHLESS) | (1L << BRANCHNOTEQ) | (1L << BRANCHGREATEREQ) | (1L << SHIFTLEFT) | (1L << SHIFTRIGHT) | (1L << LOADDISPLAY) | (1L << STOREDISPLAY) | (1L << STOREFRAME) | (1L << DISPATCH) | (1L << LABEL))) != 0)) {
 				{
 				{
 				setState(4);
@@ -159,6 +175,7 @@ public class SVMParser extends Parser {
 			match(EOF);
 			 for (Integer j: labelRef.keySet()) 
 											code[j]=labelDef.get(labelRef.get(j)); 
+											code = Arrays.copyOf(code, i); // exact size
 										
 			}
 		}
@@ -190,6 +207,9 @@ public class SVMParser extends Parser {
 		public TerminalNode BRANCH() { return getToken(SVMParser.BRANCH, 0); }
 		public TerminalNode BRANCHEQ() { return getToken(SVMParser.BRANCHEQ, 0); }
 		public TerminalNode BRANCHLESSEQ() { return getToken(SVMParser.BRANCHLESSEQ, 0); }
+		public TerminalNode BRANCHLESS() { return getToken(SVMParser.BRANCHLESS, 0); }
+		public TerminalNode BRANCHNOTEQ() { return getToken(SVMParser.BRANCHNOTEQ, 0); }
+		public TerminalNode BRANCHGREATEREQ() { return getToken(SVMParser.BRANCHGREATEREQ, 0); }
 		public TerminalNode JS() { return getToken(SVMParser.JS, 0); }
 		public TerminalNode LOADRA() { return getToken(SVMParser.LOADRA, 0); }
 		public TerminalNode STORERA() { return getToken(SVMParser.STORERA, 0); }
@@ -201,6 +221,18 @@ public class SVMParser extends Parser {
 		public TerminalNode LOADHP() { return getToken(SVMParser.LOADHP, 0); }
 		public TerminalNode STOREHP() { return getToken(SVMParser.STOREHP, 0); }
 		public TerminalNode PRINT() { return getToken(SVMParser.PRINT, 0); }
+		public TerminalNode NEW() { return getToken(SVMParser.NEW, 0); }
+		public TerminalNode DUP() { return getToken(SVMParser.DUP, 0); }
+		public TerminalNode SWAP() { return getToken(SVMParser.SWAP, 0); }
+		public TerminalNode POPN() { return getToken(SVMParser.POPN, 0); }
+		public TerminalNode NEG() { return getToken(SVMParser.NEG, 0); }
+		public TerminalNode MOD() { return getToken(SVMParser.MOD, 0); }
+		public TerminalNode SHIFTLEFT() { return getToken(SVMParser.SHIFTLEFT, 0); }
+		public TerminalNode SHIFTRIGHT() { return getToken(SVMParser.SHIFTRIGHT, 0); }
+		public TerminalNode LOADDISPLAY() { return getToken(SVMParser.LOADDISPLAY, 0); }
+		public TerminalNode STOREDISPLAY() { return getToken(SVMParser.STOREDISPLAY, 0); }
+		public TerminalNode STOREFRAME() { return getToken(SVMParser.STOREFRAME, 0); }
+		public TerminalNode DISPATCH() { return getToken(SVMParser.DISPATCH, 0); }
 		public TerminalNode HALT() { return getToken(SVMParser.HALT, 0); }
 		public InstructionContext(ParserRuleContext parent, int invokingState) {
 			super(parent, invokingState);
@@ -225,7 +257,7 @@ public class SVMParser extends Parser {
 		InstructionContext _localctx = new InstructionContext(_ctx, getState());
 		enterRule(_localctx, 2, RULE_instruction);
 		try {
-			setState(69);
+			setState(109);
 			_errHandler.sync(this);
 			switch ( getInterpreter().adaptivePredict(_input,1,_ctx) ) {
 			case 1:
@@ -235,8 +267,8 @@ public class SVMParser extends Parser {
 				match(PUSH);
 				setState(14);
 				((InstructionContext)_localctx).n = match(INTEGER);
-				code[i++] = PUSH; 
-							              code[i++] = Integer.parseInt((((InstructionContext)_localctx).n!=null?((InstructionContext)_localctx).n.getText():null));
+				emit(PUSH); 
+							              emit(Integer.parseInt((((InstructionContext)_localctx).n!=null?((InstructionContext)_localctx).n.getText():null)));
 				}
 				break;
 			case 2:
@@ -246,8 +278,8 @@ public class SVMParser extends Parser {
 				match(PUSH);
 				setState(17);
 				((InstructionContext)_localctx).l = match(LABEL);
-				code[i++] = PUSH; 
-					    		             labelRef.put(i++,(((InstructionContext)_localctx).l!=null?((InstructionContext)_localctx).l.getText():null));
+				emit(PUSH); 
+					    		             labelRef.put(i,(((InstructionContext)_localctx).l!=null?((InstructionContext)_localctx).l.getText():null)); emit(0);
 				}
 				break;
 			case 3:
@@ -255,7 +287,7 @@ public class SVMParser extends Parser {
 				{
 				setState(19);
 				match(POP);
-				code[i++] = POP;
+				emit(POP);
 				}
 				break;
 			case 4:
@@ -263,7 +295,7 @@ public class SVMParser extends Parser {
 				{
 				setState(21);
 				match(ADD);
-				code[i++] = ADD;
+				emit(ADD);
 				}
 				break;
 			case 5:
@@ -271,7 +303,7 @@ public class SVMParser extends Parser {
 				{
 				setState(23);
 				match(SUB);
-				code[i++] = SUB;
+				emit(SUB);
 				}
 				break;
 			case 6:
@@ -279,7 +311,7 @@ public class SVMParser extends Parser {
 				{
 				setState(25);
 				match(MULT);
-				code[i++] = MULT;
+				emit(MULT);
 				}
 				break;
 			case 7:
@@ -287,7 +319,7 @@ public class SVMParser extends Parser {
 				{
 				setState(27);
 				match(DIV);
-				code[i++] = DIV;
+				emit(DIV);
 				}
 				break;
 			case 8:
@@ -295,7 +327,7 @@ public class SVMParser extends Parser {
 				{
 				setState(29);
 				match(STOREW);
-				code[i++] = STOREW;
+				emit(STOREW);
 				}
 				break;
 			case 9:
@@ -303,7 +335,7 @@ public class SVMParser extends Parser {
 				{
 				setState(31);
 				match(LOADW);
-				code[i++] = LOADW;
+				emit(LOADW);
 				}
 				break;
 			case 10:
@@ -323,8 +355,8 @@ public class SVMParser extends Parser {
 				match(BRANCH);
 				setState(37);
 				((InstructionContext)_localctx).l = match(LABEL);
-				code[i++] = BRANCH;
-				                       labelRef.put(i++,(((InstructionContext)_localctx).l!=null?((InstructionContext)_localctx).l.getText():null));
+				emit(BRANCH);
+				                       labelRef.put(i,(((InstructionContext)_localctx).l!=null?((InstructionContext)_localctx).l.getText():null)); emit(0);
 				}
 				break;
 			case 12:
@@ -334,8 +366,8 @@ public class SVMParser extends Parser {
 				match(BRANCHEQ);
 				setState(40);
 				((InstructionContext)_localctx).l = match(LABEL);
-				code[i++] = BRANCHEQ;
-				                        labelRef.put(i++,(((InstructionContext)_localctx).l!=null?((InstructionContext)_localctx).l.getText():null));
+				emit(BRANCHEQ);
+				                        labelRef.put(i,(((InstructionContext)_localctx).l!=null?((InstructionContext)_localctx).l.getText():null)); emit(0);
 				}
 				break;
 			case 13:
@@ -345,104 +377,254 @@ public class SVMParser extends Parser {
 				match(BRANCHLESSEQ);
 				setState(43);
 				((InstructionContext)_localctx).l = match(LABEL);
-				code[i++] = BRANCHLESSEQ;
-				                          labelRef.put(i++,(((InstructionContext)_localctx).l!=null?((InstructionContext)_localctx).l.getText():null));
+				emit(BRANCHLESSEQ);
+				                          labelRef.put(i,(((InstructionContext)_localctx).l!=null?((InstructionContext)_localctx).l.getText():null)); emit(0);
 				}
 				break;
 			case 14:
 				enterOuterAlt(_localctx, 14);
 				{
 				setState(45);
-				match(JS);
-				code[i++] = JS;
+				match(BRANCHLESS);
+				setState(46);
+				((InstructionContext)_localctx).l = match(LABEL);
+				emit(BRANCHLESS);
+				                        labelRef.put(i,(((InstructionContext)_localctx).l!=null?((InstructionContext)_localctx).l.getText():null)); emit(0);
 				}
 				break;
 			case 15:
 				enterOuterAlt(_localctx, 15);
 				{
-				setState(47);
-				match(LOADRA);
-				code[i++] = LOADRA;
+				setState(48);
+				match(BRANCHNOTEQ);
+				setState(49);
+				((InstructionContext)_localctx).l = match(LABEL);
+				emit(BRANCHNOTEQ);
+				                         labelRef.put(i,(((InstructionContext)_localctx).l!=null?((InstructionContext)_localctx).l.getText():null)); emit(0);
 				}
 				break;
 			case 16:
 				enterOuterAlt(_localctx, 16);
 				{
-				setState(49);
-				match(STORERA);
-				code[i++] = STORERA;
+				setState(51);
+				match(BRANCHGREATEREQ);
+				setState(52);
+				((InstructionContext)_localctx).l = match(LABEL);
+				emit(BRANCHGREATEREQ);
+				                             labelRef.put(i,(((InstructionContext)_localctx).l!=null?((InstructionContext)_localctx).l.getText():null)); emit(0);
 				}
 				break;
 			case 17:
 				enterOuterAlt(_localctx, 17);
 				{
-				setState(51);
-				match(LOADTM);
-				code[i++] = LOADTM;
+				setState(54);
+				match(JS);
+				emit(JS);
 				}
 				break;
 			case 18:
 				enterOuterAlt(_localctx, 18);
 				{
-				setState(53);
-				match(STORETM);
-				code[i++] = STORETM;
+				setState(56);
+				match(LOADRA);
+				emit(LOADRA);
 				}
 				break;
 			case 19:
 				enterOuterAlt(_localctx, 19);
 				{
-				setState(55);
-				match(LOADFP);
-				code[i++] = LOADFP;
+				setState(58);
+				match(STORERA);
+				emit(STORERA);
 				}
 				break;
 			case 20:
 				enterOuterAlt(_localctx, 20);
 				{
-				setState(57);
-				match(STOREFP);
-				code[i++] = STOREFP;
+				setState(60);
+				match(LOADTM);
+				emit(LOADTM);
 				}
 				break;
 			case 21:
 				enterOuterAlt(_localctx, 21);
 				{
-				setState(59);
-				match(COPYFP);
-				code[i++] = COPYFP;
+				setState(62);
+				match(STORETM);
+				emit(STORETM);
 				}
 				break;
 			case 22:
 				enterOuterAlt(_localctx, 22);
 				{
-				setState(61);
-				match(LOADHP);
-				code[i++] = LOADHP;
+				setState(64);
+				match(LOADFP);
+				emit(LOADFP);
 				}
 				break;
 			case 23:
 				enterOuterAlt(_localctx, 23);
 				{
-				setState(63);
-				match(STOREHP);
-				code[i++] = STOREHP;
+				setState(66);
+				match(STOREFP);
+				emit(STOREFP);
 				}
 				break;
 			case 24:
 				enterOuterAlt(_localctx, 24);
 				{
-				setState(65);
-				match(PRINT);
-				code[i++] = PRINT;
+				setState(68);
+				match(COPYFP);
+				emit(COPYFP);
 				}
 				break;
 			case 25:
 				enterOuterAlt(_localctx, 25);
 				{
-				setState(67);
+				setState(70);
+				match(LOADHP);
+				emit(LOADHP);
+				}
+				break;
+			case 26:
+				enterOuterAlt(_localctx, 26);
+				{
+				setState(72);
+				match(STOREHP);
+				emit(STOREHP);
+				}
+				break;
+			case 27:
+				enterOuterAlt(_localctx, 27);
+				{
+				setState(74);
+				match(PRINT);
+				emit(PRINT);
+				}
+				break;
+			case 28:
+				enterOuterAlt(_localctx, 28);
+				{
+				setState(76);
+				match(NEW);
+				emit(NEW);
+				}
+				break;
+			case 29:
+				enterOuterAlt(_localctx, 29);
+				{
+				setState(78);
+				match(DUP);
+				emit(DUP);
+				}
+				break;
+			case 30:
+				enterOuterAlt(_localctx, 30);
+				{
+				setState(80);
+				match(SWAP);
+				emit(SWAP);
+				}
+				break;
+			case 31:
+				enterOuterAlt(_localctx, 31);
+				{
+				setState(82);
+				match(POPN);
+				setState(83);
+				((InstructionContext)_localctx).n = match(INTEGER);
+				emit(POPN);
+					                     emit(Integer.parseInt((((InstructionContext)_localctx).n!=null?((InstructionContext)_localctx).n.getText():null)));
+				}
+				break;
+			case 32:
+				enterOuterAlt(_localctx, 32);
+				{
+				setState(85);
+				match(NEG);
+				emit(NEG);
+				}
+				break;
+			case 33:
+				enterOuterAlt(_localctx, 33);
+				{
+				setState(87);
+				match(MOD);
+				emit(MOD);
+				}
+				break;
+			case 34:
+				enterOuterAlt(_localctx, 34);
+				{
+				setState(89);
+				match(SHIFTLEFT);
+				setState(90);
+				((InstructionContext)_localctx).n = match(INTEGER);
+				emit(SHIFTLEFT);
+					                         emit(Integer.parseInt((((InstructionContext)_localctx).n!=null?((InstructionContext)_localctx).n.getText():null)));
+				}
+				break;
+			case 35:
+				enterOuterAlt(_localctx, 35);
+				{
+				setState(92);
+				match(SHIFTRIGHT);
+				setState(93);
+				((InstructionContext)_localctx).n = match(INTEGER);
+				emit(SHIFTRIGHT);
+					                          emit(Integer.parseInt((((InstructionContext)_localctx).n!=null?((InstructionContext)_localctx).n.getText():null)));
+				}
+				break;
+			case 36:
+				enterOuterAlt(_localctx, 36);
+				{
+				setState(95);
+				match(LOADDISPLAY);
+				setState(96);
+				((InstructionContext)_localctx).n = match(INTEGER);
+				emit(LOADDISPLAY);
+					                           emit(Integer.parseInt((((InstructionContext)_localctx).n!=null?((InstructionContext)_localctx).n.getText():null)));
+				}
+				break;
+			case 37:
+				enterOuterAlt(_localctx, 37);
+				{
+				setState(98);
+				match(STOREDISPLAY);
+				setState(99);
+				((InstructionContext)_localctx).n = match(INTEGER);
+				emit(STOREDISPLAY);
+					                            emit(Integer.parseInt((((InstructionContext)_localctx).n!=null?((InstructionContext)_localctx).n.getText():null)));
+				}
+				break;
+			case 38:
+				enterOuterAlt(_localctx, 38);
+				{
+				setState(101);
+				match(STOREFRAME);
+				setState(102);
+				((InstructionContext)_localctx).n = match(INTEGER);
+				emit(STOREFRAME);
+					                          emit(Integer.parseInt((((InstructionContext)_localctx).n!=null?((InstructionContext)_localctx).n.getText():null)));
+				}
+				break;
+			case 39:
+				enterOuterAlt(_localctx, 39);
+				{
+				setState(104);
+				match(DISPATCH);
+				setState(105);
+				((InstructionContext)_localctx).n = match(INTEGER);
+				emit(DISPATCH);
+					                        emit(Integer.parseInt((((InstructionContext)_localctx).n!=null?((InstructionContext)_localctx).n.getText():null)));
+				}
+				break;
+			case 40:
+				enterOuterAlt(_localctx, 40);
+				{
+				setState(107);
 				match(HALT);
-				code[i++] = HALT;
+				emit(HALT);
 				}
 				break;
 			}
@@ -459,9 +641,16 @@ public class SVMParser extends Parser {
 	}
 
 	public static final String _serializedATN =
-		"\u0004\u0001\u001dH\u0002\u0000\u0007\u0000\u0002\u0001\u0007\u0001\u0001"+
-		"\u0000\u0005\u0000\u0006\b\u0000\n\u0000\f\u0000\t\t\u0000\u0001\u0000"+
-		"\u0001\u0000\u0001\u0000\u0001\u0001\u0001\u0001\u0001\u0001\u0001\u0001"+
+		"\u0004\u0001,p\u0002\u0000\u0007\u0000\u0002\u0001\u0007\u0001\u0001\u0000"+
+		"\u0005\u0000\u0006\b\u0000\n\u0000\f\u0000\t\t\u0000\u0001\u0000\u0001"+
+		"\u0000\u0001\u0000\u0001\u0001\u0001\u0001\u0001\u0001\u0001\u0001\u0001"+
+		"\u0001\u0001\u0001\u0001\u0001\u0001\u0001\u0001\u0001\u0001\u0001\u0001"+
+		"\u0001\u0001\u0001\u0001\u0001\u0001\u0001\u0001\u0001\u0001\u0001\u0001"+
+		"\u0001\u0001\u0001\u0001\u0001\u0001\u0001\u0001\u0001\u0001\u0001\u0001"+
+		"\u0001\u0001\u0001\u0001\u0001\u0001\u0001\u0001\u0001\u0001\u0001\u0001"+
+		"\u0001\u0001\u0001\u0001\u0001\u0001\u0001\u0001\u0001\u0001\u0001\u0001"+
+		"\u0001\u0001\u0001\u0001\u0001\u0001\u0001\u0001\u0001\u0001\u0001\u0001"+
+		"\u0001\u0001\u0001\u0001\u0001\u0001\u0001\u0001\u0001\u0001\u0001\u0001"+
 		"\u0001\u0001\u0001\u0001\u0001\u0001\u0001\u0001\u0001\u0001\u0001\u0001"+
 		"\u0001\u0001\u0001\u0001\u0001\u0001\u0001\u0001\u0001\u0001\u0001\u0001"+
 		"\u0001\u0001\u0001\u0001\u0001\u0001\u0001\u0001\u0001\u0001\u0001\u0001"+
@@ -470,48 +659,67 @@ public class SVMParser extends Parser {
 		"\u0001\u0001\u0001\u0001\u0001\u0001\u0001\u0001\u0001\u0001\u0001\u0001"+
 		"\u0001\u0001\u0001\u0001\u0001\u0001\u0001\u0001\u0001\u0001\u0001\u0001"+
 		"\u0001\u0001\u0001\u0001\u0001\u0001\u0001\u0001\u0001\u0001\u0001\u0001"+
-		"\u0001\u0001\u0001\u0001\u0001\u0001\u0001\u0001\u0003\u0001F\b\u0001"+
-		"\u0001\u0001\u0000\u0000\u0002\u0000\u0002\u0000\u0000^\u0000\u0007\u0001"+
-		"\u0000\u0000\u0000\u0002E\u0001\u0000\u0000\u0000\u0004\u0006\u0003\u0002"+
-		"\u0001\u0000\u0005\u0004\u0001\u0000\u0000\u0000\u0006\t\u0001\u0000\u0000"+
-		"\u0000\u0007\u0005\u0001\u0000\u0000\u0000\u0007\b\u0001\u0000\u0000\u0000"+
-		"\b\n\u0001\u0000\u0000\u0000\t\u0007\u0001\u0000\u0000\u0000\n\u000b\u0005"+
-		"\u0000\u0000\u0001\u000b\f\u0006\u0000\uffff\uffff\u0000\f\u0001\u0001"+
-		"\u0000\u0000\u0000\r\u000e\u0005\u0001\u0000\u0000\u000e\u000f\u0005\u001a"+
-		"\u0000\u0000\u000fF\u0006\u0001\uffff\uffff\u0000\u0010\u0011\u0005\u0001"+
-		"\u0000\u0000\u0011\u0012\u0005\u0019\u0000\u0000\u0012F\u0006\u0001\uffff"+
-		"\uffff\u0000\u0013\u0014\u0005\u0002\u0000\u0000\u0014F\u0006\u0001\uffff"+
-		"\uffff\u0000\u0015\u0016\u0005\u0003\u0000\u0000\u0016F\u0006\u0001\uffff"+
-		"\uffff\u0000\u0017\u0018\u0005\u0004\u0000\u0000\u0018F\u0006\u0001\uffff"+
-		"\uffff\u0000\u0019\u001a\u0005\u0005\u0000\u0000\u001aF\u0006\u0001\uffff"+
-		"\uffff\u0000\u001b\u001c\u0005\u0006\u0000\u0000\u001cF\u0006\u0001\uffff"+
-		"\uffff\u0000\u001d\u001e\u0005\u0007\u0000\u0000\u001eF\u0006\u0001\uffff"+
-		"\uffff\u0000\u001f \u0005\b\u0000\u0000 F\u0006\u0001\uffff\uffff\u0000"+
-		"!\"\u0005\u0019\u0000\u0000\"#\u0005\u0018\u0000\u0000#F\u0006\u0001\uffff"+
-		"\uffff\u0000$%\u0005\t\u0000\u0000%&\u0005\u0019\u0000\u0000&F\u0006\u0001"+
-		"\uffff\uffff\u0000\'(\u0005\n\u0000\u0000()\u0005\u0019\u0000\u0000)F"+
-		"\u0006\u0001\uffff\uffff\u0000*+\u0005\u000b\u0000\u0000+,\u0005\u0019"+
-		"\u0000\u0000,F\u0006\u0001\uffff\uffff\u0000-.\u0005\f\u0000\u0000.F\u0006"+
-		"\u0001\uffff\uffff\u0000/0\u0005\r\u0000\u00000F\u0006\u0001\uffff\uffff"+
-		"\u000012\u0005\u000e\u0000\u00002F\u0006\u0001\uffff\uffff\u000034\u0005"+
-		"\u000f\u0000\u00004F\u0006\u0001\uffff\uffff\u000056\u0005\u0010\u0000"+
-		"\u00006F\u0006\u0001\uffff\uffff\u000078\u0005\u0011\u0000\u00008F\u0006"+
-		"\u0001\uffff\uffff\u00009:\u0005\u0012\u0000\u0000:F\u0006\u0001\uffff"+
-		"\uffff\u0000;<\u0005\u0013\u0000\u0000<F\u0006\u0001\uffff\uffff\u0000"+
-		"=>\u0005\u0014\u0000\u0000>F\u0006\u0001\uffff\uffff\u0000?@\u0005\u0015"+
-		"\u0000\u0000@F\u0006\u0001\uffff\uffff\u0000AB\u0005\u0016\u0000\u0000"+
-		"BF\u0006\u0001\uffff\uffff\u0000CD\u0005\u0017\u0000\u0000DF\u0006\u0001"+
-		"\uffff\uffff\u0000E\r\u0001\u0000\u0000\u0000E\u0010\u0001\u0000\u0000"+
-		"\u0000E\u0013\u0001\u0000\u0000\u0000E\u0015\u0001\u0000\u0000\u0000E"+
-		"\u0017\u0001\u0000\u0000\u0000E\u0019\u0001\u0000\u0000\u0000E\u001b\u0001"+
-		"\u0000\u0000\u0000E\u001d\u0001\u0000\u0000\u0000E\u001f\u0001\u0000\u0000"+
-		"\u0000E!\u0001\u0000\u0000\u0000E$\u0001\u0000\u0000\u0000E\'\u0001\u0000"+
-		"\u0000\u0000E*\u0001\u0000\u0000\u0000E-\u0001\u0000\u0000\u0000E/\u0001"+
-		"\u0000\u0000\u0000E1\u0001\u0000\u0000\u0000E3\u0001\u0000\u0000\u0000"+
-		"E5\u0001\u0000\u0000\u0000E7\u0001\u0000\u0000\u0000E9\u0001\u0000\u0000"+
-		"\u0000E;\u0001\u0000\u0000\u0000E=\u0001\u0000\u0000\u0000E?\u0001\u0000"+
-		"\u0000\u0000EA\u0001\u0000\u0000\u0000EC\u0001\u0000\u0000\u0000F\u0003"+
-		"\u0001\u0000\u0000\u0000\u0002\u0007E";
+		"\u0001\u0001\u0001\u0003\u0001n\b\u0001\u0001\u0001\u0000\u0000\u0002"+
+		"\u0000\u0002\u0000\u0000\u0095\u0000\u0007\u0001\u0000\u0000\u0000\u0002"+
+		"m\u0001\u0000\u0000\u0000\u0004\u0006\u0003\u0002\u0001\u0000\u0005\u0004"+
+		"\u0001\u0000\u0000\u0000\u0006\t\u0001\u0000\u0000\u0000\u0007\u0005\u0001"+
+		"\u0000\u0000\u0000\u0007\b\u0001\u0000\u0000\u0000\b\n\u0001\u0000\u0000"+
+		"\u0000\t\u0007\u0001\u0000\u0000\u0000\n\u000b\u0005\u0000\u0000\u0001"+
+		"\u000b\f\u0006\u0000\uffff\uffff\u0000\f\u0001\u0001\u0000\u0000\u0000"+
+		"\r\u000e\u0005\u0001\u0000\u0000\u000e\u000f\u0005)\u0000\u0000\u000f"+
+		"n\u0006\u0001\uffff\uffff\u0000\u0010\u0011\u0005\u0001\u0000\u0000\u0011"+
+		"\u0012\u0005(\u0000\u0000\u0012n\u0006\u0001\uffff\uffff\u0000\u0013\u0014"+
+		"\u0005\u0002\u0000\u0000\u0014n\u0006\u0001\uffff\uffff\u0000\u0015\u0016"+
+		"\u0005\u0003\u0000\u0000\u0016n\u0006\u0001\uffff\uffff\u0000\u0017\u0018"+
+		"\u0005\u0004\u0000\u0000\u0018n\u0006\u0001\uffff\uffff\u0000\u0019\u001a"+
+		"\u0005\u0005\u0000\u0000\u001an\u0006\u0001\uffff\uffff\u0000\u001b\u001c"+
+		"\u0005\u0006\u0000\u0000\u001cn\u0006\u0001\uffff\uffff\u0000\u001d\u001e"+
+		"\u0005\u0007\u0000\u0000\u001en\u0006\u0001\uffff\uffff\u0000\u001f \u0005"+
+		"\b\u0000\u0000 n\u0006\u0001\uffff\uffff\u0000!\"\u0005(\u0000\u0000\""+
+		"#\u0005\'\u0000\u0000#n\u0006\u0001\uffff\uffff\u0000$%\u0005\t\u0000"+
+		"\u0000%&\u0005(\u0000\u0000&n\u0006\u0001\uffff\uffff\u0000\'(\u0005\n"+
+		"\u0000\u0000()\u0005(\u0000\u0000)n\u0006\u0001\uffff\uffff\u0000*+\u0005"+
+		"\u000b\u0000\u0000+,\u0005(\u0000\u0000,n\u0006\u0001\uffff\uffff\u0000"+
+		"-.\u0005\u001e\u0000\u0000./\u0005(\u0000\u0000/n\u0006\u0001\uffff\uffff"+
+		"\u000001\u0005\u001f\u0000\u000012\u0005(\u0000\u00002n\u0006\u0001\uffff"+
+		"\uffff\u000034\u0005 \u0000\u000045\u0005(\u0000\u00005n\u0006\u0001\uffff"+
+		"\uffff\u000067\u0005\f\u0000\u00007n\u0006\u0001\uffff\uffff\u000089\u0005"+
+		"\r\u0000\u00009n\u0006\u0001\uffff\uffff\u0000:;\u0005\u000e\u0000\u0000"+
+		";n\u0006\u0001\uffff\uffff\u0000<=\u0005\u000f\u0000\u0000=n\u0006\u0001"+
+		"\uffff\uffff\u0000>?\u0005\u0010\u0000\u0000?n\u0006\u0001\uffff\uffff"+
+		"\u0000@A\u0005\u0011\u0000\u0000An\u0006\u0001\uffff\uffff\u0000BC\u0005"+
+		"\u0012\u0000\u0000Cn\u0006\u0001\uffff\uffff\u0000DE\u0005\u0013\u0000"+
+		"\u0000En\u0006\u0001\uffff\uffff\u0000FG\u0005\u0014\u0000\u0000Gn\u0006"+
+		"\u0001\uffff\uffff\u0000HI\u0005\u0015\u0000\u0000In\u0006\u0001\uffff"+
+		"\uffff\u0000JK\u0005\u0016\u0000\u0000Kn\u0006\u0001\uffff\uffff\u0000"+
+		"LM\u0005\u0018\u0000\u0000Mn\u0006\u0001\uffff\uffff\u0000NO\u0005\u0019"+
+		"\u0000\u0000On\u0006\u0001\uffff\uffff\u0000PQ\u0005\u001a\u0000\u0000"+
+		"Qn\u0006\u0001\uffff\uffff\u0000RS\u0005\u001b\u0000\u0000ST\u0005)\u0000"+
+		"\u0000Tn\u0006\u0001\uffff\uffff\u0000UV\u0005\u001c\u0000\u0000Vn\u0006"+
+		"\u0001\uffff\uffff\u0000WX\u0005\u001d\u0000\u0000Xn\u0006\u0001\uffff"+
+		"\uffff\u0000YZ\u0005!\u0000\u0000Z[\u0005)\u0000\u0000[n\u0006\u0001\uffff"+
+		"\uffff\u0000\\]\u0005\"\u0000\u0000]^\u0005)\u0000\u0000^n\u0006\u0001"+
+		"\uffff\uffff\u0000_`\u0005#\u0000\u0000`a\u0005)\u0000\u0000an\u0006\u0001"+
+		"\uffff\uffff\u0000bc\u0005$\u0000\u0000cd\u0005)\u0000\u0000dn\u0006\u0001"+
+		"\uffff\uffff\u0000ef\u0005%\u0000\u0000fg\u0005)\u0000\u0000gn\u0006\u0001"+
+		"\uffff\uffff\u0000hi\u0005&\u0000\u0000ij\u0005)\u0000\u0000jn\u0006\u0001"+
+		"\uffff\uffff\u0000kl\u0005\u0017\u0000\u0000ln\u0006\u0001\uffff\uffff"+
+		"\u0000m\r\u0001\u0000\u0000\u0000m\u0010\u0001\u0000\u0000\u0000m\u0013"+
+		"\u0001\u0000\u0000\u0000m\u0015\u0001\u0000\u0000\u0000m\u0017\u0001\u0000"+
+		"\u0000\u0000m\u0019\u0001\u0000\u0000\u0000m\u001b\u0001\u0000\u0000\u0000"+
+		"m\u001d\u0001\u0000\u0000\u0000m\u001f\u0001\u0000\u0000\u0000m!\u0001"+
+		"\u0000\u0000\u0000m$\u0001\u0000\u0000\u0000m\'\u0001\u0000\u0000\u0000"+
+		"m*\u0001\u0000\u0000\u0000m-\u0001\u0000\u0000\u0000m0\u0001\u0000\u0000"+
+		"\u0000m3\u0001\u0000\u0000\u0000m6\u0001\u0000\u0000\u0000m8\u0001\u0000"+
+		"\u0000\u0000m:\u0001\u0000\u0000\u0000m<\u0001\u0000\u0000\u0000m>\u0001"+
+		"\u0000\u0000\u0000m@\u0001\u0000\u0000\u0000mB\u0001\u0000\u0000\u0000"+
+		"mD\u0001\u0000\u0000\u0000mF\u0001\u0000\u0000\u0000mH\u0001\u0000\u0000"+
+		"\u0000mJ\u0001\u0000\u0000\u0000mL\u0001\u0000\u0000\u0000mN\u0001\u0000"+
+		"\u0000\u0000mP\u0001\u0000\u0000\u0000mR\u0001\u0000\u0000\u0000mU\u0001"+
+		"\u0000\u0000\u0000mW\u0001\u0000\u0000\u0000mY\u0001\u0000\u0000\u0000"+
+		"m\\\u0001\u0000\u0000\u0000m_\u0001\u0000\u0000\u0000mb\u0001\u0000\u0000"+
+		"\u0000me\u0001\u0000\u0000\u0000mh\u0001\u0000\u0000\u0000mk\u0001\u0000"+
+		"\u0000\u0000n\u0003\u0001\u0000\u0000\u0000\u0002\u0007m";
 	public static final ATN _ATN =
 		new ATNDeserializer().deserialize(_serializedATN.toCharArray());
 	static {
@@ -1,92 +1,75 @@
 push 0
-push 5
-push 2
-add
-push function1
+push 7
+push function0
 lfp
 push 1
 lfp
-stm
-ltm
-ltm
+dup
 push -3
 add
 lw
 js
 push 1
-beq label2
+beq label4
 push 10
-b label3
-label2:
+b label5
+label4:
 lfp
 push -2
 add
 lw
-label3:
+label5:
 print
 halt
 
-function0:
+function1:
 cfp
 lra
 lfp
 push 2
 add
 lw
-lfp
 push 0
 lfp
 lw
 lw
-stm
-ltm
-ltm
-push -3
+lfp
+push -1
 add
 lw
-js
-stm
-pop
 sra
-pop
-pop
-pop
-sfp
-ltm
-lra
-js
+swf 1
+swf 2
+popn 3
 
-function1:
+function0:
 cfp
 lra
-push function0
+push function1
 lfp
 push 1
 add
 lw
 push 1
-beq label0
+beq label2
 push 0
-b label1
-label0:
+b label3
+label2:
 lfp
 push 3
 push 2
 lfp
-stm
-ltm
-ltm
+dup
 push -2
 add
 lw
 js
-label1:
+label3:
 stm
 pop
 sra
-pop
-pop
+popn 2
 sfp
 ltm
 lra
-js
\ No newline at end of file
+js
@@ -1,23 +1,9 @@
 push 0
 lhp
 push function0
-lhp
-sw
-lhp
-push 1
-add
-shp
-push function1
-lhp
-sw
-lhp
-push 1
-add
-shp
+push function2
 push function3
-push function4
-push function6
-push function7
+push function5
 push 2
 push 1
 push 4
@@ -25,138 +11,24 @@ push 3
 push 2
 push 5
 push -1
-lhp
-sw
-lhp
-push 1
-add
-shp
-lhp
-sw
-lhp
-push 1
-add
-shp
-push 10000
-push -2
-add
-lhp
-sw
-lhp
-lhp
-push 1
-add
-shp
-lhp
-sw
-lhp
-push 1
-add
-shp
-lhp
-sw
-lhp
-push 1
-add
-shp
-push 10000
-push -2
-add
-lhp
-sw
-lhp
-lhp
-push 1
-add
-shp
-lhp
-sw
-lhp
-push 1
-add
-shp
-lhp
-sw
-lhp
-push 1
-add
-shp
-push 10000
-push -2
-add
-lhp
-sw
-lhp
-lhp
-push 1
-add
-shp
-lhp
-sw
-lhp
-push 1
-add
-shp
-lhp
-sw
-lhp
-push 1
-add
-shp
-push 10000
-push -2
-add
-lhp
-sw
-lhp
-lhp
-push 1
-add
-shp
-lhp
-sw
-lhp
-push 1
-add
-shp
-lhp
-sw
-lhp
-push 1
-add
-shp
-push 10000
-push -2
-add
-lhp
-sw
-lhp
-lhp
-push 1
-add
-shp
-lhp
-sw
-lhp
-push 1
-add
-shp
-lhp
-sw
-lhp
-push 1
-add
-shp
-push 10000
-push -2
-add
-lhp
-sw
-lhp
-lhp
-push 1
-add
-shp
+push 0
+push 131074
+new
+push 0
+push 131074
+new
+push 0
+push 131074
+new
+push 0
+push 131074
+new
+push 0
+push 131074
+new
+push 0
+push 131074
+new
 lfp
 lfp
 lfp
@@ -164,59 +36,23 @@ push -7
 add
 lw
 lfp
-stm
-ltm
-ltm
+dup
 push -6
 add
 lw
 js
 lfp
-stm
-ltm
-ltm
+dup
 push -3
 add
 lw
 js
 halt
 
-function0:
-cfp
-lra
-lfp
-lw
-push -1
-add
-lw
-stm
-sra
-pop
-sfp
-ltm
-lra
-js
-
 function1:
 cfp
 lra
 lfp
-lw
-push -2
-add
-lw
-stm
-sra
-pop
-sfp
-ltm
-lra
-js
-
-function2:
-cfp
-lra
-lfp
 push 2
 add
 lw
@@ -224,118 +60,71 @@ lfp
 push 1
 add
 lw
-lhp
-sw
-lhp
-push 1
-add
-shp
-lhp
-sw
-lhp
-push 1
-add
-shp
-push 10000
-push -2
-add
-lhp
-sw
-lhp
-lhp
-push 1
-add
-shp
+push 0
+push 131074
+new
 stm
 sra
-pop
-pop
-pop
+popn 3
 sfp
 ltm
 lra
 js
 
-function3:
+function0:
 cfp
 lra
-push function2
+push function1
 lfp
 push 1
 add
 lw
 push -1
 beq label2
-push 0
-b label3
-label2:
-push 1
-label3:
-push 1
-beq label0
-lfp
 lfp
 lfp
 push 1
 add
 lw
-stm
-ltm
-ltm
-lw
-lw
-push 0
+push -1
 add
 lw
-js
 print
 lfp
 lfp
-lfp
 push 1
 add
 lw
-stm
-ltm
-ltm
-lw
-lw
-push 1
+push -2
 add
 lw
-js
 lfp
 lw
-stm
-ltm
-ltm
+dup
 push -3
 add
 lw
 js
 lfp
-stm
-ltm
-ltm
+dup
 push -2
 add
 lw
 js
-b label1
-label0:
+b label3
+label2:
 push -1
-label1:
+label3:
 stm
 pop
 sra
-pop
-pop
+popn 2
 sfp
 ltm
 lra
 js
 
-function4:
+function2:
 cfp
 lra
 lfp
@@ -343,96 +132,52 @@ push 1
 add
 lw
 push -1
-beq label6
-push 0
-b label7
-label6:
-push 1
-label7:
-push 1
-beq label4
-lfp
+beq label5
 lfp
 push 1
 add
 lw
-stm
-ltm
-ltm
-lw
-lw
-push 0
+push -1
 add
 lw
-js
 lfp
 lfp
 push 2
 add
 lw
 lfp
-lfp
 push 1
 add
 lw
-stm
-ltm
-ltm
-lw
-lw
-push 1
+push -2
 add
 lw
-js
 lfp
 lw
-stm
-ltm
-ltm
+dup
 push -4
 add
 lw
 js
-lhp
-sw
-lhp
-push 1
-add
-shp
-lhp
-sw
-lhp
-push 1
-add
-shp
-push 10000
-push -2
-add
-lhp
-sw
-lhp
-lhp
-push 1
-add
-shp
-b label5
-label4:
+push 0
+push 131074
+new
+b label6
+label5:
 lfp
 push 2
 add
 lw
-label5:
+label6:
 stm
 sra
-pop
-pop
-pop
+popn 3
 sfp
 ltm
 lra
 js
 
-function5:
+function4:
 cfp
 lra
 lfp
@@ -441,87 +186,69 @@ push 3
 add
 lw
 push 1
-beq label8
+beq label9
 lfp
 push 1
 add
 lw
-push 0
-beq label10
-push 0
-b label11
-label10:
 push 1
+beq label11
+push 1
+b label10
 label11:
-b label9
-label8:
+push 0
+b label10
+label9:
 lfp
 push 1
 add
 lw
-label9:
+label10:
 stm
 sra
-pop
-pop
+popn 2
 sfp
 ltm
 lra
 js
 
-function6:
+function3:
 cfp
 lra
-push function5
+label7:
+push function4
 lfp
 push 1
 add
 lw
 push -1
-beq label14
-push 0
-b label15
-label14:
-push 1
-label15:
-push 1
-beq label12
-lfp
+beq label13
 lfp
 lfp
 push 1
 add
 lw
-stm
-ltm
-ltm
-lw
-lw
-push 0
+push -1
 add
 lw
-js
 lfp
 push 2
 add
 lw
-bleq label18
+bleq label17
 push 0
-b label19
-label18:
+b label18
+label17:
 push 1
-label19:
+label18:
 lfp
-stm
-ltm
-ltm
+dup
 push -2
 add
 lw
 js
 push 1
-beq label16
-lfp
+beq label15
 lfp
 push 3
 add
@@ -531,44 +258,25 @@ push 2
 add
 lw
 lfp
-lfp
-push 1
-add
-lw
-stm
-ltm
-ltm
-lw
-lw
 push 1
 add
 lw
-js
-lfp
-lw
-stm
-ltm
-ltm
-push -5
+push -2
 add
 lw
-js
-b label17
-label16:
-lfp
+swf 1
+swf 2
+swf 3
+pop
+b label7
+label15:
 lfp
 push 1
 add
 lw
-stm
-ltm
-ltm
-lw
-lw
-push 0
+push -1
 add
 lw
-js
 lfp
 lfp
 push 3
@@ -579,68 +287,36 @@ push 2
 add
 lw
 lfp
-lfp
 push 1
 add
 lw
-stm
-ltm
-ltm
-lw
-lw
-push 1
+push -2
 add
 lw
-js
 lfp
 lw
-stm
-ltm
-ltm
+dup
 push -5
 add
 lw
 js
-lhp
-sw
-lhp
-push 1
-add
-shp
-lhp
-sw
-lhp
-push 1
-add
-shp
-push 10000
-push -2
-add
-lhp
-sw
-lhp
-lhp
-push 1
-add
-shp
-label17:
-b label13
-label12:
-push -1
+push 0
+push 131074
+new
+b label14
 label13:
+push -1
+label14:
 stm
 pop
 sra
-pop
-pop
-pop
-pop
+popn 4
 sfp
 ltm
 lra
 js
 
-function7:
+function5:
 cfp
 lra
 lfp
@@ -648,28 +324,14 @@ push 1
 add
 lw
 push -1
-beq label22
-push 0
-b label23
-label22:
-push 1
-label23:
-push 1
 beq label20
 lfp
-lfp
 push 1
 add
 lw
-stm
-ltm
-ltm
-lw
-lw
-push 0
+push -1
 add
 lw
-js
 b label21
 label20:
 push 0
@@ -679,15 +341,7 @@ push 1
 add
 lw
 push -1
-beq label26
-push 0
-b label27
-label26:
-push 1
-label27:
-push 1
-beq label24
-lfp
+beq label22
 lfp
 push -2
 add
@@ -700,59 +354,29 @@ push -2
 add
 lw
 lfp
-lfp
 push 1
 add
 lw
-stm
-ltm
-ltm
-lw
-lw
-push 1
+push -2
 add
 lw
-js
 lfp
 lw
-stm
-ltm
-ltm
+dup
 push -5
 add
 lw
 js
 lfp
 lw
-stm
-ltm
-ltm
+dup
 push -6
 add
 lw
 js
-lhp
-sw
-lhp
-push 1
-add
-shp
-lhp
-sw
-lhp
-push 1
-add
-shp
-push 10000
-push -2
-add
-lhp
-sw
-lhp
-lhp
-push 1
-add
-shp
+push 0
+push 131074
+new
 lfp
 lfp
 push 1
@@ -761,56 +385,45 @@ push -2
 add
 lw
 lfp
-lfp
 push 1
 add
 lw
-stm
-ltm
-ltm
-lw
-lw
-push 1
+push -2
 add
 lw
-js
 lfp
 lw
-stm
-ltm
-ltm
+dup
 push -5
 add
 lw
 js
 lfp
 lw
-stm
-ltm
-ltm
+dup
 push -6
 add
 lw
 js
 lfp
 lw
-stm
-ltm
-ltm
-push -4
+lfp
+push -1
 add
 lw
-js
-b label25
-label24:
+sra
+swf -1
+swf 0
+swf 1
+pop
+b function2
+label22:
 push -1
-label25:
 stm
 pop
 sra
-pop
-pop
+popn 2
 sfp
 ltm
 lra
-js
\ No newline at end of file
+js
@@ -3,11 +3,12 @@ package compiler;
 import java.util.*;
 import compiler.lib.*;
 
+// le sottoespressioni non sono final: ConstantFoldingASTVisitor le sostituisce sul posto
 public class AST {
 	
 	public static class ProgLetInNode extends Node {
 		final List<DecNode> declist;
-		final Node exp;
+		Node exp;
 		ProgLetInNode(List<DecNode> d, Node e) {
 			declist = Collections.unmodifiableList(d); 
 			exp = e;
@@ -18,7 +19,7 @@ public class AST {
 	}
 
 	public static class ProgNode extends Node {
-		final Node exp;
+		Node exp;
 		ProgNode(Node e) {exp = e;}
 
 		@Override
@@ -30,7 +31,9 @@ public class AST {
 		final TypeNode retType;
 		final List<ParNode> parlist;
 		final List<DecNode> declist; 
-		final Node exp;
+		Node exp;
+		STentry entry;
+		boolean reachable = true; // false: no code is generated (see ReachabilityASTVisitor)
 		FunNode(String i, TypeNode rt, List<ParNode> pl, List<DecNode> dl, Node e) {
 	    	id=i; 
 	    	retType=rt; 
@@ -55,7 +58,7 @@ public class AST {
 	
 	public static class VarNode extends DecNode {
 		final String id;
-		final Node exp;
+		Node exp;
 		VarNode(String i, TypeNode t, Node v) {id = i; type = t; exp = v;}
 
 		@Override
@@ -63,7 +66,7 @@ public class AST {
 	}
 		
 	public static class PrintNode extends Node {
-		final Node exp;
+		Node exp;
 		PrintNode(Node e) {exp = e;}
 
 		@Override
@@ -71,9 +74,9 @@ public class AST {
 	}
 	
 	public static class IfNode extends Node {
-		final Node cond;
-		final Node th;
-		final Node el;
+		Node cond;
+		Node th;
+		Node el;
 		IfNode(Node c, Node t, Node e) {cond = c; th = t; el = e;}
 
 		@Override
@@ -81,8 +84,8 @@ public class AST {
 	}
 	
 	public static class EqualNode extends Node {
-		final Node left;
-		final Node right;
+		Node left;
+		Node right;
 		EqualNode(Node l, Node r) {left = l; right = r;}
 
 		@Override
@@ -90,8 +93,8 @@ public class AST {
 	}
 	
 	public static class TimesNode extends Node {
-		final Node left;
-		final Node right;
+		Node left;
+		Node right;
 		TimesNode(Node l, Node r) {left = l; right = r;}
 
 		@Override
@@ -99,8 +102,8 @@ public class AST {
 	}
 	
 	public static class PlusNode extends Node {
-		final Node left;
-		final Node right;
+		Node left;
+		Node right;
 		PlusNode(Node l, Node r) {left = l; right = r;}
 
 		@Override
@@ -109,9 +112,10 @@ public class AST {
 	
 	public static class CallNode extends Node {
 		final String id;
-		final List<Node> arglist;
+		List<Node> arglist;
 		STentry entry;
 		int nl;
+		boolean tail; // in tail position (see TailCallASTVisitor)
 		CallNode(String i, List<Node> p) {
 			id = i; 
 			arglist = Collections.unmodifiableList(p);
@@ -174,8 +178,8 @@ public class AST {
 	//estensione degli operatori
 
 	public static class MinusNode extends Node {
-		final Node left;
-		final Node right;
+		Node left;
+		Node right;
 		MinusNode(Node left, Node right) {
 			this.left = left;
 			this.right = right;
@@ -185,8 +189,8 @@ public class AST {
 	}
 
 	public static class DivNode extends Node {
-		final Node left;
-		final Node right;
+		Node left;
+		Node right;
 		DivNode(Node left, Node right) {
 			this.left = left;
 			this.right = right;
@@ -196,8 +200,8 @@ public class AST {
 	}
 
 	public static class AndNode extends Node {
-		final Node left;
-		final Node right;
+		Node left;
+		Node right;
 		AndNode(Node left, Node right) {
 			this.left = left;
 			this.right = right;
@@ -207,8 +211,8 @@ public class AST {
 	}
 
 	public static class OrNode extends Node {
-		final Node left;
-		final Node right;
+		Node left;
+		Node right;
 		OrNode(Node left, Node right) {
 			this.left = left;
 			this.right = right;
@@ -227,8 +231,8 @@ public class AST {
 	}
 
 	public static class GreaterEqualNode extends Node {
-		final Node left;
-		final Node right;
+		Node left;
+		Node right;
 		GreaterEqualNode(Node left, Node right) {
 			this.left = left;
 			this.right = right;
@@ -238,8 +242,8 @@ public class AST {
 	}
 
 	public static class LessEqualNode extends Node {
-		final Node left;
-		final Node right;
+		Node left;
+		Node right;
 		LessEqualNode(Node left, Node right) {
 			this.left = left;
 			this.right = right;
@@ -265,8 +269,10 @@ public class AST {
 		final TypeNode retType;
 		final List<ParNode> parlist;
 		final List<DecNode> declist;
-		final Node exp;
-		String label;
+		Node exp;
+		IR.Label label;
+		STentry entry;
+		boolean reachable = true;
 
 		int offset;
 		MethodNode(String id, TypeNode retType, List<ParNode> parlist, List<DecNode> declist, Node exp) {
@@ -284,6 +290,7 @@ public class AST {
 		final String id;
 		final List<FieldNode> fields;
 		final List<MethodNode> methods;
+		STentry entry;
 		ClassNode(String id, List<FieldNode> fields, List<MethodNode> methods){
 			this.id = id;
 			this.fields = Collections.unmodifiableList(fields);
@@ -296,10 +303,12 @@ public class AST {
 	public static class ClassCallNode extends Node {
 		final String idObject;
 		final String idMethod;
-		final List<Node> arglist;
+		List<Node> arglist;
 		STentry entry;
 		STentry methodEntry;
 		int nl;
+		boolean tail; // in tail position (see TailCallASTVisitor)
+		MethodNode target; // the only method it can call (see DevirtualizationASTVisitor), null: dispatch
 		ClassCallNode(String idObject, String idMethod, List<Node> arglist) {
 			this.idObject = idObject;
 			this.idMethod = idMethod;
@@ -310,9 +319,25 @@ public class AST {
 		public <S,E extends Exception> S accept(BaseASTVisitor<S,E> visitor) throws E {return visitor.visitNode(this);}
 	}
 
+	// lettura diretta di un campo: la copia del corpo di un metodo inlined (see InliningASTVisitor)
+	public static class ClassFieldNode extends Node {
+		final String idObject;
+		final String idField;
+		STentry entry;
+		STentry fieldEntry;
+		int nl;
+		ClassFieldNode(String idObject, String idField) {
+			this.idObject = idObject;
+			this.idField = idField;
+		}
+
+		@Override
+		public <S,E extends Exception> S accept(BaseASTVisitor<S,E> visitor) throws E {return visitor.visitNode(this);}
+	}
+
 	public static class NewNode extends Node{
 		final String id;
-		final List<Node> fields;
+		List<Node> fields;
 		STentry entry;
 		NewNode(String id, List<Node>fields){
 			this.id = id;
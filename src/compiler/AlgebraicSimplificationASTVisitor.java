@@ -0,0 +1,149 @@
+package compiler;
+
+import compiler.AST.*;
+import compiler.lib.*;
+
+/*
+ * Semplificazione algebrica sull'AST arricchito, insieme al constant folding
+ * (di cui riusa la visita: ogni visita restituisce il nodo che prende il
+ * posto di quello visitato). Dopo aver piegato le costanti si tolgono le
+ * identita': x+0, x-0, x*1, x/1, x*0, x-x, !!x, x==x, ... e x*-1, x/-1
+ * diventano 0-x, che CodeGenerationASTVisitor compila con neg.
+ *
+ * An operand is only dropped when it is pure (see ConstantFoldingASTVisitor),
+ * so prints stay and x*0 keeps a division by zero in x. x/y is never
+ * simplified on the value of x, the division may fail. Multiplications and
+ * divisions by powers of two are left to the code generator (shl, shr).
+ * getSimplified() counts the nodes replaced by identities, getFolded() the
+ * constants folded.
+ */
+public class AlgebraicSimplificationASTVisitor extends ConstantFoldingASTVisitor {
+
+	private int simplified;
+
+	AlgebraicSimplificationASTVisitor() {}
+	AlgebraicSimplificationASTVisitor(boolean debug) {super(debug);}
+
+	public int getSimplified() {
+		return simplified;
+	}
+
+	// the same constant, or the same variable from the same scope
+	static boolean sameValue(Node x, Node y) {
+		if (x instanceof IntNode && y instanceof IntNode) return ((IntNode) x).val.equals(((IntNode) y).val);
+		if (x instanceof BoolNode && y instanceof BoolNode) return ((BoolNode) x).val.equals(((BoolNode) y).val);
+		return x instanceof IdNode && y instanceof IdNode
+			&& ((IdNode) x).entry == ((IdNode) y).entry && ((IdNode) x).nl == ((IdNode) y).nl;
+	}
+
+	private static boolean is(Node n, int v) {
+		Integer c = value(n);
+		return c != null && c == v;
+	}
+
+	private Node simplify(Node n, Node result) {
+		simplified++;
+		if (result.getLine() < 0) result.setLine(n.getLine());
+		return result;
+	}
+
+	private Node zero(Node n) {
+		return simplify(n, new IntNode(0));
+	}
+
+	// 0 - x
+	private Node negate(Node n, Node x) {
+		IntNode zero = new IntNode(0);
+		zero.setLine(n.getLine());
+		return simplify(n, new MinusNode(zero, x));
+	}
+
+	@Override
+	public Node visitNode(PlusNode n) {
+		Node r = super.visitNode(n);
+		if (r != n) return r;
+		if (is(n.right, 0)) return simplify(n, n.left);
+		if (is(n.left, 0)) return simplify(n, n.right);
+		return n;
+	}
+
+	@Override
+	public Node visitNode(MinusNode n) {
+		Node r = super.visitNode(n);
+		if (r != n) return r;
+		if (is(n.right, 0)) return simplify(n, n.left);
+		if (sameValue(n.left, n.right)) return zero(n);
+		return n;
+	}
+
+	@Override
+	public Node visitNode(TimesNode n) {
+		Node r = super.visitNode(n);
+		if (r != n) return r;
+		if (is(n.right, 1)) return simplify(n, n.left);
+		if (is(n.left, 1)) return simplify(n, n.right);
+		if (is(n.right, 0) && pure(n.left) || is(n.left, 0) && pure(n.right)) return zero(n);
+		if (is(n.right, -1)) return negate(n, n.left);
+		if (is(n.left, -1)) return negate(n, n.right);
+		return n;
+	}
+
+	@Override
+	public Node visitNode(DivNode n) {
+		Node r = super.visitNode(n);
+		if (r != n) return r;
+		if (is(n.right, 1)) return simplify(n, n.left);
+		if (is(n.right, -1)) return negate(n, n.left); // also for the minimum int, as div does
+		return n;
+	}
+
+	@Override
+	public Node visitNode(EqualNode n) {
+		Node r = super.visitNode(n);
+		if (r != n) return r;
+		return sameValue(n.left, n.right) ? simplify(n, new BoolNode(true)) : n;
+	}
+
+	@Override
+	public Node visitNode(LessEqualNode n) {
+		Node r = super.visitNode(n);
+		if (r != n) return r;
+		return sameValue(n.left, n.right) ? simplify(n, new BoolNode(true)) : n;
+	}
+
+	@Override
+	public Node visitNode(GreaterEqualNode n) {
+		Node r = super.visitNode(n);
+		if (r != n) return r;
+		return sameValue(n.left, n.right) ? simplify(n, new BoolNode(true)) : n;
+	}
+
+	@Override
+	public Node visitNode(AndNode n) {
+		Node r = super.visitNode(n);
+		if (r != n) return r;
+		return sameValue(n.left, n.right) ? simplify(n, n.left) : n;
+	}
+
+	@Override
+	public Node visitNode(OrNode n) {
+		Node r = super.visitNode(n);
+		if (r != n) return r;
+		return sameValue(n.left, n.right) ? simplify(n, n.left) : n;
+	}
+
+	@Override
+	public Node visitNode(NotNode n) {
+		Node r = super.visitNode(n);
+		if (r != n) return r;
+		return n.exp instanceof NotNode ? simplify(n, ((NotNode) n.exp).exp) : n;
+	}
+
+	@Override
+	public Node visitNode(IfNode n) {
+		Node r = super.visitNode(n);
+		if (r != n) return r;
+		return sameValue(n.th, n.el) && pure(n.cond) ? simplify(n, n.th) : n;
+	}
+
+}
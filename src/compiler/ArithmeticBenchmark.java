@@ -0,0 +1,53 @@
+package compiler;
+
+import java.util.*;
+import org.antlr.v4.runtime.*;
+import svm.*;
+
+/*
+ * Micro-benchmarks for the algebraic simplification and the strength
+ * reduction: arithmetic heavy FOOL functions, each applied to 1..N through a
+ * divide and conquer recursion, compiled without and with them (constant
+ * folding and the peephole optimizer run in both cases). Reports code words,
+ * instructions run and the best time of the decoded engine; the outputs must
+ * be the same.
+ * Usage: java compiler.ArithmeticBenchmark [rounds] [N]
+ */
+public class ArithmeticBenchmark {
+
+    // name, body of fun f:int (i:int)
+    static final String[][] PROGRAMS = {
+    	{"powers", "i*8 + i/4 - i*16/2 + (i+3)/32 + 2*i"},
+    	{"identities", "(i*1 + 0)/1 - 0 + i*0 + (i - i) + 1*i*(0+1) + (0+i)/(2-1)"},
+    	{"negation", "i*(0-1) + (0-i)/(0-1) + (i/2)*(0-1) - 0*i"},
+    	{"mixed", "let var h:int = i*32 + i/2; in h - h/64*64 + h*4 - h/8 + (h+0)*1"},
+    	{"comparisons", "if (i <= i && !(!(i/2 >= i/4))) then {i*4} else {i/1}"},
+    };
+
+    static String program(String body, int n) {
+    	return "let\n" +
+    		"  fun f:int (i:int) " + body + ";\n" +
+    		"  fun range:int (lo:int, hi:int)\n" +
+    		"    if (lo == hi) then { f(lo) } else { range(lo, (lo + hi) / 2) + range((lo + hi) / 2 + 1, hi) };\n" +
+    		"in print(range(1, " + n + "));\n";
+    }
+
+    public static void main(String[] args) throws Exception {
+    	int rounds = args.length > 0 ? Integer.parseInt(args[0]) : 5;
+    	int n = args.length > 1 ? Integer.parseInt(args[1]) : 200_000;
+    	System.out.printf("%-12s %10s %15s %23s %19s%n", "", "", "code words", "instructions run", "decoded ms");
+    	System.out.printf("%-12s %10s %7s %7s %11s %11s %9s %9s%n", "program", "simplified", "before", "after", "before", "after", "before", "after");
+    	for (String[] p : PROGRAMS) {
+    		String source = program(p[1], n);
+    		FOOLCompiler plain = new FOOLCompiler(), simplified = new FOOLCompiler();
+    		plain.setSimplify(false);
+    		Program before = plain.compileQuietly(CharStreams.fromString(source)), after = simplified.compileQuietly(CharStreams.fromString(source));
+    		List<String> expected = new ArrayList<>(), output = new ArrayList<>();
+    		ExecuteVM b = Benchmarks.run(before, expected), a = Benchmarks.run(after, output);
+    		if (!output.equals(expected)) throw new IllegalStateException(p[0] + ": " + output + " instead of " + expected);
+    		System.out.printf("%-12s %10d %7d %7d %11d %11d %9.1f %9.1f%n", p[0], simplified.getSimplified(),
+    			before.length(), after.length(), b.getExecuted(), a.getExecuted(), Benchmarks.time(before, rounds), Benchmarks.time(after, rounds));
+    	}
+    }
+
+}
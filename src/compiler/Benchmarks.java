@@ -0,0 +1,33 @@
+package compiler;
+
+import java.util.*;
+import svm.*;
+
+/*
+ * Helpers shared by the compiler benchmarks (ArithmeticBenchmark,
+ * ConditionBenchmark, NestingBenchmark, InliningBenchmark,
+ * DevirtualizationBenchmark): a compiled program is run and timed with the
+ * decoded engine.
+ */
+final class Benchmarks {
+
+    private Benchmarks() {}
+
+    static ExecuteVM run(Program program, List<String> output) {
+    	ExecuteVM vm = new ExecuteVM(program, OutputSink.to(output));
+    	vm.cpuDecoded(program.decoded());
+    	return vm;
+    }
+
+    // best of rounds, after one warm-up run
+    static double time(Program program, int rounds) {
+    	long best = Long.MAX_VALUE;
+    	for (int r = 0; r <= rounds; r++) {
+    		long start = System.nanoTime();
+    		run(program, new ArrayList<>());
+    		if (r > 0) best = Math.min(best, System.nanoTime() - start);
+    	}
+    	return best / 1e6;
+    }
+
+}
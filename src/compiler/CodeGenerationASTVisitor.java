@@ -3,360 +3,712 @@ package compiler;
 import compiler.AST.*;
 import compiler.lib.*;
 import compiler.exc.*;
-import svm.*;
-
 import java.util.ArrayList;
+import java.util.List;
+import java.util.HashMap;
+import java.util.Map;
+import compiler.IR.*;
+import svm.GarbageCollector;
 
 import static compiler.lib.FOOLlib.*;
-
-public class CodeGenerationASTVisitor extends BaseASTVisitor<String, VoidException> {
-
-  CodeGenerationASTVisitor() {}
-  CodeGenerationASTVisitor(boolean debug) {super(false,debug);} //enables print for debugging
+import static compiler.IR.Op.*;
+
+/*
+ * Il codice viene emesso in ordine di visita con emit(), come istruzioni
+ * della rappresentazione intermedia IR aggiunte in coda al codice della
+ * funzione (o del main) in generazione: il costo e' lineare nella dimensione
+ * del codice prodotto. Il codice del programma si legge con getCode() dopo
+ * la visita.
+ *
+ * Le condizioni degli if sono compilate come codice di salto (jump()): i
+ * confronti e gli operatori booleani saltano direttamente al ramo giusto,
+ * senza calcolare il valore 0/1 per poi confrontarlo con 1. Il valore viene
+ * materializzato solo dove serve (assegnato, passato, stampato, ...).
+ *
+ * Con display attivo le variabili non locali si leggono con un solo ldisp
+ * invece di risalire la catena degli access link: display[k] e' il frame
+ * (per i metodi, a livello 1, l'oggetto) della funzione di livello k in
+ * esecuzione. Ogni chiamata salva sullo stack i valori che il chiamato
+ * sovrascrive (prima del control link) e il chiamato li ripristina prima di
+ * tornare. Si mantengono solo i livelli 0 (globali, scritto una volta dal
+ * main) e quelli da 1 a maxLevel-2, cioe' quelli che qualche corpo vede ad
+ * almeno due salti di distanza: per gli altri lfp lw costa gia' poco.
+ *
+ * Le chiamate marcate da TailCallASTVisitor diventano salti: argomenti e
+ * access link del chiamato prendono il posto di parametri, access link,
+ * return address e dichiarazioni del chiamante, sotto il suo control link, e
+ * il chiamato torna direttamente al chiamante del chiamante.
+ *
+ * Le chiamate di metodo con un solo metodo possibile (target, vedi
+ * DevirtualizationASTVisitor) saltano direttamente alla sua label, senza
+ * passare per dispatch pointer e dispatch table. Le altre sono un dsp, che
+ * la macchina esegue con una inline cache per ogni chiamata (InlineCaches).
+ */
+public class CodeGenerationASTVisitor extends BaseASTVisitor<Void, VoidException> {
+
+  // dispatch tables are the first objects built on the heap, in declaration
+  // order starting from address 0: their addresses are known statically
+  private final Map<String, Integer> dispatchTables = new HashMap<>();
+  private int dispatchTablesSize = 0;
+
+  // address of the dispatch table of every class, known before any body is visited:
+  // methods can create objects of their own class
+  private void placeDispatchTables(List<DecNode> decs) {
+    for (DecNode dec : decs)
+      if (dec instanceof ClassNode) {
+        int size = 0; //trailing unreachable methods get no slot (see visitNode(ClassNode))
+        for (MethodNode m : ((ClassNode) dec).methods) if (m.reachable) size = Math.max(size, m.offset + 1);
+        dispatchTables.put(((ClassNode) dec).id, dispatchTablesSize);
+        dispatchTablesSize += size;
+      }
+  }
+
+  private Code code = new Code(); // code of the function being generated
+
+  private final boolean jumpingConditions;
+  private final boolean strengthReduction;
+  private final boolean display;
+  private int maxLevel; // deepest nesting level of a function or method body
+
+  // frame of the function or method being generated (params -1 in the main), for tail calls
+  private int frameParams = -1, frameDecls;
+  private List<Integer> frameDisplay;
+  private final Map<STentry, Label> functionLabels = new HashMap<>();
+  private final Map<STentry, Label> functionBodies = new HashMap<>(); //functions and methods, past cfp and lra
+  private int tailCalls;
+
+  CodeGenerationASTVisitor() {this(false, true, true, false);}
+  CodeGenerationASTVisitor(boolean debug) {this(debug, true, true, false);} //enables print for debugging
+  // jumpingConditions false: conditions are computed as 0/1 values and tested against 1
+  // strengthReduction false: mult and div also by powers of two, instead of shl and shr
+  // display true: non-local variables through the display instead of the access links
+  CodeGenerationASTVisitor(boolean debug, boolean jumpingConditions, boolean strengthReduction, boolean display) {
+    super(false,debug);
+    this.jumpingConditions = jumpingConditions;
+    this.strengthReduction = strengthReduction;
+    this.display = display;
+  }
+
+  public Code getCode() {
+    return code;
+  }
+
+  // calls compiled as jumps that reuse the frame of the caller
+  public int getTailCalls() {
+    return tailCalls;
+  }
+
+  private void emit(Op... ops) {
+    for (Op op : ops) code.add(op);
+  }
+
+  private void emit(Op op, int arg) {
+    code.add(op, arg);
+  }
+
+  private void emit(Op op, Label label) {
+    code.add(op, label);
+  }
+
+  private void define(Label label) {
+    code.define(label);
+  }
+
+  private void repeat(Op op, int times) {
+    for (int i = 0; i < times; i++) code.add(op);
+  }
+
+  // removes n words from the stack
+  private void pop(int n) {
+    if (n == 1) emit(POP);
+    else if (n > 1) emit(POPN, n);
+  }
+
+  // whether display[level] is kept up to date
+  private boolean displayed(int level) {
+    return display && (level == 0 || level <= maxLevel - 2);
+  }
+
+  // pushes the frame of nesting level `level` (an object for the level 1 of methods), from code at level nl
+  private void frame(int nl, int level) {
+    if (nl > level && displayed(level)) {
+      emit(LDISP, level);
+      return;
+    }
+    emit(LFP);
+    repeat(LW, nl - level);
+  }
+
+  // caller: values of the display overwritten by a body with these levels, restored by its epilogue
+  private void saveDisplay(int... levels) {
+    for (int level : levels) if (displayed(level)) emit(LDISP, level);
+  }
+
+  // callee, after cfp: its frame (level nl) and, for methods, its object (level nl-1, the access link)
+  private void enterDisplay(int nl, int... levels) {
+    for (int level : levels)
+      if (displayed(level)) {
+        emit(LFP);
+        repeat(LW, nl - level);
+        emit(SDISP, level);
+      }
+  }
+
+  // callee, after sfp: the saved values are on top of the stack, the last one first
+  private void leaveDisplay(int... levels) {
+    for (int i = levels.length - 1; i >= 0; i--) if (displayed(levels[i])) emit(SDISP, levels[i]);
+  }
+
+  // the levels among these whose display entries are saved by the caller
+  private List<Integer> savedDisplay(int... levels) {
+    List<Integer> saved = new ArrayList<>();
+    for (int level : levels) if (displayed(level)) saved.add(level);
+    return saved;
+  }
+
+  /*
+   * Whether a tail call with args arguments can reuse the current frame: the
+   * callee must restore the same display entries and its arguments and
+   * access link must fit in place of parameters, access link, return
+   * address and declarations of the caller.
+   */
+  private boolean reusesFrame(int args, int... levels) {
+    return frameParams >= 0 && args <= frameParams + 1 + frameDecls && savedDisplay(levels).equals(frameDisplay);
+  }
+
+  /*
+   * Arguments and access link of the callee, on top of the current frame,
+   * take its place (sameLink: the access link is the current one, not
+   * pushed). With as many arguments as parameters the frame stays where it
+   * is, with its return address: true, the callee is entered past its cfp
+   * and lra.
+   */
+  private boolean replaceFrame(int args, boolean sameLink) {
+    if (args == frameParams) {
+      for (int i = sameLink ? 1 : 0; i <= args; i++) emit(SWF, i);
+      pop(frameDecls);
+      return true;
+    }
+    emit(LFP);
+    emit(PUSH, -1);
+    emit(ADD, LW, SRA); //the callee returns to our caller
+    for (int i = 0; i <= args; i++) emit(SWF, frameParams - args + i); //access link first, then the arguments
+    pop(frameParams + 1 + frameDecls - args);
+    return false;
+  }
+
+  // deepest body level among the functions and methods declared in decs, at least nl
+  private static int maxLevel(List<? extends Node> decs, int nl) {
+    int max = nl;
+    for (Node dec : decs)
+      if (dec instanceof FunNode) {
+        FunNode f = (FunNode) dec;
+        max = Math.max(max, maxLevel(f.declist, f.entry.nl + 1));
+      } else if (dec instanceof ClassNode) {
+        for (MethodNode m : ((ClassNode) dec).methods) max = Math.max(max, maxLevel(m.declist, m.entry.nl + 1));
+      }
+    return max;
+  }
+
+  private static Label freshLabelObject() {
+    return new Label(freshLabel());
+  }
+
+  /*
+   * Codice di salto per una condizione: salta a target se il valore di n e'
+   * sense, altrimenti prosegue. Gli operandi sono valutati nello stesso
+   * ordine (e con lo stesso cortocircuito di && e ||) del codice che ne
+   * calcola il valore.
+   */
+  private void jump(Node n, boolean sense, Label target) {
+    if (n instanceof BoolNode) {
+      if (((BoolNode) n).val == sense) emit(B, target);
+    } else if (n instanceof NotNode) {
+      jump(((NotNode) n).exp, !sense, target);
+    } else if (n instanceof AndNode) {
+      AndNode and = (AndNode) n;
+      if (sense) { // both true
+        Label skip = freshLabelObject();
+        jump(and.left, false, skip);
+        jump(and.right, true, target);
+        define(skip);
+      } else { // either false
+        jump(and.left, false, target);
+        jump(and.right, false, target);
+      }
+    } else if (n instanceof OrNode) {
+      OrNode or = (OrNode) n;
+      if (sense) { // either true
+        jump(or.left, true, target);
+        jump(or.right, true, target);
+      } else { // both false
+        Label skip = freshLabelObject();
+        jump(or.left, true, skip);
+        jump(or.right, false, target);
+        define(skip);
+      }
+    } else if (n instanceof EqualNode) {
+      visit(((EqualNode) n).left);
+      visit(((EqualNode) n).right);
+      branch(BEQ, sense, target);
+    } else if (n instanceof LessEqualNode) {
+      visit(((LessEqualNode) n).left);
+      visit(((LessEqualNode) n).right);
+      branch(BLEQ, sense, target);
+    } else if (n instanceof GreaterEqualNode) {
+      visit(((GreaterEqualNode) n).left);
+      visit(((GreaterEqualNode) n).right);
+      branch(BGEQ, sense, target);
+    } else { //any other boolean: its 0/1 value
+      visit(n);
+      emit(PUSH, sense ? 1 : 0);
+      emit(BEQ, target);
+    }
+  }
+
+  // op jumps when its comparison holds: to target if that is sense, else with the opposite comparison
+  private void branch(Op op, boolean sense, Label target) {
+    if (sense) emit(op, target);
+    else if (op == BEQ) emit(BNEQ, target);
+    else if (op == BGEQ) emit(BLT, target);
+    else { //not left <= right: right < left
+      emit(SWAP);
+      emit(BLT, target);
+    }
+  }
+
+  // the sense for which jump(n, ...) needs the fewest branches
+  private static boolean directSense(Node n) {
+    if (n instanceof NotNode) return !directSense(((NotNode) n).exp);
+    if (n instanceof AndNode) return false;
+    return true;
+  }
+
+  // 0/1 value of a boolean operator, through its jumping code
+  private void materialize(Node n) {
+    boolean sense = directSense(n);
+    Label l1 = freshLabelObject();
+    Label l2 = freshLabelObject();
+    jump(n, sense, l1);
+    emit(PUSH, sense ? 0 : 1);
+    emit(B, l2);
+    define(l1);
+    emit(PUSH, sense ? 1 : 0);
+    define(l2);
+  }
 
 	@Override
-	public String visitNode(ProgLetInNode n) {
+	public Void visitNode(ProgLetInNode n) {
 		if (print) printNode(n);
-		String declCode = null;
-		for (Node dec : n.declist) declCode=nlJoin(declCode,visit(dec));
-		return nlJoin(
-			"push 0",
-			declCode, //codice delle dichiarazioni
-			visit(n.exp), //codice dell'espressione
-			"halt",
-			getCode()
-		);
+		maxLevel = maxLevel(n.declist, 0);
+		placeDispatchTables(n.declist);
+		emit(PUSH, 0);
+		if (displayed(0)) { //display[0]: the frame of the globals
+			emit(LFP);
+			emit(SDISP, 0);
+		}
+		for (Node dec : n.declist) visit(dec); //codice delle dichiarazioni
+		visit(n.exp); //codice dell'espressione
+		emit(HALT);
+		code.append(FOOLlib.getCode());
+		return null;
 	}
 
 	@Override
-	public String visitNode(ProgNode n) {
+	public Void visitNode(ProgNode n) {
 		if (print) printNode(n);
-		return nlJoin(
-			visit(n.exp), //codice dell'espressione
-			"halt"
-		);
+		visit(n.exp); //codice dell'espressione
+		emit(HALT);
+		return null;
 	}
 
 	@Override
-	public String visitNode(FunNode n) {
+	public Void visitNode(FunNode n) {
 		if (print) printNode(n,n.id);
-		String declCode = null, popDecl = null, popParl = null;
-		for (Node dec : n.declist) {
-			declCode = nlJoin(declCode,visit(dec));
-			popDecl = nlJoin(popDecl,"pop");
+		if (!n.reachable) { //mai chiamata: resta solo la cella nell'AR, senza codice
+			emit(PUSH, 0);
+			return null;
 		}
-		for (int i=0;i<n.parlist.size();i++){
-			popParl = nlJoin(popParl,"pop");
-		}
-		String funl = freshFunLabel();
-		putCode(
-			nlJoin(
-				funl+":",
-				"cfp",
-				"lra",
-				declCode,
-				visit(n.exp),
-				"stm",
-				popDecl,
-				"sra",
-				"pop",
-				popParl,
-				"sfp",
-				"ltm",
-				"lra",
-				"js"
-			)
-		);
-		return "push "+funl;		
+		Label funl = new Label(freshFunLabel());
+		functionLabels.put(n.entry, funl);
+		Code outer = code;
+		code = new Code();
+		int outerParams = frameParams, outerDecls = frameDecls;
+		List<Integer> outerDisplay = frameDisplay;
+		frameParams = n.parlist.size();
+		frameDecls = n.declist.size();
+		frameDisplay = savedDisplay(n.entry.nl+1);
+		define(funl);
+		emit(CFP, LRA);
+		Label body = freshLabelObject();
+		functionBodies.put(n.entry, body);
+		define(body);
+		enterDisplay(n.entry.nl+1, n.entry.nl+1);
+		for (Node dec : n.declist) visit(dec);
+		visit(n.exp);
+		emit(STM);
+		pop(n.declist.size());
+		emit(SRA);
+		pop(n.parlist.size()+1); //parameters and access link
+		emit(SFP);
+		leaveDisplay(n.entry.nl+1);
+		emit(LTM, LRA, JS);
+		putCode(code);
+		code = outer;
+		frameParams = outerParams;
+		frameDecls = outerDecls;
+		frameDisplay = outerDisplay;
+		emit(PUSH, funl);
+		return null;
 	}
 
 	@Override
-	public String visitNode(VarNode n) {
+	public Void visitNode(VarNode n) {
 		if (print) printNode(n,n.id);
-		return visit(n.exp);
+		visit(n.exp);
+		return null;
 	}
 
 	@Override
-	public String visitNode(PrintNode n) {
+	public Void visitNode(PrintNode n) {
 		if (print) printNode(n);
-		return nlJoin(
-			visit(n.exp),
-			"print"
-		);
+		visit(n.exp);
+		emit(PRINT);
+		return null;
 	}
 
 	@Override
-	public String visitNode(IfNode n) {
+	public Void visitNode(IfNode n) {
 		if (print) printNode(n);
-	 	String l1 = freshLabel();
-	 	String l2 = freshLabel();
-		return nlJoin(
-			visit(n.cond),
-			"push 1",
-			"beq "+l1,
-			visit(n.el),
-			"b "+l2,
-			l1+":",
-			visit(n.th),
-			l2+":"
-		);
+	 	Label l1 = freshLabelObject();
+	 	Label l2 = freshLabelObject();
+		if (jumpingConditions) {
+			boolean sense = directSense(n.cond);
+			jump(n.cond, sense, l1); //to the branch taken when the condition is sense
+			visit(sense ? n.el : n.th);
+			emit(B, l2);
+			define(l1);
+			visit(sense ? n.th : n.el);
+			define(l2);
+			return null;
+		}
+		visit(n.cond);
+		emit(PUSH, 1);
+		emit(BEQ, l1);
+		visit(n.el);
+		emit(B, l2);
+		define(l1);
+		visit(n.th);
+		define(l2);
+		return null;
 	}
 
 	@Override
-	public String visitNode(EqualNode n) {
+	public Void visitNode(EqualNode n) {
 		if (print) printNode(n);
-	 	String l1 = freshLabel();
-	 	String l2 = freshLabel();
-		return nlJoin(
-			visit(n.left),
-			visit(n.right),
-			"beq "+l1,
-			"push 0",
-			"b "+l2,
-			l1+":",
-			"push 1",
-			l2+":"
-		);
+	 	Label l1 = freshLabelObject();
+	 	Label l2 = freshLabelObject();
+		visit(n.left);
+		visit(n.right);
+		emit(BEQ, l1);
+		emit(PUSH, 0);
+		emit(B, l2);
+		define(l1);
+		emit(PUSH, 1);
+		define(l2);
+		return null;
 	}
 
 	@Override
-	public String visitNode(TimesNode n) {
+	public Void visitNode(TimesNode n) {
 		if (print) printNode(n);
-		return nlJoin(
-			visit(n.left),
-			visit(n.right),
-			"mult"
-		);	
+		int k = log2(n.right);
+		if (k > 0) { //x * 2^k
+			visit(n.left);
+			emit(SHL, k);
+			return null;
+		}
+		k = log2(n.left);
+		if (k > 0) { //2^k * x: pushing the constant first has no effect
+			visit(n.right);
+			emit(SHL, k);
+			return null;
+		}
+		visit(n.left);
+		visit(n.right);
+		emit(MULT);
+		return null;
+	}
+
+	// k if n is the constant 2^k and strength reduction is on, else -1
+	private int log2(Node n) {
+		if (!strengthReduction || !(n instanceof IntNode)) return -1;
+		int v = ((IntNode) n).val;
+		return v > 0 && Integer.bitCount(v) == 1 ? Integer.numberOfTrailingZeros(v) : -1;
 	}
 
 	@Override
-	public String visitNode(PlusNode n) {
+	public Void visitNode(PlusNode n) {
 		if (print) printNode(n);
-		return nlJoin(
-			visit(n.left),
-			visit(n.right),
-			"add"				
-		);
+		visit(n.left);
+		visit(n.right);
+		emit(ADD);
+		return null;
 	}
 
 	@Override
-	public String visitNode(CallNode n) {
+	public Void visitNode(CallNode n) {
 		if (print) printNode(n, n.id);
-		String argCode = null;
-		String getAR = null;
-		for(int i=n.arglist.size()-1; i>=0; i--){
-			argCode = nlJoin(argCode, visit(n.arglist.get(i)));
+		Label funl = functionLabels.get(n.entry);
+		//a function declared in the current body has the current frame as access link: it must stay
+		if (n.tail && funl != null && n.nl > n.entry.nl && reusesFrame(n.arglist.size(), n.entry.nl+1)) {
+			tailCalls++;
+			for (int i=n.arglist.size()-1; i>=0; i--) visit(n.arglist.get(i));
+			//a sibling (or the function itself) has our access link
+			boolean sameLink = n.arglist.size() == frameParams && n.entry.nl == n.nl-1;
+			if (!sameLink) frame(n.nl, n.entry.nl);
+			//the function is known: its code sets up the frame on the reused space
+			emit(B, replaceFrame(n.arglist.size(), sameLink) ? functionBodies.get(n.entry) : funl);
+			return null;
 		}
-		for(int i = 0; i<n.nl-n.entry.nl; i++){
-			getAR = nlJoin(getAR, "lw");
+		if (n.entry.type instanceof MethodTypeNode) saveDisplay(1, 2);
+		else saveDisplay(n.entry.nl+1);
+		emit(LFP);
+		for(int i=n.arglist.size()-1; i>=0; i--){
+			visit(n.arglist.get(i));
 		}
+		frame(n.nl, n.entry.nl);
+		emit(DUP);
 		if(n.entry.type instanceof MethodTypeNode){
-			return nlJoin(
-					"lfp",
-					argCode,
-					"lfp",
-					getAR,
-					"stm",
-					"ltm",
-					"ltm",
-					"lw",
-					"push " + n.entry.offset,
-					"add",
-					"lw",
-					"js"
-			);
-		}else{
-			return nlJoin(
-					"lfp",
-					argCode,
-					"lfp",
-					getAR,
-					"stm",
-					"ltm",
-					"ltm",
-					"push "+n.entry.offset,
-					"add",
-					"lw",
-					"js"
-			);
+			emit(LW);
 		}
+		emit(PUSH, n.entry.offset);
+		emit(ADD, LW, JS);
+		return null;
 	}
 
 	@Override
-	public String visitNode(IdNode n) {
+	public Void visitNode(IdNode n) {
 		if (print) printNode(n,n.id);
-		String getAR = null;
-		for (int i=0; i<n.nl-n.entry.nl; i++){
-			getAR=nlJoin(getAR,"lw");
-		}
-		return nlJoin(
-			"lfp",
-				getAR,
-			"push "+n.entry.offset,
-			"add",
-			"lw"
-		);
+		frame(n.nl, n.entry.nl);
+		emit(PUSH, n.entry.offset);
+		emit(ADD, LW);
+		return null;
 	}
 
 	@Override
-	public String visitNode(BoolNode n) {
+	public Void visitNode(BoolNode n) {
 		if (print) printNode(n,n.val.toString());
-		return "push "+(n.val?1:0);
+		emit(PUSH, n.val?1:0);
+		return null;
 	}
 
 	@Override
-	public String visitNode(IntNode n) {
+	public Void visitNode(IntNode n) {
 		if (print) printNode(n,n.val.toString());
-		return "push "+n.val;
+		emit(PUSH, n.val);
+		return null;
 	}
 
 	//estensione degli operatori
 
 	@Override
-	public String visitNode(MinusNode n) {
+	public Void visitNode(MinusNode n) {
 		if (print) printNode(n);
-		return nlJoin(
-				visit(n.left),
-				visit(n.right),
-				"sub"
-		);
+		if (n.left instanceof IntNode && ((IntNode) n.left).val == 0) { //0 - x
+			visit(n.right);
+			emit(NEG);
+			return null;
+		}
+		DivNode div = remainder(n);
+		if (div != null) { //x - x/y*y
+			visit(div.left);
+			visit(div.right);
+			emit(MOD);
+			return null;
+		}
+		visit(n.left);
+		visit(n.right);
+		emit(SUB);
+		return null;
+	}
+
+	/*
+	 * x - x/y*y (o x - y*(x/y)) e' il resto x mod y quando x e y sono la stessa
+	 * variabile o costante nelle due occorrenze: restituisce x/y, null se n non
+	 * ha questa forma. Con y = 0 anche mod fallisce a run time.
+	 */
+	private static DivNode remainder(MinusNode n) {
+		if (!(n.right instanceof TimesNode)) return null;
+		TimesNode t = (TimesNode) n.right;
+		for (int k = 0; k < 2; k++) {
+			Node f = k == 0 ? t.left : t.right, y = k == 0 ? t.right : t.left;
+			if (f instanceof DivNode && AlgebraicSimplificationASTVisitor.sameValue(n.left, ((DivNode) f).left)
+				&& AlgebraicSimplificationASTVisitor.sameValue(((DivNode) f).right, y))
+				return (DivNode) f;
+		}
+		return null;
 	}
 
 	@Override
-	public String visitNode(DivNode n) {
+	public Void visitNode(DivNode n) {
 		if (print) printNode(n);
-		return nlJoin(
-				visit(n.left),
-				visit(n.right),
-				"div"
-		);
+		int k = log2(n.right);
+		if (k > 0) { //x / 2^k, rounded toward zero by shr as by div
+			visit(n.left);
+			emit(SHR, k);
+			return null;
+		}
+		visit(n.left);
+		visit(n.right);
+		emit(DIV);
+		return null;
 	}
 
 	@Override
-	public String visitNode(AndNode n) {
+	public Void visitNode(AndNode n) {
 		if (print) printNode(n);
-		String l1 = freshLabel();
-		String l2 = freshLabel();
-		return nlJoin(
-				visit(n.left), "push 0", "beq "+l1, //if left is false push 0
-				visit(n.right), "push 0", "beq "+l1, //if right is false push 0
-				"push 1", //in other case push 1 (true)
-				"b "+l2,
-				l1+":",
-				"push 0",
-				l2+":"
-		);
+		if (jumpingConditions) {
+			materialize(n);
+			return null;
+		}
+		Label l1 = freshLabelObject();
+		Label l2 = freshLabelObject();
+		visit(n.left);
+		emit(PUSH, 0); //if left is false push 0
+		emit(BEQ, l1);
+		visit(n.right);
+		emit(PUSH, 0); //if right is false push 0
+		emit(BEQ, l1);
+		emit(PUSH, 1); //in other case push 1 (true)
+		emit(B, l2);
+		define(l1);
+		emit(PUSH, 0);
+		define(l2);
+		return null;
 	}
 
 	@Override
-	public String visitNode(OrNode n) {
+	public Void visitNode(OrNode n) {
 		if (print) printNode(n);
-		String l1 = freshLabel();
-		String l2 = freshLabel();
-		return nlJoin(
-				visit(n.left), "push 1", "beq "+l1, //if left is true push 1
-				visit(n.right), "push 1", "beq "+l1, //if right is true push 1
-				"push 0", //in other case push 0
-				"b "+l2,
-				l1+":",
-				"push 1",
-				l2+":"
-		);
+		if (jumpingConditions) {
+			materialize(n);
+			return null;
+		}
+		Label l1 = freshLabelObject();
+		Label l2 = freshLabelObject();
+		visit(n.left);
+		emit(PUSH, 1); //if left is true push 1
+		emit(BEQ, l1);
+		visit(n.right);
+		emit(PUSH, 1); //if right is true push 1
+		emit(BEQ, l1);
+		emit(PUSH, 0); //in other case push 0
+		emit(B, l2);
+		define(l1);
+		emit(PUSH, 1);
+		define(l2);
+		return null;
 	}
 
 	@Override
-	public String visitNode(NotNode n) {
+	public Void visitNode(NotNode n) {
 		if (print) printNode(n);
-		String l1 = freshLabel();
-		String l2 = freshLabel();
-		return nlJoin(
-				visit(n.exp), "push 0", //if zero push one
-				"beq "+l1,
-				"push 0", //else push 0
-				"b "+l2,
-				l1+":",
-				"push 1",
-				l2+":"
-		);
+		if (jumpingConditions) {
+			materialize(n);
+			return null;
+		}
+		Label l1 = freshLabelObject();
+		Label l2 = freshLabelObject();
+		visit(n.exp);
+		emit(PUSH, 0); //if zero push one
+		emit(BEQ, l1);
+		emit(PUSH, 0); //else push 0
+		emit(B, l2);
+		define(l1);
+		emit(PUSH, 1);
+		define(l2);
+		return null;
 	}
 
 	@Override
-	public String visitNode(LessEqualNode n) {
+	public Void visitNode(LessEqualNode n) {
 		if (print) printNode(n);
-		final String l1 = freshLabel();
-		final String l2 = freshLabel();
-		return nlJoin(
-				visit(n.left), visit(n.right), "bleq " + l1,
-				"push 0",
-				"b " + l2,
-				l1 + ":",
-				"push 1",
-				l2 + ":"
-		);
+		final Label l1 = freshLabelObject();
+		final Label l2 = freshLabelObject();
+		visit(n.left);
+		visit(n.right);
+		emit(BLEQ, l1);
+		emit(PUSH, 0);
+		emit(B, l2);
+		define(l1);
+		emit(PUSH, 1);
+		define(l2);
+		return null;
 	}
 
 	@Override
-	public String visitNode(GreaterEqualNode n) {
+	public Void visitNode(GreaterEqualNode n) {
 		if (print) printNode(n);
-		String l1 = freshLabel();
-		String l2 = freshLabel();
-		return nlJoin(
-				visit(n.left), visit(n.right), "sub", //compute the difference
-				"push 1", "add", //sum 1 (to manage equal case)
-				"push 0", "bleq "+l1, //compare the result with zero
-				"push 1",
-				"b "+l2,
-				l1+":",
-				"push 0",
-				l2+":"
-		);
+		Label l1 = freshLabelObject();
+		Label l2 = freshLabelObject();
+		visit(n.left);
+		visit(n.right);
+		emit(BGEQ, l1);
+		emit(PUSH, 0);
+		emit(B, l2);
+		define(l1);
+		emit(PUSH, 1);
+		define(l2);
+		return null;
 	}
 
 	//estensione object oriented
 
 	@Override
-	public String visitNode(EmptyNode n){
+	public Void visitNode(EmptyNode n){
 		if (print) printNode(n);
-		return nlJoin(
-				"push -1"
-		);
+		emit(PUSH, -1);
+		return null;
 	}
 
 	@Override
-	public String visitNode(MethodNode n) {
+	public Void visitNode(MethodNode n) {
 		if (print) printNode(n,n.id);
-
-		n.label = freshFunLabel(); //generazione della label per il metodo
-
-		String declCode = null;
-		String popDecl = null;
-		for (Node dec : n.declist) {
-			declCode = nlJoin(declCode, visit(dec));
-			popDecl = nlJoin(popDecl, "pop");
+		if (!n.reachable) { //never called: no code and no dispatch table entry
+			n.label = null;
+			return null;
 		}
 
-		String popParl = null;
-		for (int i=0; i<n.parlist.size() ; i++){
-			popParl = nlJoin(popParl, "pop");
-		}
-
-		putCode(
-				nlJoin(
-						n.label + ":",
-						"cfp",
-						"lra",
-						declCode,
-						visit(n.exp),
-						"stm",
-						popDecl,
-						"sra",
-						"pop",
-						popParl,
-						"sfp",
-						"ltm",
-						"lra", "js" //jump to the return address (the method execution is ended)
-				)
-		);
+		n.label = new Label(freshFunLabel()); //generazione della label per il metodo
+
+		Code outer = code;
+		code = new Code();
+		int outerParams = frameParams, outerDecls = frameDecls;
+		List<Integer> outerDisplay = frameDisplay;
+		frameParams = n.parlist.size();
+		frameDecls = n.declist.size();
+		frameDisplay = savedDisplay(1, 2);
+		define(n.label);
+		emit(CFP, LRA);
+		Label body = freshLabelObject();
+		functionBodies.put(n.entry, body);
+		define(body);
+		enterDisplay(2, 1, 2); //the object and the frame of the method
+		for (Node dec : n.declist) visit(dec);
+		visit(n.exp);
+		emit(STM);
+		pop(n.declist.size());
+		emit(SRA);
+		pop(n.parlist.size()+1); //parameters and access link
+		emit(SFP);
+		leaveDisplay(1, 2);
+		emit(LTM, LRA, JS); //jump to the return address (the method execution is ended)
+		putCode(code);
+		code = outer;
+		frameParams = outerParams;
+		frameDecls = outerDecls;
+		frameDisplay = outerDisplay;
 		return null;
 	}
 
@@ -368,27 +720,29 @@ public class CodeGenerationASTVisitor extends BaseASTVisitor<String, VoidExcepti
 	 * 		dopo ogni nuovo metodo)
 	 * */
 	@Override
-	public String visitNode(ClassNode n){
+	public Void visitNode(ClassNode n){
 		//visit every method of the class in order to build the dispatch table
-		final ArrayList<String> dispatchTable = new ArrayList<>();
+		final ArrayList<Label> dispatchTable = new ArrayList<>();
 		for(MethodNode m : n.methods){
 			visit(m);
 			dispatchTable.add(m.offset, m.label);
 		}
-
-		//code to build the dispatch table on the heap
-		String dtBuilding = null;
-		for (String label : dispatchTable){
-			dtBuilding = nlJoin(dtBuilding, nlJoin(
-					"push " + label, "lhp", "sw", //push the function address on the heap
-					"lhp", "push 1", "add", "shp" //update the heap pointer
-			));
+		//trailing slots of unreachable methods are dropped, the others keep their offsets
+		while (!dispatchTable.isEmpty() && dispatchTable.get(dispatchTable.size()-1) == null)
+			dispatchTable.remove(dispatchTable.size()-1);
+
+		emit(LHP); //push the class dispatch pointer on the stack (dispatchTables has it already)
+		//build the dispatch table on the heap
+		for (Label label : dispatchTable){
+			//push the function address on the heap (-1: unreachable method)
+			if (label != null) emit(PUSH, label);
+			else emit(PUSH, -1);
+			emit(LHP, SW);
+			emit(LHP); //update the heap pointer
+			emit(PUSH, 1);
+			emit(ADD, SHP);
 		}
-
-		return nlJoin(
-				"lhp", //push the class dispatch pointer on the stack
-				dtBuilding //build the dispatch table
-		);
+		return null;
 	}
 
 	/*
@@ -396,67 +750,88 @@ public class CodeGenerationASTVisitor extends BaseASTVisitor<String, VoidExcepti
 	 * 		il loro valore sullo stack (solo temporaneamente)
 	 * 	2 -	sposto i valori dallo stack allo heap
 	 *	3 - pusho sullo heap il dispatch pointer della classe corrispondente
-	 * 		(calcolato come memsize-entry)
+	 * 		(l'indirizzo della sua dispatch table, noto staticamente)
 	 * 	4 -	pusho sullo stack l'object pointer (valore di hp corrente)
 	 */
 	@Override
-	public String visitNode(NewNode n){
+	public Void visitNode(NewNode n){
 		if (print) printNode(n,n.id);
 
 		//load every parameter of the constructor on the stack
 		//(the first in the list is the first one to be pushed)
-		String loadParams = null;
 		for (int i=0; i<n.fields.size(); i++){
-			loadParams = nlJoin(loadParams, visit(n.fields.get(i)));
+			visit(n.fields.get(i));
 		}
 
-		//mode the parameters from the stack to the heap through sw
-		//sposto i parametri dallo stack allo heap (sw) e aggiorno l'hp
-		String moveFromStackToHeap = null;
-		for (int i=0; i<n.fields.size(); i++){
-			moveFromStackToHeap = nlJoin(moveFromStackToHeap, nlJoin(
-					"lhp", "sw", //move parameter 'i' from stack to heap
-					"lhp", "push 1", "add", "shp" //update the heap pointer
-			));
+		//the header tells the garbage collector how many fields the object has
+		//and which of them are object pointers (fields of class type)
+		int pointerMask = 0;
+		List<TypeNode> fieldTypes = ((ClassTypeNode) n.entry.type).allFields;
+		for (int i=0; i<fieldTypes.size() && i<GarbageCollector.MASKED_FIELDS; i++){
+			if (fieldTypes.get(i) instanceof RefTypeNode) pointerMask |= 1 << i;
 		}
 
-		return nlJoin(
-				loadParams,
-				moveFromStackToHeap,
-				"push " + ExecuteVM.MEMSIZE, "push "+ n.entry.offset, "add", //compute the dispatch pointer of the class
-				"lhp", "sw", //push the dispatch pointer on the heap
-				"lhp", //load the object pointer on the stack
-				"lhp", "push 1", "add", "shp" //update the heap pointer
-		);
+		emit(PUSH, dispatchTables.get(n.id)); //the dispatch pointer of the class is the address of its dispatch table
+		emit(PUSH, GarbageCollector.header(n.fields.size(), pointerMask));
+		emit(NEW); //move fields and dispatch pointer to a new heap block and load the object pointer on the stack
+		return null;
 	}
 
 	@Override
-	public String visitNode(ClassCallNode n){
+	public Void visitNode(ClassFieldNode n) {
+		if (print) printNode(n,n.idField);
+		frame(n.nl, n.entry.nl);
+		emit(PUSH, n.entry.offset); //compute the object address
+		emit(ADD, LW);
+		emit(PUSH, n.fieldEntry.offset); //then the address of the field
+		emit(ADD, LW);
+		return null;
+	}
+
+	@Override
+	public Void visitNode(ClassCallNode n){
 		if (print) printNode(n,n.idMethod);
 
+		if (n.tail && reusesFrame(n.arglist.size(), 1, 2)) {
+			tailCalls++;
+			for (int i=n.arglist.size()-1; i>=0; i--) visit(n.arglist.get(i));
+			frame(n.nl, n.entry.nl);
+			emit(PUSH, n.entry.offset);
+			emit(ADD, LW); //the object
+			if (n.target != null) { //the method is known: its code sets up the frame on the reused space
+				emit(B, replaceFrame(n.arglist.size(), false) ? functionBodies.get(n.target.entry) : n.target.label);
+				return null;
+			}
+			emit(DUP, LW); //dispatch pointer
+			emit(PUSH, n.methodEntry.offset);
+			emit(ADD, LW, STM); //address of the method
+			if (!replaceFrame(n.arglist.size(), false))
+				emit(CFP, LRA); //the entry of the method, done here: js sets ra
+			emit(LTM);
+			emit(PUSH, 2);
+			emit(ADD, JS); //past cfp and lra of the method
+			return null;
+		}
+
+		saveDisplay(1, 2);
+		emit(LFP);
 		//load every argument on the stack after its visit
-		String argsCode = null;
 		for (int i=n.arglist.size()-1; i>=0; i--){
-			argsCode =nlJoin(argsCode,visit(n.arglist.get(i)));
+			visit(n.arglist.get(i));
 		}
 
 		//compute the AR address
-		String getAR = null;
-		for (int i = 0; i<n.nl-n.entry.nl; i++){
-			getAR=nlJoin(getAR,"lw");
+		frame(n.nl, n.entry.nl);
+
+		emit(PUSH, n.entry.offset); //compute the object address
+		emit(ADD, LW);
+		if (n.target != null) { //devirtualized: only one method can be called
+			emit(PUSH, n.target.label);
+			emit(JS);
+			return null;
 		}
-
-		return nlJoin(
-				"lfp",
-				argsCode,
-				"lfp",
-				getAR,
-				"push " + n.entry.offset, "add", "lw", //compute the object address
-				"stm", "ltm", "ltm", //duplicate the top of the stack
-				"lw", "lw", //compute the dispatch pointer of the class
-				"push " + n.methodEntry.offset, "add", "lw", //then compute the address of the function
-				"js" //jump to the function address
-		);
+		emit(DSP, n.methodEntry.offset); //jump to the method, through the dispatch table of the object
+		return null;
 	}
 
-}
\ No newline at end of file
+}
@@ -0,0 +1,110 @@
+package compiler;
+
+import java.io.*;
+import org.antlr.v4.runtime.*;
+import compiler.lib.*;
+import compiler.exc.*;
+
+/*
+ * Scaling benchmark for code generation: synthetic FOOL programs of about
+ * 10k, 100k and 1M AST nodes (chains of functions with a nested function
+ * each), timing CodeGenerationASTVisitor alone and then the whole in-memory
+ * compilation. Time per node should stay flat as the program grows.
+ * Usage: java compiler.CodegenBenchmark [rounds] [sizes...]
+ */
+public class CodegenBenchmark {
+
+    public static void main(String[] args) throws Exception {
+    	int rounds = args.length > 0 ? Integer.parseInt(args[0]) : 3;
+    	int[] sizes = {10_000, 100_000, 1_000_000};
+    	if (args.length > 1) {
+    		sizes = new int[args.length - 1];
+    		for (int i = 1; i < args.length; i++) sizes[i - 1] = Integer.parseInt(args[i]);
+    	}
+    	for (int size : sizes) bench(size, rounds);
+    }
+
+    // about 45 AST nodes per function, all reachable from the main expression
+    static String program(int nodes) {
+    	int functions = Math.max(1, nodes / 45);
+    	StringBuilder sb = new StringBuilder("let\n");
+    	for (int k = 0; k < functions; k++) {
+    		sb.append("  fun f").append(k).append(":int (x:int, y:int)\n")
+    		  .append("    let\n")
+    		  .append("      var a:int = x + ").append(k).append(" * y;\n")
+    		  .append("      fun g:int (z:int) if (z <= a) then { z + x } else { z - y };\n")
+    		  .append("    in if (g(a) >= ").append(k).append(") then { ")
+    		  .append(k == 0 ? "a" : "f" + (k - 1) + "(a - 1, y)")
+    		  .append(" } else { g(x) * 2 + a / 3 };\n");
+    	}
+    	return sb.append("in print(f").append(functions - 1).append("(1, 2));\n").toString();
+    }
+
+    static void bench(int size, int rounds) {
+    	String source = program(size);
+    	Node ast = new ASTGenerationSTVisitor().visit(new FOOLParser(new CommonTokenStream(new FOOLLexer(CharStreams.fromString(source)))).prog());
+    	FOOLlib.reset();
+    	SymbolTableASTVisitor symtableVisitor = new SymbolTableASTVisitor();
+    	symtableVisitor.visit(ast);
+    	try {
+    		new TypeCheckEASTVisitor().visit(ast);
+    	} catch (IncomplException | TypeException e) {
+    	}
+    	if (symtableVisitor.stErrors + FOOLlib.typeErrors > 0) throw new IllegalStateException("the generated program has errors");
+    	new ReachabilityASTVisitor().visit(ast);
+    	long nodes = countNodes(ast);
+
+    	long codegen = Long.MAX_VALUE, compile = Long.MAX_VALUE;
+    	int words = 0;
+    	for (int r = 0; r < rounds + 1; r++) { // the first round is warm-up
+    		FOOLlib.reset();
+    		long start = System.nanoTime();
+    		new CodeGenerationASTVisitor().visit(ast);
+    		long t = System.nanoTime() - start;
+    		if (r > 0) codegen = Math.min(codegen, t);
+    		start = System.nanoTime();
+    		svm.Program program = new FOOLCompiler().compile(CharStreams.fromString(source));
+    		t = System.nanoTime() - start;
+    		if (r > 0) compile = Math.min(compile, t);
+    		words = program.length();
+    	}
+    	System.out.printf("%,d AST nodes (%,d code words)%n", nodes, words);
+    	System.out.printf("  codegen  %10.1f ms %8.1f ns/node%n", codegen / 1e6, (double) codegen / nodes);
+    	System.out.printf("  compile  %10.1f ms %8.1f ns/node%n", compile / 1e6, (double) compile / nodes);
+    }
+
+    // PrintEASTVisitor prints one line per node, plus the STentry lines (and the types they contain)
+    static long countNodes(Node ast) {
+    	long[] nodes = {0};
+    	PrintStream out = System.out;
+    	System.setOut(new PrintStream(new OutputStream() {
+    		final StringBuilder line = new StringBuilder();
+    		int entryIndent = -1; // indentation of the "STentry: type" line whose type is being printed
+
+    		@Override
+    		public void write(int b) {
+    			if (b != '\n') {
+    				line.append((char) b);
+    				return;
+    			}
+    			int indent = 0;
+    			while (indent < line.length() && line.charAt(indent) == ' ') indent++;
+    			if (entryIndent >= 0 && indent > entryIndent) {
+    				line.setLength(0);
+    				return;
+    			}
+    			entryIndent = -1;
+    			if (line.indexOf("STentry: ") < 0) nodes[0]++;
+    			else if (line.indexOf("STentry: type") >= 0) entryIndent = indent;
+    			line.setLength(0);
+    		}
+    	}));
+    	try {
+    		new PrintEASTVisitor().visit(ast);
+    	} finally {
+    		System.setOut(out);
+    	}
+    	return nodes[0];
+    }
+
+}
@@ -0,0 +1,56 @@
+package compiler;
+
+import java.util.*;
+import org.antlr.v4.runtime.*;
+import svm.*;
+
+/*
+ * Compares conditions compiled as 0/1 values tested against 1 with the
+ * jumping code of CodeGenerationASTVisitor: code words and instructions run
+ * on the sample programs and on a condition heavy one, without and with the
+ * peephole optimizer. The outputs must be the same.
+ * Usage: java compiler.ConditionBenchmark [file.fool ...]
+ */
+public class ConditionBenchmark {
+
+    static final String CONDITIONS =
+    	"let\n" +
+    	"  fun fizz:bool (i:int) (i - (i/3)*3 == 0 || i - (i/5)*5 == 0) && !(i - (i/15)*15 == 0);\n" +
+    	"  fun inRange:bool (i:int, lo:int, hi:int) i >= lo && i <= hi;\n" +
+    	"  fun count:int (lo:int, hi:int)\n" +
+    	"    if (lo == hi) then {\n" +
+    	"      if (fizz(lo) || (inRange(lo, 100, 200) && !(lo == 150)) || !(lo >= 10) && lo <= 5) then {1} else {0}\n" +
+    	"    } else {\n" +
+    	"      count(lo, (lo + hi) / 2) + count((lo + hi) / 2 + 1, hi)\n" +
+    	"    };\n" +
+    	"in print(count(1, 5000));\n";
+
+    public static void main(String[] args) throws Exception {
+    	Map<String, CharStream> programs = new LinkedHashMap<>();
+    	for (String file : args.length > 0 ? args : new String[] {"quicksort.fool", "prova.fool", "prova2.fool", "prova3.fool", "prova4.fool"})
+    		programs.put(file, CharStreams.fromFileName(file));
+    	if (args.length == 0) programs.put("conditions", CharStreams.fromString(CONDITIONS));
+
+    	System.out.printf("%-16s %-9s %17s %23s%n", "", "", "code words", "instructions run");
+    	System.out.printf("%-16s %-9s %8s %8s %11s %11s%n", "program", "peephole", "values", "jumping", "values", "jumping");
+    	for (Map.Entry<String, CharStream> p : programs.entrySet())
+    		for (boolean peephole : new boolean[] {false, true}) {
+    			List<String> expected = new ArrayList<>(), output = new ArrayList<>();
+    			Program values = compile(p.getValue(), peephole, false);
+    			Program jumping = compile(p.getValue(), peephole, true);
+    			ExecuteVM v = Benchmarks.run(values, expected), j = Benchmarks.run(jumping, output);
+    			if (!output.equals(expected)) throw new IllegalStateException(p.getKey() + ": " + output + " instead of " + expected);
+    			System.out.printf("%-16s %-9s %8d %8d %11d %11d%n", p.getKey(), peephole ? "yes" : "no",
+    				values.length(), jumping.length(), v.getExecuted(), j.getExecuted());
+    		}
+    }
+
+    static Program compile(CharStream source, boolean peephole, boolean jumpingConditions) {
+    	source.seek(0);
+    	FOOLCompiler compiler = new FOOLCompiler();
+    	if (!peephole) compiler.setPeephole(null);
+    	compiler.setJumpingConditions(jumpingConditions);
+    	return compiler.compileQuietly(source);
+    }
+
+}
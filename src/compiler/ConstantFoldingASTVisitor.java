@@ -0,0 +1,300 @@
+package compiler;
+
+import java.util.*;
+import compiler.AST.*;
+import compiler.exc.*;
+import compiler.lib.*;
+
+/*
+ * Constant folding sull'AST arricchito, dopo il type checking: le
+ * espressioni con operandi costanti vengono calcolate a tempo di
+ * compilazione e sostituite sul posto (ogni visita restituisce il nodo che
+ * prende il posto di quello visitato). Si piegano gli operatori aritmetici,
+ * i confronti, gli operatori booleani e gli if con condizione costante.
+ *
+ * Division by zero is left to run time. An operand is only dropped when it
+ * is pure (no call, print, new or division that may fail), so side effects
+ * and errors happen as before: "x && false" is folded only for a pure x,
+ * "false && x" always (x is not evaluated anyway, the code short-circuits).
+ * getFolded() counts the nodes replaced.
+ */
+public class ConstantFoldingASTVisitor extends BaseASTVisitor<Node,VoidException> {
+
+	private int folded;
+
+	ConstantFoldingASTVisitor() {}
+	ConstantFoldingASTVisitor(boolean debug) {super(false, debug);}
+
+	public int getFolded() {
+		return folded;
+	}
+
+	// value of an integer or boolean constant (true is 1), null if n is not one
+	static Integer value(Node n) {
+		if (n instanceof IntNode) return ((IntNode) n).val;
+		if (n instanceof BoolNode) return ((BoolNode) n).val ? 1 : 0;
+		return null;
+	}
+
+	private Node fold(Node n, int v) {
+		return fold(n, new IntNode(v));
+	}
+
+	private Node fold(Node n, boolean v) {
+		return fold(n, new BoolNode(v));
+	}
+
+	private Node fold(Node n, Node result) {
+		folded++;
+		if (result.getLine() < 0) result.setLine(n.getLine());
+		return result;
+	}
+
+	// evaluating n has no effect other than its value and always terminates
+	static boolean pure(Node n) {
+		if (n instanceof IntNode || n instanceof BoolNode || n instanceof IdNode || n instanceof EmptyNode) return true;
+		if (n instanceof NotNode) return pure(((NotNode) n).exp);
+		if (n instanceof IfNode) return pure(((IfNode) n).cond) && pure(((IfNode) n).th) && pure(((IfNode) n).el);
+		if (n instanceof PlusNode) return pure(((PlusNode) n).left) && pure(((PlusNode) n).right);
+		if (n instanceof MinusNode) return pure(((MinusNode) n).left) && pure(((MinusNode) n).right);
+		if (n instanceof TimesNode) return pure(((TimesNode) n).left) && pure(((TimesNode) n).right);
+		if (n instanceof DivNode) {
+			Integer divisor = value(((DivNode) n).right);
+			return divisor != null && divisor != 0 && pure(((DivNode) n).left);
+		}
+		if (n instanceof EqualNode) return pure(((EqualNode) n).left) && pure(((EqualNode) n).right);
+		if (n instanceof LessEqualNode) return pure(((LessEqualNode) n).left) && pure(((LessEqualNode) n).right);
+		if (n instanceof GreaterEqualNode) return pure(((GreaterEqualNode) n).left) && pure(((GreaterEqualNode) n).right);
+		if (n instanceof AndNode) return pure(((AndNode) n).left) && pure(((AndNode) n).right);
+		if (n instanceof OrNode) return pure(((OrNode) n).left) && pure(((OrNode) n).right);
+		return false; // calls, print, new, fields (the object may be null)
+	}
+
+	private List<Node> visitAll(List<Node> nodes) {
+		List<Node> result = new ArrayList<>();
+		for (Node e : nodes) result.add(visit(e));
+		return Collections.unmodifiableList(result);
+	}
+
+	// dichiarazioni
+
+	@Override
+	public Node visitNode(ProgLetInNode n) {
+		if (print) printNode(n);
+		for (Node dec : n.declist) visit(dec);
+		n.exp = visit(n.exp);
+		return n;
+	}
+
+	@Override
+	public Node visitNode(ProgNode n) {
+		if (print) printNode(n);
+		n.exp = visit(n.exp);
+		return n;
+	}
+
+	@Override
+	public Node visitNode(FunNode n) {
+		if (print) printNode(n,n.id);
+		for (Node dec : n.declist) visit(dec);
+		n.exp = visit(n.exp);
+		return n;
+	}
+
+	@Override
+	public Node visitNode(VarNode n) {
+		if (print) printNode(n,n.id);
+		n.exp = visit(n.exp);
+		return n;
+	}
+
+	@Override
+	public Node visitNode(ClassNode n) {
+		if (print) printNode(n,n.id);
+		for (MethodNode m : n.methods) visit(m);
+		return n;
+	}
+
+	@Override
+	public Node visitNode(MethodNode n) {
+		if (print) printNode(n,n.id);
+		for (Node dec : n.declist) visit(dec);
+		n.exp = visit(n.exp);
+		return n;
+	}
+
+	// espressioni
+
+	@Override
+	public Node visitNode(PrintNode n) {
+		if (print) printNode(n);
+		n.exp = visit(n.exp); // the print itself always stays
+		return n;
+	}
+
+	@Override
+	public Node visitNode(IfNode n) {
+		if (print) printNode(n);
+		n.cond = visit(n.cond);
+		n.th = visit(n.th);
+		n.el = visit(n.el);
+		Integer c = value(n.cond);
+		if (c == null) return n;
+		return fold(n, c != 0 ? n.th : n.el);
+	}
+
+	@Override
+	public Node visitNode(EqualNode n) {
+		if (print) printNode(n);
+		n.left = visit(n.left);
+		n.right = visit(n.right);
+		Integer l = value(n.left), r = value(n.right);
+		if (l == null || r == null) return n;
+		return fold(n, l.intValue() == r.intValue());
+	}
+
+	@Override
+	public Node visitNode(LessEqualNode n) {
+		if (print) printNode(n);
+		n.left = visit(n.left);
+		n.right = visit(n.right);
+		Integer l = value(n.left), r = value(n.right);
+		if (l == null || r == null) return n;
+		return fold(n, l <= r);
+	}
+
+	@Override
+	public Node visitNode(GreaterEqualNode n) {
+		if (print) printNode(n);
+		n.left = visit(n.left);
+		n.right = visit(n.right);
+		Integer l = value(n.left), r = value(n.right);
+		if (l == null || r == null) return n;
+		return fold(n, l >= r);
+	}
+
+	@Override
+	public Node visitNode(PlusNode n) {
+		if (print) printNode(n);
+		n.left = visit(n.left);
+		n.right = visit(n.right);
+		Integer l = value(n.left), r = value(n.right);
+		if (l == null || r == null) return n;
+		return fold(n, l + r); // int overflow wraps around as in the VM
+	}
+
+	@Override
+	public Node visitNode(MinusNode n) {
+		if (print) printNode(n);
+		n.left = visit(n.left);
+		n.right = visit(n.right);
+		Integer l = value(n.left), r = value(n.right);
+		if (l == null || r == null) return n;
+		return fold(n, l - r);
+	}
+
+	@Override
+	public Node visitNode(TimesNode n) {
+		if (print) printNode(n);
+		n.left = visit(n.left);
+		n.right = visit(n.right);
+		Integer l = value(n.left), r = value(n.right);
+		if (l == null || r == null) return n;
+		return fold(n, l * r);
+	}
+
+	@Override
+	public Node visitNode(DivNode n) {
+		if (print) printNode(n);
+		n.left = visit(n.left);
+		n.right = visit(n.right);
+		Integer l = value(n.left), r = value(n.right);
+		if (l == null || r == null || r == 0) return n; // division by zero: the error stays at run time
+		return fold(n, l / r);
+	}
+
+	@Override
+	public Node visitNode(AndNode n) {
+		if (print) printNode(n);
+		n.left = visit(n.left);
+		n.right = visit(n.right);
+		Integer l = value(n.left), r = value(n.right);
+		if (l != null) return l == 0 ? fold(n, false) : fold(n, n.right);
+		if (r != null && r != 0) return fold(n, n.left);
+		if (r != null && pure(n.left)) return fold(n, false);
+		return n;
+	}
+
+	@Override
+	public Node visitNode(OrNode n) {
+		if (print) printNode(n);
+		n.left = visit(n.left);
+		n.right = visit(n.right);
+		Integer l = value(n.left), r = value(n.right);
+		if (l != null) return l != 0 ? fold(n, true) : fold(n, n.right);
+		if (r != null && r == 0) return fold(n, n.left);
+		if (r != null && pure(n.left)) return fold(n, true);
+		return n;
+	}
+
+	@Override
+	public Node visitNode(NotNode n) {
+		if (print) printNode(n);
+		n.exp = visit(n.exp);
+		Integer v = value(n.exp);
+		if (v == null) return n;
+		return fold(n, v == 0);
+	}
+
+	@Override
+	public Node visitNode(CallNode n) {
+		if (print) printNode(n,n.id);
+		n.arglist = visitAll(n.arglist);
+		return n;
+	}
+
+	@Override
+	public Node visitNode(ClassCallNode n) {
+		if (print) printNode(n,n.idMethod);
+		n.arglist = visitAll(n.arglist);
+		return n;
+	}
+
+	@Override
+	public Node visitNode(ClassFieldNode n) {
+		if (print) printNode(n,n.idField);
+		return n;
+	}
+
+	@Override
+	public Node visitNode(NewNode n) {
+		if (print) printNode(n,n.id);
+		n.fields = visitAll(n.fields);
+		return n;
+	}
+
+	@Override
+	public Node visitNode(IdNode n) {
+		if (print) printNode(n,n.id);
+		return n;
+	}
+
+	@Override
+	public Node visitNode(BoolNode n) {
+		if (print) printNode(n,n.val.toString());
+		return n;
+	}
+
+	@Override
+	public Node visitNode(IntNode n) {
+		if (print) printNode(n,n.val.toString());
+		return n;
+	}
+
+	@Override
+	public Node visitNode(EmptyNode n) {
+		if (print) printNode(n);
+		return n;
+	}
+
+}
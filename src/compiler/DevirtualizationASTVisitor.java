@@ -0,0 +1,281 @@
+package compiler;
+
+import java.util.*;
+import compiler.AST.*;
+import compiler.exc.*;
+import compiler.lib.*;
+
+/*
+ * Devirtualizzazione delle chiamate di metodo con l'analisi della gerarchia
+ * delle classi (CHA) sull'intero programma: un riferimento di classe C puo'
+ * puntare agli oggetti delle classi sottotipo di C (TypeRels), e la chiamata
+ * x.m() esegue il metodo che la dispatch table di quella classe ha
+ * all'offset di m. Le dispatch table si ricostruiscono dalla classTable di
+ * SymbolTableASTVisitor (i metodi di ogni classe) e da
+ * ClassTypeNode.allMethods (la loro dimensione). Se il metodo possibile e'
+ * uno solo la chiamata ha target != null e CodeGenerationASTVisitor la
+ * compila come chiamata diretta alla sua label, senza leggere dispatch
+ * pointer e dispatch table.
+ *
+ * Without inheritance the only subtype of a class is the class itself, so
+ * every call has one possible target; the analysis goes through the subtype
+ * relation anyway and stays valid if classes get subclasses. Runs after
+ * ReachabilityASTVisitor: a target without code (its class is never
+ * instantiated, the object can only be null) keeps the dispatch.
+ * getDevirtualized() counts the call sites compiled as direct calls,
+ * getCallSites() all the method call sites visited.
+ */
+public class DevirtualizationASTVisitor extends BaseASTVisitor<Void,VoidException> {
+
+	private final Map<String, Map<String, STentry>> classTable;
+	private final Map<String, MethodNode[]> dispatchTables = new HashMap<>();
+	private final Map<String, List<String>> hierarchy = new HashMap<>(); // class -> classes of the objects it may refer to
+	private int callSites, devirtualized;
+
+	DevirtualizationASTVisitor(Map<String, Map<String, STentry>> classTable) {this.classTable = classTable;}
+	DevirtualizationASTVisitor(Map<String, Map<String, STentry>> classTable, boolean debug) {
+		super(false, debug);
+		this.classTable = classTable;
+	}
+
+	public int getCallSites() {
+		return callSites;
+	}
+
+	public int getDevirtualized() {
+		return devirtualized;
+	}
+
+	// the class hierarchy and the dispatch table of every class, by method offset
+	private void analyze(List<DecNode> declist) {
+		for (DecNode dec : declist) {
+			if (!(dec instanceof ClassNode)) continue;
+			ClassNode c = (ClassNode) dec;
+			Map<STentry, MethodNode> methods = new HashMap<>();
+			for (MethodNode m : c.methods) methods.put(m.entry, m);
+			MethodNode[] table = new MethodNode[((ClassTypeNode) c.entry.type).allMethods.size()];
+			for (STentry entry : classTable.get(c.id).values())
+				if (methods.containsKey(entry)) table[entry.offset] = methods.get(entry);
+			dispatchTables.put(c.id, table);
+		}
+		for (String c : dispatchTables.keySet()) {
+			List<String> classes = new ArrayList<>();
+			for (String k : dispatchTables.keySet())
+				if (TypeRels.isSubtype(new RefTypeNode(k), new RefTypeNode(c))) classes.add(k);
+			hierarchy.put(c, classes);
+		}
+	}
+
+	// the only method the call can run, null if there are more (or none)
+	private MethodNode target(ClassCallNode n) {
+		MethodNode target = null;
+		for (String k : hierarchy.get(((RefTypeNode) n.entry.type).id)) {
+			MethodNode[] table = dispatchTables.get(k);
+			MethodNode m = n.methodEntry.offset < table.length ? table[n.methodEntry.offset] : null;
+			if (m == null || (target != null && m != target)) return null;
+			target = m;
+		}
+		return target;
+	}
+
+	@Override
+	public Void visitNode(ProgLetInNode n) {
+		if (print) printNode(n);
+		analyze(n.declist);
+		for (Node dec : n.declist) visit(dec);
+		visit(n.exp);
+		return null;
+	}
+
+	@Override
+	public Void visitNode(ProgNode n) {
+		if (print) printNode(n);
+		visit(n.exp);
+		return null;
+	}
+
+	@Override
+	public Void visitNode(FunNode n) {
+		if (print) printNode(n,n.id);
+		for (Node dec : n.declist) visit(dec);
+		visit(n.exp);
+		return null;
+	}
+
+	@Override
+	public Void visitNode(VarNode n) {
+		if (print) printNode(n,n.id);
+		visit(n.exp);
+		return null;
+	}
+
+	@Override
+	public Void visitNode(ClassNode n) {
+		if (print) printNode(n,n.id);
+		for (MethodNode m : n.methods) visit(m);
+		return null;
+	}
+
+	@Override
+	public Void visitNode(MethodNode n) {
+		if (print) printNode(n,n.id);
+		for (Node dec : n.declist) visit(dec);
+		visit(n.exp);
+		return null;
+	}
+
+	@Override
+	public Void visitNode(ClassCallNode n) {
+		if (print) printNode(n,n.idMethod);
+		callSites++;
+		MethodNode target = target(n);
+		if (target != null && target.reachable) {
+			n.target = target;
+			devirtualized++;
+		}
+		for (Node arg : n.arglist) visit(arg);
+		return null;
+	}
+
+	// the other expressions: visit the subexpressions
+
+	@Override
+	public Void visitNode(CallNode n) {
+		if (print) printNode(n,n.id);
+		for (Node arg : n.arglist) visit(arg);
+		return null;
+	}
+
+	@Override
+	public Void visitNode(NewNode n) {
+		if (print) printNode(n,n.id);
+		for (Node field : n.fields) visit(field);
+		return null;
+	}
+
+	@Override
+	public Void visitNode(PrintNode n) {
+		if (print) printNode(n);
+		visit(n.exp);
+		return null;
+	}
+
+	@Override
+	public Void visitNode(IfNode n) {
+		if (print) printNode(n);
+		visit(n.cond);
+		visit(n.th);
+		visit(n.el);
+		return null;
+	}
+
+	@Override
+	public Void visitNode(EqualNode n) {
+		if (print) printNode(n);
+		visit(n.left);
+		visit(n.right);
+		return null;
+	}
+
+	@Override
+	public Void visitNode(TimesNode n) {
+		if (print) printNode(n);
+		visit(n.left);
+		visit(n.right);
+		return null;
+	}
+
+	@Override
+	public Void visitNode(PlusNode n) {
+		if (print) printNode(n);
+		visit(n.left);
+		visit(n.right);
+		return null;
+	}
+
+	@Override
+	public Void visitNode(MinusNode n) {
+		if (print) printNode(n);
+		visit(n.left);
+		visit(n.right);
+		return null;
+	}
+
+	@Override
+	public Void visitNode(DivNode n) {
+		if (print) printNode(n);
+		visit(n.left);
+		visit(n.right);
+		return null;
+	}
+
+	@Override
+	public Void visitNode(AndNode n) {
+		if (print) printNode(n);
+		visit(n.left);
+		visit(n.right);
+		return null;
+	}
+
+	@Override
+	public Void visitNode(OrNode n) {
+		if (print) printNode(n);
+		visit(n.left);
+		visit(n.right);
+		return null;
+	}
+
+	@Override
+	public Void visitNode(NotNode n) {
+		if (print) printNode(n);
+		visit(n.exp);
+		return null;
+	}
+
+	@Override
+	public Void visitNode(GreaterEqualNode n) {
+		if (print) printNode(n);
+		visit(n.left);
+		visit(n.right);
+		return null;
+	}
+
+	@Override
+	public Void visitNode(LessEqualNode n) {
+		if (print) printNode(n);
+		visit(n.left);
+		visit(n.right);
+		return null;
+	}
+
+	@Override
+	public Void visitNode(ClassFieldNode n) {
+		if (print) printNode(n,n.idField);
+		return null;
+	}
+
+	@Override
+	public Void visitNode(IdNode n) {
+		if (print) printNode(n,n.id);
+		return null;
+	}
+
+	@Override
+	public Void visitNode(BoolNode n) {
+		if (print) printNode(n,n.val.toString());
+		return null;
+	}
+
+	@Override
+	public Void visitNode(IntNode n) {
+		if (print) printNode(n,n.val.toString());
+		return null;
+	}
+
+	@Override
+	public Void visitNode(EmptyNode n) {
+		if (print) printNode(n);
+		return null;
+	}
+
+}
@@ -0,0 +1,57 @@
+package compiler;
+
+import java.util.*;
+import org.antlr.v4.runtime.*;
+import svm.*;
+
+/*
+ * Devirtualization of method calls: FOOL programs whose methods are too big
+ * or recursive to be inlined, compiled with every call through the dispatch
+ * table and with the call sites that have a single target compiled as
+ * direct calls. Reports the call sites devirtualized, code words,
+ * instructions run and the best time of the decoded engine; the outputs
+ * must be the same.
+ * Usage: java compiler.DevirtualizationBenchmark [rounds] [N]
+ */
+public class DevirtualizationBenchmark {
+
+    // name, program with N in place of the size
+    static final String[][] PROGRAMS = {
+    	{"lists", "let\n" +
+    		"  class Cell (v:int, next:Cell) {\n" +
+    		"    fun sum:int () if (next == null) then {v} else {v + next.sum()};\n" +
+    		"    fun count:int (acc:int) if (next == null) then {acc + 1} else {next.count(acc + 1)};\n" +
+    		"  }\n" +
+    		"  fun build:Cell (i:int, acc:Cell) if (i == 0) then {acc} else {build(i - 1, new Cell(i, acc))};\n" +
+    		"  fun loop:int (k:int, l:Cell, acc:int) if (k == 0) then {acc} else {loop(k - 1, l, acc + l.sum() - l.count(0))};\n" +
+    		"in print(loop(N / 100, build(100, null), 0));\n"},
+    	{"counters", "let\n" +
+    		"  class Counter (step:int) {\n" +
+    		"    fun next:int (n:int) let var m:int = n + step; in if (m >= 1000) then {m - 1000} else {m};\n" +
+    		"  }\n" +
+    		"  class Pair (a:Counter, b:Counter) {\n" +
+    		"    fun both:int (n:int) let var x:int = a.next(n); in b.next(x);\n" +
+    		"  }\n" +
+    		"  fun run:int (k:int, p:Pair, acc:int) if (k == 0) then {acc} else {run(k - 1, p, p.both(acc))};\n" +
+    		"in print(run(N, new Pair(new Counter(3), new Counter(7)), 0));\n"},
+    };
+
+    public static void main(String[] args) throws Exception {
+    	int rounds = args.length > 0 ? Integer.parseInt(args[0]) : 5;
+    	int n = args.length > 1 ? Integer.parseInt(args[1]) : 200_000;
+    	System.out.printf("%-9s %7s %15s %23s %19s%n", "", "", "code words", "instructions run", "decoded ms");
+    	System.out.printf("%-9s %7s %7s %7s %11s %11s %9s %9s%n", "program", "direct", "before", "after", "before", "after", "before", "after");
+    	for (String[] p : PROGRAMS) {
+    		String source = p[1].replace("N", Integer.toString(n));
+    		FOOLCompiler dispatch = new FOOLCompiler(), direct = new FOOLCompiler();
+    		dispatch.setDevirtualize(false);
+    		Program before = dispatch.compileQuietly(CharStreams.fromString(source)), after = direct.compileQuietly(CharStreams.fromString(source));
+    		List<String> expected = new ArrayList<>(), output = new ArrayList<>();
+    		ExecuteVM b = Benchmarks.run(before, expected), a = Benchmarks.run(after, output);
+    		if (!output.equals(expected)) throw new IllegalStateException(p[0] + ": " + output + " instead of " + expected);
+    		System.out.printf("%-9s %7d %7d %7d %11d %11d %9.1f %9.1f%n", p[0], direct.getDevirtualized(),
+    			before.length(), after.length(), b.getExecuted(), a.getExecuted(), Benchmarks.time(before, rounds), Benchmarks.time(after, rounds));
+    	}
+    }
+
+}
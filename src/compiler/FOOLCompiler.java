@@ -0,0 +1,208 @@
+package compiler;
+
+import java.io.*;
+import java.util.*;
+import org.antlr.v4.runtime.*;
+import compiler.lib.*;
+import compiler.exc.*;
+import compiler.IR.Code;
+import svm.*;
+
+/*
+ * Compilazione in memoria: sorgente FOOL -> svm.Program pronto per ExecuteVM.
+ * Dopo il type checking l'AST passa per l'inlining, per il constant folding
+ * con la semplificazione algebrica, per l'analisi di raggiungibilita', per
+ * la devirtualizzazione delle chiamate di metodo e per la ricerca delle
+ * chiamate di coda.
+ * Il codice generato e' IR (IR.Code), passa per il PeepholeOptimizer
+ * (setPeephole(null) lo esclude) e viene codificato direttamente nell'int[]
+ * della VM, senza testo .asm da rileggere: getAsm() lo stampa solo come
+ * output di debug.
+ * Uses the global state of FOOLlib, so one compilation at a time.
+ *
+ * Usage: java compiler.FOOLCompiler file.fool [-asm]   (compiles and runs it)
+ */
+public class FOOLCompiler {
+
+	public int lexicalErrors, syntaxErrors, symbolTableErrors, typeErrors;
+	private Code code;
+	private int folded, simplified, tailCalls, devirtualized;
+	private PeepholeOptimizer peephole = new PeepholeOptimizer();
+	private boolean jumpingConditions = true;
+	private boolean simplify = true;
+	private boolean display = false;
+	private boolean eliminateTailCalls = true;
+	private boolean devirtualize = true;
+	private int inlineBudget = InliningASTVisitor.BUDGET;
+	private Map<String, Integer> inlined = Map.of();
+	private boolean quiet = false; // compileQuietly
+
+	public static Program compile(String source) {
+		return new FOOLCompiler().compile(CharStreams.fromString(source));
+	}
+
+	// null if there are errors (counted in the fields, reported on System.out by the visitors)
+	public Program compile(CharStream source) {
+		FOOLlib.reset();
+		code = null;
+		folded = simplified = tailCalls = devirtualized = 0;
+		inlined = Map.of();
+		FOOLLexer lexer = new FOOLLexer(source);
+		FOOLParser parser = new FOOLParser(new CommonTokenStream(lexer));
+		if (quiet) { // the console listeners of ANTLR print the syntax errors on System.err
+			lexer.removeErrorListeners();
+			parser.removeErrorListeners();
+		}
+		Node ast = new ASTGenerationSTVisitor().visit(parser.prog());
+		lexicalErrors = lexer.lexicalErrors;
+		syntaxErrors = parser.getNumberOfSyntaxErrors();
+		if (lexicalErrors + syntaxErrors > 0) return null;
+
+		SymbolTableASTVisitor symtableVisitor = new SymbolTableASTVisitor();
+		symtableVisitor.visit(ast);
+		symbolTableErrors = symtableVisitor.stErrors;
+		try {
+			new TypeCheckEASTVisitor().visit(ast);
+		} catch (IncomplException | TypeException e) { // already counted
+		}
+		typeErrors = FOOLlib.typeErrors;
+		if (symbolTableErrors + typeErrors > 0) return null;
+
+		if (inlineBudget > 0) { // before folding: the constant arguments are folded into the bodies
+			InliningASTVisitor inliner = new InliningASTVisitor(inlineBudget);
+			ast = inliner.visit(ast);
+			inlined = inliner.getInlined();
+		}
+		ConstantFoldingASTVisitor folding = simplify ? new AlgebraicSimplificationASTVisitor() : new ConstantFoldingASTVisitor();
+		ast = folding.visit(ast); // before reachability: calls in folded away branches do not count
+		folded = folding.getFolded();
+		if (simplify) simplified = ((AlgebraicSimplificationASTVisitor) folding).getSimplified();
+		new ReachabilityASTVisitor().visit(ast); // no code for functions and methods never called
+		if (devirtualize) {
+			DevirtualizationASTVisitor devirtualization = new DevirtualizationASTVisitor(symtableVisitor.getClassTable());
+			devirtualization.visit(ast);
+			devirtualized = devirtualization.getDevirtualized();
+		}
+		if (eliminateTailCalls) new TailCallASTVisitor().visit(ast);
+		CodeGenerationASTVisitor codegen = new CodeGenerationASTVisitor(false, jumpingConditions, simplify, display);
+		codegen.visit(ast);
+		tailCalls = codegen.getTailCalls();
+		code = codegen.getCode();
+		if (peephole != null) peephole.optimize(code);
+		return new Program(code.encode(), code.getLabels());
+	}
+
+	// like compile, but nothing is printed (on System.out or System.err) and a
+	// program with errors is an IllegalArgumentException (for benchmarks and tests)
+	public Program compileQuietly(CharStream source) {
+		PrintStream out = System.out;
+		System.setOut(new PrintStream(OutputStream.nullOutputStream())); // the visitors print the errors there
+		quiet = true;
+		Program program;
+		try {
+			program = compile(source);
+		} finally {
+			System.setOut(out);
+			quiet = false;
+		}
+		if (program == null) throw new IllegalArgumentException(getErrors() + " compilation errors");
+		return program;
+	}
+
+	public void setPeephole(PeepholeOptimizer peephole) {
+		this.peephole = peephole;
+	}
+
+	public PeepholeOptimizer getPeephole() {
+		return peephole;
+	}
+
+	// false: conditions are computed as 0/1 values, as before the jumping code
+	public void setJumpingConditions(boolean jumpingConditions) {
+		this.jumpingConditions = jumpingConditions;
+	}
+
+	// false: no algebraic simplification (constants are still folded) and no
+	// shl/shr for powers of two
+	public void setSimplify(boolean simplify) {
+		this.simplify = simplify;
+	}
+
+	// true: non-local variables are read through a display (ldisp) instead of
+	// following the access links
+	public void setDisplay(boolean display) {
+		this.display = display;
+	}
+
+	// false: calls in tail position are compiled as ordinary calls
+	public void setTailCalls(boolean eliminateTailCalls) {
+		this.eliminateTailCalls = eliminateTailCalls;
+	}
+
+	// false: every method call goes through the dispatch table
+	public void setDevirtualize(boolean devirtualize) {
+		this.devirtualize = devirtualize;
+	}
+
+	// maximum nodes of an inlined body, 0: no inlining
+	public void setInlineBudget(int inlineBudget) {
+		this.inlineBudget = inlineBudget;
+	}
+
+	// AST nodes replaced by constant folding in the last compilation
+	public int getFolded() {
+		return folded;
+	}
+
+	// AST nodes replaced by algebraic identities in the last compilation
+	public int getSimplified() {
+		return simplified;
+	}
+
+	// calls compiled as jumps reusing the frame of the caller in the last compilation
+	public int getTailCalls() {
+		return tailCalls;
+	}
+
+	// method call sites compiled as direct calls in the last compilation
+	public int getDevirtualized() {
+		return devirtualized;
+	}
+
+	// functions and methods (Class.method) inlined in the last compilation -> calls replaced
+	public Map<String, Integer> getInlined() {
+		return inlined;
+	}
+
+	public int getErrors() {
+		return lexicalErrors + syntaxErrors + symbolTableErrors + typeErrors;
+	}
+
+	// generated code of the last compilation (null if it did not get there)
+	public Code getCode() {
+		return code;
+	}
+
+	// the same code as SVM assembly text
+	public String getAsm() {
+		return code == null ? null : code.toString();
+	}
+
+	public void writeAsm(String fileName) throws IOException {
+		try (BufferedWriter out = new BufferedWriter(new FileWriter(fileName))) {
+			out.write(getAsm());
+		}
+	}
+
+	public static void main(String[] args) throws Exception {
+		FOOLCompiler compiler = new FOOLCompiler();
+		Program program = compiler.compile(CharStreams.fromFileName(args[0]));
+		if (args.length > 1 && args[1].equals("-asm") && compiler.getAsm() != null) compiler.writeAsm(args[0]+".asm");
+		if (program == null) {
+			System.out.println("You had "+compiler.getErrors()+" errors.");
+			System.exit(1);
+		}
+		new ExecuteVM(program, OutputSink.STANDARD).cpuDecoded(program.decoded());
+	}
+
+}
@@ -0,0 +1,52 @@
+package compiler;
+
+import org.antlr.v4.runtime.*;
+import compiler.lib.*;
+import svm.*;
+
+/*
+ * Stress benchmark for the garbage collector: a FOOL program that keeps a
+ * live list while building and dropping short lists, run with growing
+ * address spaces and collection thresholds.
+ * Usage: java compiler.GCBenchmark [rounds]
+ */
+public class GCBenchmark {
+
+    static final String PROGRAM =
+    	"let\n" +
+    	"  class List (f:int, r:List) {\n" +
+    	"    fun first:int() f;\n" +
+    	"    fun rest:List() r;\n" +
+    	"  }\n" +
+    	"  fun build:List (n:int, acc:List) if (n == 0) then {acc} else {build(n-1, new List(n, acc))};\n" +
+    	"  fun sum:int (l:List) if (l == null) then {0} else {l.first()+sum(l.rest())};\n" +
+    	"  fun churn:int (n:int, s:int) if (n == 0) then {s} else {churn(n-1, s + sum(build(50, null)))};\n" +
+    	"  fun rounds:int (k:int, s:int) if (k == 0) then {s} else {rounds(k-1, s + churn(100, 0))};\n" +
+    	"  var keep:List = build(500, null);\n" +
+    	"in print(rounds(200, 0) + sum(keep));\n";
+
+    public static void main(String[] args) throws Exception {
+    	int rounds = args.length > 0 ? Integer.parseInt(args[0]) : 5;
+    	Program program = new FOOLCompiler().compileQuietly(CharStreams.fromString(PROGRAM));
+    	System.out.println("1000000 objects of 2 fields allocated per run, 500 always live");
+    	for (int memSize : new int[] {20000, 100000, 1000000})
+    		for (int threshold : new int[] {GarbageCollector.THRESHOLD, 16 * GarbageCollector.THRESHOLD})
+    			bench(program, memSize, threshold, rounds);
+    }
+
+    static void bench(Program program, int memSize, int threshold, int rounds) {
+    	long best = Long.MAX_VALUE;
+    	ExecuteVM vm = null;
+    	for (int r = 0; r < rounds + 2; r++) { // first two rounds are warm-up
+    		vm = new ExecuteVM(program, memSize, threshold, OutputSink.DISCARD);
+    		long start = System.nanoTime();
+    		vm.cpuDecoded(program.decoded());
+    		best = Math.min(best, r >= 2 ? System.nanoTime() - start : Long.MAX_VALUE);
+    	}
+    	GarbageCollector gc = vm.getCollector();
+    	System.out.printf("memory %7d threshold %5d: %8.2f ms, %4d collections, pause avg %7.1f us max %7.1f us, reclaimed %d bytes%n",
+    		memSize, threshold, best / 1e6, gc.getCollections(), gc.getTotalPauseNanos() / 1e3 / Math.max(1, gc.getCollections()),
+    		gc.getMaxPauseNanos() / 1e3, gc.getReclaimedBytes());
+    }
+
+}
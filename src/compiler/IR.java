@@ -0,0 +1,273 @@
+package compiler;
+
+import java.util.*;
+import svm.SVMParser;
+
+/*
+ * Rappresentazione intermedia del codice SVM, tra CodeGenerationASTVisitor e
+ * la macchina virtuale: istruzioni con opcode (Op), operando intero e label
+ * come oggetti. Il codice (Code) e' una lista doppiamente concatenata che gli
+ * ottimizzatori modificano sul posto; encode() la traduce direttamente
+ * nell'int[] eseguito da ExecuteVM, toString() la stampa come testo .asm
+ * (output di debug, nello stesso formato letto da Assembler e SVMParser).
+ */
+public class IR {
+
+	public enum Op {
+		PUSH(SVMParser.PUSH), POP(SVMParser.POP), ADD(SVMParser.ADD), SUB(SVMParser.SUB),
+		MULT(SVMParser.MULT), DIV(SVMParser.DIV), SW(SVMParser.STOREW), LW(SVMParser.LOADW),
+		B(SVMParser.BRANCH), BEQ(SVMParser.BRANCHEQ), BLEQ(SVMParser.BRANCHLESSEQ), JS(SVMParser.JS),
+		LRA(SVMParser.LOADRA), SRA(SVMParser.STORERA), LTM(SVMParser.LOADTM), STM(SVMParser.STORETM),
+		LFP(SVMParser.LOADFP), SFP(SVMParser.STOREFP), CFP(SVMParser.COPYFP), LHP(SVMParser.LOADHP),
+		SHP(SVMParser.STOREHP), PRINT(SVMParser.PRINT), HALT(SVMParser.HALT), NEW(SVMParser.NEW),
+		DUP(SVMParser.DUP), SWAP(SVMParser.SWAP), POPN(SVMParser.POPN), NEG(SVMParser.NEG), MOD(SVMParser.MOD),
+		BLT(SVMParser.BRANCHLESS), BNEQ(SVMParser.BRANCHNOTEQ), BGEQ(SVMParser.BRANCHGREATEREQ),
+		SHL(SVMParser.SHIFTLEFT), SHR(SVMParser.SHIFTRIGHT), LDISP(SVMParser.LOADDISPLAY), SDISP(SVMParser.STOREDISPLAY),
+		SWF(SVMParser.STOREFRAME), DSP(SVMParser.DISPATCH),
+		LABEL(-1); // definition of a label: no code
+
+		public final int opcode; // code word of the VM
+		public final String mnemonic;
+
+		Op(int opcode) {
+			this.opcode = opcode;
+			this.mnemonic = name().toLowerCase();
+		}
+
+		public boolean isBranch() {
+			return this == B || isConditional();
+		}
+
+		public boolean isConditional() {
+			return this == BEQ || this == BNEQ || this == BLEQ || this == BLT || this == BGEQ;
+		}
+
+		// whether a conditional branch jumps, with v1 on top of the stack and v2 below it
+		public boolean holds(int v2, int v1) {
+			switch (this) {
+				case BEQ: return v2 == v1;
+				case BNEQ: return v2 != v1;
+				case BLEQ: return v2 <= v1;
+				case BLT: return v2 < v1;
+				case BGEQ: return v2 >= v1;
+				default: throw new IllegalStateException(this + " is not a conditional branch");
+			}
+		}
+
+		public boolean hasOperand() {
+			return this == PUSH || this == POPN || this == SHL || this == SHR || this == LDISP || this == SDISP || this == SWF
+				|| this == DSP || isBranch();
+		}
+	}
+
+	// the identity of the object is the label, the name is only printed and exported
+	public static class Label {
+		public final String name;
+
+		public Label(String name) {
+			this.name = name;
+		}
+
+		// functionN labels are function entries (see FOOLlib.freshFunLabel)
+		public boolean isFunction() {
+			return name.startsWith("function");
+		}
+
+		@Override
+		public String toString() {
+			return name;
+		}
+	}
+
+	public static class Instr {
+		public Op op;
+		public int arg;     // integer operand of push, popn, shl, shr, ldisp, sdisp, swf and dsp
+		public Label label; // label operand of push and branches, defined label of LABEL
+		Instr prev, next;
+
+		public Instr(Op op, int arg, Label label) {
+			this.op = op;
+			this.arg = arg;
+			this.label = label;
+		}
+
+		public Instr next() {
+			return next;
+		}
+
+		public Instr prev() { // null for the first instruction (prev is the sentinel of Code)
+			return prev == null || prev.op == null ? null : prev;
+		}
+
+		public boolean is(Op o) {
+			return op == o;
+		}
+
+		public boolean isLabel() {
+			return op == Op.LABEL;
+		}
+
+		public boolean isConst() { // push of an integer
+			return op == Op.PUSH && label == null;
+		}
+
+		@Override
+		public String toString() {
+			if (isLabel()) return label.name + ":";
+			if (!op.hasOperand()) return op.mnemonic;
+			return op.mnemonic + " " + (label != null ? label.name : Integer.toString(arg));
+		}
+	}
+
+	public static class Code implements Iterable<Instr> {
+		private final Instr head = new Instr(null, 0, null); // sentinel, head.prev is the last instruction
+		private Map<String, Integer> labels = Map.of();
+
+		public Code() {
+			head.prev = head;
+		}
+
+		public Code add(Op op) {
+			return add(new Instr(op, 0, null));
+		}
+
+		public Code add(Op op, int arg) {
+			return add(new Instr(op, arg, null));
+		}
+
+		public Code add(Op op, Label label) {
+			return add(new Instr(op, 0, label));
+		}
+
+		public Code define(Label label) {
+			return add(new Instr(Op.LABEL, 0, label));
+		}
+
+		private Code add(Instr n) {
+			insertAfter(head.prev, n);
+			return this;
+		}
+
+		// moves the instructions of c at the end of this code, in constant time
+		public Code append(Code c) {
+			if (c.isEmpty()) return this;
+			Instr first = c.head.next, last = c.head.prev;
+			last.next = null;
+			head.prev.next = first;
+			first.prev = head.prev;
+			head.prev = last;
+			c.head.next = null;
+			c.head.prev = c.head;
+			return this;
+		}
+
+		public boolean isEmpty() {
+			return head.next == null;
+		}
+
+		public Instr first() {
+			return head.next;
+		}
+
+		public Instr last() {
+			return isEmpty() ? null : head.prev;
+		}
+
+		// n == null inserts at the beginning
+		public void insertAfter(Instr n, Instr m) {
+			Instr p = n == null ? head : n;
+			m.prev = p;
+			m.next = p.next;
+			if (p.next != null) p.next.prev = m;
+			else head.prev = m;
+			p.next = m;
+		}
+
+		public void remove(Instr n) {
+			Instr p = n.prev;
+			p.next = n.next;
+			if (n.next != null) n.next.prev = p;
+			else head.prev = p;
+			n.prev = n.next = null;
+		}
+
+		// the same instructions, with the same Label objects
+		public Code copy() {
+			Code c = new Code();
+			for (Instr n : this) c.add(new Instr(n.op, n.arg, n.label));
+			return c;
+		}
+
+		// number of words in the code segment
+		public int size() {
+			int size = 0;
+			for (Instr n : this) if (!n.isLabel()) size += n.op.hasOperand() ? 2 : 1;
+			return size;
+		}
+
+		@Override
+		public Iterator<Instr> iterator() {
+			return new Iterator<Instr>() {
+				Instr n = head.next;
+
+				public boolean hasNext() {
+					return n != null;
+				}
+
+				public Instr next() {
+					if (n == null) throw new NoSuchElementException();
+					Instr r = n;
+					n = n.next;
+					return r;
+				}
+			};
+		}
+
+		/*
+		 * Code segment of the VM: the addresses of the labels are computed in a
+		 * first pass, then every instruction is written with its operand. A
+		 * label used but never defined is a bug of the code generator.
+		 */
+		public int[] encode() {
+			Map<Label, Integer> addresses = new IdentityHashMap<>();
+			int size = 0;
+			for (Instr n : this)
+				if (n.isLabel()) addresses.put(n.label, size);
+				else size += n.op.hasOperand() ? 2 : 1;
+			int[] code = new int[size];
+			int i = 0;
+			for (Instr n : this) {
+				if (n.isLabel()) continue;
+				code[i++] = n.op.opcode;
+				if (!n.op.hasOperand()) continue;
+				if (n.label == null) code[i++] = n.arg;
+				else {
+					Integer address = addresses.get(n.label);
+					if (address == null) throw new IllegalStateException("Undefined label " + n.label);
+					code[i++] = address;
+				}
+			}
+			Map<String, Integer> names = new HashMap<>();
+			for (Map.Entry<Label, Integer> e : addresses.entrySet()) names.put(e.getKey().name, e.getValue());
+			labels = Collections.unmodifiableMap(names);
+			return code;
+		}
+
+		// label -> code address, of the last encode()
+		public Map<String, Integer> getLabels() {
+			return labels;
+		}
+
+		// text .asm, with an empty line before each function
+		@Override
+		public String toString() {
+			StringBuilder sb = new StringBuilder();
+			for (Instr n : this) {
+				if (n.isLabel() && n.label.isFunction()) sb.append('\n');
+				sb.append(n).append('\n');
+			}
+			return sb.toString();
+		}
+	}
+
+}
@@ -0,0 +1,502 @@
+package compiler;
+
+import java.util.*;
+import compiler.AST.*;
+import compiler.exc.*;
+import compiler.lib.*;
+
+/*
+ * Inlining sull'AST arricchito, dopo il type checking e prima del constant
+ * folding: le chiamate a funzioni piccole e non ricorsive e ai metodi piccoli
+ * vengono sostituite sul posto da una copia del corpo, con gli argomenti al
+ * posto dei parametri (ogni visita restituisce il nodo che prende il posto di
+ * quello visitato). Il bersaglio di una chiamata di metodo e' sempre noto: la
+ * classe di un oggetto e' quella dichiarata, non c'e' ereditarieta'. Un
+ * metodo che restituisce un campo diventa la lettura del campo
+ * (ClassFieldNode), senza dispatch e senza frame.
+ *
+ * Only bodies without declarations and of at most `budget` nodes are
+ * inlined, and a body is a candidate once its own calls have been inlined.
+ * The copy runs at the nesting level of the call: ids and calls declared
+ * outside the callee keep their STentry (visible from the call site too)
+ * and take the nl of the call site, while the parameters (the entries at
+ * the level of the body, offsets 1..n) are replaced by the arguments.
+ * Constants, ids and null can be copied anywhere; other arguments must be
+ * pure (see ConstantFoldingASTVisitor) and used at most once, so what is
+ * evaluated does not change. Method bodies may only read fields and
+ * parameters: any other name goes through the access link of the object.
+ * getInlined() reports the functions and methods inlined, with the number
+ * of calls replaced.
+ */
+public class InliningASTVisitor extends BaseASTVisitor<Node,VoidException> {
+
+	public static final int BUDGET = 12; // nodes of a body
+
+	private final int budget;
+	private final Map<STentry, FunNode> functions = new HashMap<>();
+	private final Map<STentry, MethodNode> methods = new HashMap<>();
+	private final Map<STentry, String> methodClass = new HashMap<>();
+	private final Map<String, Integer> inlined = new LinkedHashMap<>(); // callee -> calls replaced
+
+	InliningASTVisitor() {this(BUDGET);}
+	InliningASTVisitor(int budget) {this.budget = budget;}
+	InliningASTVisitor(int budget, boolean debug) {super(false, debug); this.budget = budget;}
+
+	// function id or Class.method -> calls replaced, in the order of the first one
+	public Map<String, Integer> getInlined() {
+		return Collections.unmodifiableMap(inlined);
+	}
+
+	public int getInlinedCalls() {
+		int calls = 0;
+		for (int c : inlined.values()) calls += c;
+		return calls;
+	}
+
+	private List<Node> visitAll(List<Node> nodes) {
+		List<Node> result = new ArrayList<>();
+		for (Node e : nodes) result.add(visit(e));
+		return Collections.unmodifiableList(result);
+	}
+
+	private static boolean duplicable(Node arg) {
+		return arg instanceof IntNode || arg instanceof BoolNode || arg instanceof IdNode || arg instanceof EmptyNode;
+	}
+
+	private Node inline(Node call, String name, Node body, Body copy) {
+		for (Node arg : copy.args) if (!ConstantFoldingASTVisitor.pure(arg)) return call;
+		Node result = copy.visit(body);
+		if (copy.failed) return call;
+		inlined.merge(name, 1, Integer::sum);
+		return result;
+	}
+
+	// dichiarazioni
+
+	@Override
+	public Node visitNode(ProgLetInNode n) {
+		if (print) printNode(n);
+		for (Node dec : n.declist) visit(dec);
+		n.exp = visit(n.exp);
+		return n;
+	}
+
+	@Override
+	public Node visitNode(ProgNode n) {
+		if (print) printNode(n);
+		n.exp = visit(n.exp);
+		return n;
+	}
+
+	@Override
+	public Node visitNode(FunNode n) {
+		if (print) printNode(n,n.id);
+		for (Node dec : n.declist) visit(dec);
+		n.exp = visit(n.exp);
+		if (n.declist.isEmpty()) functions.put(n.entry, n); // not before: calls from its body are recursive
+		return n;
+	}
+
+	@Override
+	public Node visitNode(VarNode n) {
+		if (print) printNode(n,n.id);
+		n.exp = visit(n.exp);
+		return n;
+	}
+
+	@Override
+	public Node visitNode(ClassNode n) {
+		if (print) printNode(n,n.id);
+		for (MethodNode m : n.methods) {
+			visit(m);
+			if (m.declist.isEmpty()) methods.put(m.entry, m);
+			methodClass.put(m.entry, n.id);
+		}
+		return n;
+	}
+
+	@Override
+	public Node visitNode(MethodNode n) {
+		if (print) printNode(n,n.id);
+		for (Node dec : n.declist) visit(dec);
+		n.exp = visit(n.exp);
+		return n;
+	}
+
+	// chiamate
+
+	@Override
+	public Node visitNode(CallNode n) {
+		if (print) printNode(n,n.id);
+		n.arglist = visitAll(n.arglist);
+		FunNode f = functions.get(n.entry);
+		if (f == null) return n;
+		return inline(n, f.id, f.exp, new Body(n.entry, n.entry.nl+1, n.arglist, n.nl, null));
+	}
+
+	@Override
+	public Node visitNode(ClassCallNode n) {
+		if (print) printNode(n,n.idMethod);
+		n.arglist = visitAll(n.arglist);
+		MethodNode m = methods.get(n.methodEntry);
+		if (m == null) return n;
+		return inline(n, methodClass.get(m.entry)+"."+m.id, m.exp, new Body(m.entry, 2, n.arglist, n.nl, n));
+	}
+
+	// espressioni: si visitano le sottoespressioni
+
+	@Override
+	public Node visitNode(PrintNode n) {
+		if (print) printNode(n);
+		n.exp = visit(n.exp);
+		return n;
+	}
+
+	@Override
+	public Node visitNode(IfNode n) {
+		if (print) printNode(n);
+		n.cond = visit(n.cond);
+		n.th = visit(n.th);
+		n.el = visit(n.el);
+		return n;
+	}
+
+	@Override
+	public Node visitNode(EqualNode n) {
+		if (print) printNode(n);
+		n.left = visit(n.left);
+		n.right = visit(n.right);
+		return n;
+	}
+
+	@Override
+	public Node visitNode(LessEqualNode n) {
+		if (print) printNode(n);
+		n.left = visit(n.left);
+		n.right = visit(n.right);
+		return n;
+	}
+
+	@Override
+	public Node visitNode(GreaterEqualNode n) {
+		if (print) printNode(n);
+		n.left = visit(n.left);
+		n.right = visit(n.right);
+		return n;
+	}
+
+	@Override
+	public Node visitNode(PlusNode n) {
+		if (print) printNode(n);
+		n.left = visit(n.left);
+		n.right = visit(n.right);
+		return n;
+	}
+
+	@Override
+	public Node visitNode(MinusNode n) {
+		if (print) printNode(n);
+		n.left = visit(n.left);
+		n.right = visit(n.right);
+		return n;
+	}
+
+	@Override
+	public Node visitNode(TimesNode n) {
+		if (print) printNode(n);
+		n.left = visit(n.left);
+		n.right = visit(n.right);
+		return n;
+	}
+
+	@Override
+	public Node visitNode(DivNode n) {
+		if (print) printNode(n);
+		n.left = visit(n.left);
+		n.right = visit(n.right);
+		return n;
+	}
+
+	@Override
+	public Node visitNode(AndNode n) {
+		if (print) printNode(n);
+		n.left = visit(n.left);
+		n.right = visit(n.right);
+		return n;
+	}
+
+	@Override
+	public Node visitNode(OrNode n) {
+		if (print) printNode(n);
+		n.left = visit(n.left);
+		n.right = visit(n.right);
+		return n;
+	}
+
+	@Override
+	public Node visitNode(NotNode n) {
+		if (print) printNode(n);
+		n.exp = visit(n.exp);
+		return n;
+	}
+
+	@Override
+	public Node visitNode(NewNode n) {
+		if (print) printNode(n,n.id);
+		n.fields = visitAll(n.fields);
+		return n;
+	}
+
+	@Override
+	public Node visitNode(ClassFieldNode n) {
+		if (print) printNode(n,n.idField);
+		return n;
+	}
+
+	@Override
+	public Node visitNode(IdNode n) {
+		if (print) printNode(n,n.id);
+		return n;
+	}
+
+	@Override
+	public Node visitNode(BoolNode n) {
+		if (print) printNode(n,n.val.toString());
+		return n;
+	}
+
+	@Override
+	public Node visitNode(IntNode n) {
+		if (print) printNode(n,n.val.toString());
+		return n;
+	}
+
+	@Override
+	public Node visitNode(EmptyNode n) {
+		if (print) printNode(n);
+		return n;
+	}
+
+	/*
+	 * Copy of the body of a callee at a call site: failed is set (and the
+	 * copy thrown away) when the body is too big, recursive or uses
+	 * something that cannot be moved to the call site.
+	 */
+	private class Body extends BaseASTVisitor<Node,VoidException> {
+
+		final STentry callee;
+		final int level;        // nesting level of the body: its parameters
+		final List<Node> args;
+		final int nl;           // nesting level of the call site
+		final ClassCallNode object; // method calls: the object of the call
+		final boolean[] used;
+		int size;
+		boolean failed;
+
+		Body(STentry callee, int level, List<Node> args, int nl, ClassCallNode object) {
+			this.callee = callee;
+			this.level = level;
+			this.args = args;
+			this.nl = nl;
+			this.object = object;
+			used = new boolean[args.size()];
+		}
+
+		private <N extends Node> N copy(Node n, N copy) {
+			copy.setLine(n.getLine());
+			return copy;
+		}
+
+		private void count() {
+			if (++size > budget) failed = true;
+		}
+
+		private List<Node> copyAll(List<Node> nodes) {
+			List<Node> result = new ArrayList<>();
+			for (Node e : nodes) result.add(visit(e));
+			return Collections.unmodifiableList(result);
+		}
+
+		// the argument in place of the parameter with this offset
+		private Node argument(int offset) {
+			Node arg = args.get(offset-1);
+			if (duplicable(arg)) return duplicate(arg);
+			if (used[offset-1]) failed = true;
+			used[offset-1] = true;
+			return arg;
+		}
+
+		// a constant, null or an id of the call site (its nl is already right)
+		private Node duplicate(Node arg) {
+			if (arg instanceof IdNode) return id(arg, ((IdNode) arg).id, ((IdNode) arg).entry, ((IdNode) arg).nl);
+			if (arg instanceof IntNode) return copy(arg, new IntNode(((IntNode) arg).val));
+			if (arg instanceof BoolNode) return copy(arg, new BoolNode(((BoolNode) arg).val));
+			return copy(arg, new EmptyNode());
+		}
+
+		private IdNode id(Node n, String id, STentry entry, int nl) {
+			IdNode copy = copy(n, new IdNode(id));
+			copy.entry = entry;
+			copy.nl = nl;
+			return copy;
+		}
+
+		// object of a call or field read in the body, given its entry: an id of the call site
+		private IdNode object(Node n, String id, STentry entry) {
+			if (object != null) failed = true; //the objects of a method are fields: not in the methods inlined
+			if (entry.nl < level) return id(n, id, entry, nl);
+			Node arg = args.get(entry.offset-1);
+			if (arg instanceof IdNode) return (IdNode) duplicate(arg);
+			failed = true; //null or an expression: the call needs the object in a variable
+			return id(n, id, entry, nl);
+		}
+
+		@Override
+		public Node visitNode(IdNode n) {
+			count();
+			if (n.entry.nl == level) return argument(n.entry.offset);
+			if (object == null) return id(n, n.id, n.entry, nl);
+			if (n.entry.nl != level-1 || n.entry.type instanceof ArrowTypeNode) {
+				failed = true; //not a field of the object
+				return n;
+			}
+			ClassFieldNode field = copy(n, new ClassFieldNode(object.idObject, n.id));
+			field.entry = object.entry;
+			field.fieldEntry = n.entry;
+			field.nl = nl;
+			return field;
+		}
+
+		@Override
+		public Node visitNode(ClassFieldNode n) {
+			count();
+			IdNode o = object(n, n.idObject, n.entry);
+			ClassFieldNode field = copy(n, new ClassFieldNode(o.id, n.idField));
+			field.entry = o.entry;
+			field.fieldEntry = n.fieldEntry;
+			field.nl = o.nl;
+			return field;
+		}
+
+		@Override
+		public Node visitNode(CallNode n) {
+			count();
+			//recursive, a functional parameter or, from a method, through the access link of the object
+			if (n.entry == callee || n.entry.nl == level || object != null) failed = true;
+			CallNode call = copy(n, new CallNode(n.id, copyAll(n.arglist)));
+			call.entry = n.entry;
+			call.nl = nl;
+			return call;
+		}
+
+		@Override
+		public Node visitNode(ClassCallNode n) {
+			count();
+			IdNode o = object(n, n.idObject, n.entry);
+			ClassCallNode call = copy(n, new ClassCallNode(o.id, n.idMethod, copyAll(n.arglist)));
+			call.entry = o.entry;
+			call.methodEntry = n.methodEntry;
+			call.nl = o.nl;
+			return call;
+		}
+
+		@Override
+		public Node visitNode(NewNode n) {
+			count();
+			NewNode copy = copy(n, new NewNode(n.id, copyAll(n.fields)));
+			copy.entry = n.entry;
+			return copy;
+		}
+
+		@Override
+		public Node visitNode(PrintNode n) {
+			count();
+			return copy(n, new PrintNode(visit(n.exp)));
+		}
+
+		@Override
+		public Node visitNode(IfNode n) {
+			count();
+			return copy(n, new IfNode(visit(n.cond), visit(n.th), visit(n.el)));
+		}
+
+		@Override
+		public Node visitNode(EqualNode n) {
+			count();
+			return copy(n, new EqualNode(visit(n.left), visit(n.right)));
+		}
+
+		@Override
+		public Node visitNode(LessEqualNode n) {
+			count();
+			return copy(n, new LessEqualNode(visit(n.left), visit(n.right)));
+		}
+
+		@Override
+		public Node visitNode(GreaterEqualNode n) {
+			count();
+			return copy(n, new GreaterEqualNode(visit(n.left), visit(n.right)));
+		}
+
+		@Override
+		public Node visitNode(PlusNode n) {
+			count();
+			return copy(n, new PlusNode(visit(n.left), visit(n.right)));
+		}
+
+		@Override
+		public Node visitNode(MinusNode n) {
+			count();
+			return copy(n, new MinusNode(visit(n.left), visit(n.right)));
+		}
+
+		@Override
+		public Node visitNode(TimesNode n) {
+			count();
+			return copy(n, new TimesNode(visit(n.left), visit(n.right)));
+		}
+
+		@Override
+		public Node visitNode(DivNode n) {
+			count();
+			return copy(n, new DivNode(visit(n.left), visit(n.right)));
+		}
+
+		@Override
+		public Node visitNode(AndNode n) {
+			count();
+			return copy(n, new AndNode(visit(n.left), visit(n.right)));
+		}
+
+		@Override
+		public Node visitNode(OrNode n) {
+			count();
+			return copy(n, new OrNode(visit(n.left), visit(n.right)));
+		}
+
+		@Override
+		public Node visitNode(NotNode n) {
+			count();
+			return copy(n, new NotNode(visit(n.exp)));
+		}
+
+		@Override
+		public Node visitNode(BoolNode n) {
+			count();
+			return copy(n, new BoolNode(n.val));
+		}
+
+		@Override
+		public Node visitNode(IntNode n) {
+			count();
+			return copy(n, new IntNode(n.val));
+		}
+
+		@Override
+		public Node visitNode(EmptyNode n) {
+			count();
+			return copy(n, new EmptyNode());
+		}
+	}
+
+}
@@ -0,0 +1,73 @@
+package compiler;
+
+import java.util.*;
+import org.antlr.v4.runtime.*;
+import svm.*;
+
+/*
+ * Inlining of small functions and methods: FOOL programs calling accessors
+ * (the List of quicksort.fool) and small functions in their inner loops,
+ * compiled without (budget 0) and with the inliner. Reports the calls
+ * replaced, code words, instructions run and the best time of the decoded
+ * engine; the outputs must be the same.
+ * Usage: java compiler.InliningBenchmark [rounds] [N]
+ */
+public class InliningBenchmark {
+
+    // name, program with N in place of the size
+    static final String[][] PROGRAMS = {
+    	{"lists", "let\n" +
+    		"  class List (f:int, r:List) {\n" +
+    		"    fun first:int () f;\n" +
+    		"    fun rest:List () r;\n" +
+    		"  }\n" +
+    		"  fun build:List (n:int, acc:List) if (n == 0) then {acc} else {build(n - 1, new List(n, acc))};\n" +
+    		"  fun sum:int (l:List, acc:int) if (l == null) then {acc} else {sum(l.rest(), acc + l.first())};\n" +
+    		"  fun rev:List (l:List, acc:List) if (l == null) then {acc} else {rev(l.rest(), new List(l.first(), acc))};\n" +
+    		"  fun loop:int (k:int, l:List, acc:int) if (k == 0) then {acc} else {loop(k - 1, l, acc + sum(rev(l, null), 0))};\n" +
+    		"in print(loop(N / 100, build(100, null), 0));\n"},
+    	{"points", "let\n" +
+    		"  class Pt (x:int, y:int) {\n" +
+    		"    fun getX:int () x;\n" +
+    		"    fun getY:int () y;\n" +
+    		"    fun dot:int (k:int) x * k + y;\n" +
+    		"  }\n" +
+    		"  fun norm:int (p:Pt) p.getX() * p.getX() + p.getY() * p.getY();\n" +
+    		"  fun walk:int (n:int, p:Pt, acc:int) if (n == 0) then {acc} else {walk(n - 1, p, acc + norm(p) - p.dot(n))};\n" +
+    		"in print(walk(N, new Pt(3, 4), 0));\n"},
+    	{"functions", "let\n" +
+    		"  fun sq:int (a:int) a * a;\n" +
+    		"  fun max:int (a:int, b:int) if (a >= b) then {a} else {b};\n" +
+    		"  fun clamp:int (v:int, lo:int, hi:int) if (v <= lo) then {lo} else {if (v >= hi) then {hi} else {v}};\n" +
+    		"  fun step:int (i:int)\n" +
+    		"    let\n" +
+    		"      var d:int = i - 50;\n" +
+    		"      var v:int = sq(d) - sq(i) / 2;\n" +
+    		"    in clamp(v, 0 - 1000, 1000) + max(i, 10);\n" +
+    		"  fun range:int (lo:int, hi:int)\n" +
+    		"    if (lo == hi) then {step(lo)} else {range(lo, (lo + hi) / 2) + range((lo + hi) / 2 + 1, hi)};\n" +
+    		"in print(range(1, N));\n"},
+    };
+
+    public static void main(String[] args) throws Exception {
+    	int rounds = args.length > 0 ? Integer.parseInt(args[0]) : 5;
+    	int n = args.length > 1 ? Integer.parseInt(args[1]) : 200_000;
+    	System.out.printf("%-10s %7s %15s %23s %19s%n", "", "", "code words", "instructions run", "decoded ms");
+    	System.out.printf("%-10s %7s %7s %7s %11s %11s %9s %9s%n", "program", "inlined", "before", "after", "before", "after", "before", "after");
+    	for (String[] p : PROGRAMS) {
+    		String source = p[1].replace("N", Integer.toString(n));
+    		FOOLCompiler plain = new FOOLCompiler(), inlining = new FOOLCompiler();
+    		plain.setInlineBudget(0);
+    		Program before = plain.compileQuietly(CharStreams.fromString(source)), after = inlining.compileQuietly(CharStreams.fromString(source));
+    		List<String> expected = new ArrayList<>(), output = new ArrayList<>();
+    		ExecuteVM b = Benchmarks.run(before, expected), a = Benchmarks.run(after, output);
+    		if (!output.equals(expected)) throw new IllegalStateException(p[0] + ": " + output + " instead of " + expected);
+    		int calls = 0;
+    		for (int c : inlining.getInlined().values()) calls += c;
+    		System.out.printf("%-10s %7d %7d %7d %11d %11d %9.1f %9.1f%n", p[0], calls, before.length(), after.length(),
+    			b.getExecuted(), a.getExecuted(), Benchmarks.time(before, rounds), Benchmarks.time(after, rounds));
+    		System.out.println("           " + inlining.getInlined());
+    	}
+    }
+
+}
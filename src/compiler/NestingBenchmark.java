@@ -0,0 +1,58 @@
+package compiler;
+
+import java.util.*;
+import org.antlr.v4.runtime.*;
+import svm.*;
+
+/*
+ * Access links against the display, as the nesting grows: functions f1..fD
+ * nested one inside the other, the innermost one a divide and conquer sum
+ * over 1..N that reads the parameter of every fk and a global at each leaf.
+ * With access links a variable k levels out costs k loads, with the display
+ * one ldisp; calls pay the save and restore of the display instead. Reports
+ * code words, instructions run and the best time of the decoded engine; the
+ * outputs must be the same.
+ * Usage: java compiler.NestingBenchmark [rounds] [N] [max depth]
+ */
+public class NestingBenchmark {
+
+    static String program(int depth, int n) {
+    	StringBuilder sb = new StringBuilder("let\n  var g:int = 1;\n");
+    	String indent = "  ";
+    	for (int k = 1; k <= depth; k++) {
+    		sb.append(indent).append("fun f").append(k).append(":int (a").append(k).append(":int)\n");
+    		sb.append(indent).append("  let\n");
+    		indent += "    ";
+    	}
+    	StringBuilder leaf = new StringBuilder("lo + g");
+    	for (int k = 1; k <= depth; k++) leaf.append(" + a").append(k);
+    	sb.append(indent).append("fun sum:int (lo:int, hi:int)\n");
+    	sb.append(indent).append("  if (lo == hi) then { ").append(leaf).append(" }\n");
+    	sb.append(indent).append("  else { sum(lo, (lo + hi) / 2) + sum((lo + hi) / 2 + 1, hi) };\n");
+    	for (int k = depth; k >= 1; k--) {
+    		indent = indent.substring(4);
+    		sb.append(indent).append("  in ").append(k == depth ? "sum(1, " + n + ")" : "f" + (k + 1) + "(a" + k + " + 1)").append(";\n");
+    	}
+    	return sb.append("in print(f1(1));\n").toString();
+    }
+
+    public static void main(String[] args) throws Exception {
+    	int rounds = args.length > 0 ? Integer.parseInt(args[0]) : 5;
+    	int n = args.length > 1 ? Integer.parseInt(args[1]) : 200_000;
+    	int maxDepth = args.length > 2 ? Integer.parseInt(args[2]) : 8;
+    	System.out.printf("%-6s %15s %23s %19s%n", "", "code words", "instructions run", "decoded ms");
+    	System.out.printf("%-6s %7s %7s %11s %11s %9s %9s%n", "depth", "links", "display", "links", "display", "links", "display");
+    	for (int depth = 1; depth <= maxDepth; depth++) {
+    		String source = program(depth, n);
+    		FOOLCompiler links = new FOOLCompiler(), display = new FOOLCompiler();
+    		display.setDisplay(true);
+    		Program l = links.compileQuietly(CharStreams.fromString(source)), d = display.compileQuietly(CharStreams.fromString(source));
+    		List<String> expected = new ArrayList<>(), output = new ArrayList<>();
+    		ExecuteVM lv = Benchmarks.run(l, expected), dv = Benchmarks.run(d, output);
+    		if (!output.equals(expected)) throw new IllegalStateException("depth " + depth + ": " + output + " instead of " + expected);
+    		System.out.printf("%-6d %7d %7d %11d %11d %9.1f %9.1f%n", depth, l.length(), d.length(),
+    			lv.getExecuted(), dv.getExecuted(), Benchmarks.time(l, rounds), Benchmarks.time(d, rounds));
+    	}
+    }
+
+}
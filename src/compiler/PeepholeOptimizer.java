@@ -0,0 +1,293 @@
+package compiler;
+
+import java.util.*;
+import compiler.IR.*;
+
+import static compiler.IR.Op.*;
+
+/*
+ * Ottimizzatore peephole sul codice IR generato, eseguito prima della
+ * codifica. Il codice e' la lista doppiamente concatenata di IR.Code (le
+ * definizioni di label sono elementi della lista), modificata sul posto
+ * applicando le regole finche' qualcuna cambia qualcosa.
+ *
+ * Most rules look at a window of consecutive instructions: they never match
+ * across a label definition, because other paths can enter there. The jump
+ * rules (JUMP_THREADING, KNOWN_VALUE_BRANCH) follow branches to the code at
+ * their target label. The labels of the functions (functionN) are kept even
+ * when unused, the VM tools use them as function entries.
+ * Labels are compared as objects, the optimizer keeps the reference count
+ * of each one. Hits per rule are counted across the optimize() calls.
+ */
+public class PeepholeOptimizer {
+
+	public static final int WINDOW = 4;
+
+	public enum Rule {
+		// push a; push b; beq/bneq/bleq/blt/bgeq L  ->  b L, or nothing if the branch is not taken
+		CONSTANT_BRANCH(3),
+		// push k, then (through labels or a b) push c; beq/bneq/... M  ->  b to where the branch goes
+		// (e.g. the 0/1 of a comparison tested against 1 by if)
+		KNOWN_VALUE_BRANCH(3),
+		// b/beq/... L, with L: b M  ->  b/beq/... M
+		JUMP_THREADING(1),
+		// b L; L:  ->  L:   (beq/... L; L:  ->  pop; pop; L:)
+		JUMP_TO_NEXT(1),
+		// instructions after b or halt, up to the next label
+		UNREACHABLE_CODE(1),
+		// label never referenced
+		UNUSED_LABEL(1),
+		// push 0; add/sub  ->  nothing
+		ADD_ZERO(2),
+		// push 1; mult/div  ->  nothing
+		MULT_ONE(2),
+		// push a; push b; add/sub/mult/div/mod  ->  push (a op b)
+		FOLD_CONSTANTS(3),
+		// push k/lfp/lhp/lra/ltm/dup; pop  ->  nothing
+		PUSH_POP(2),
+		// stm; ltm; stm  ->  stm   (a copy of the top stored back in tm)
+		TM_COPY(3);
+
+		final int length; // instructions in the window
+
+		Rule(int length) {
+			this.length = length;
+		}
+	}
+
+	private final int window;
+	private final EnumSet<Rule> rules;
+	private final int[] hits = new int[Rule.values().length];
+
+	// state of the code being optimized
+	private Code code;
+	private final Map<Label, Instr> labels = new HashMap<>(); // label -> its definition
+	private final Map<Label, Integer> refs = new HashMap<>();
+	private final Set<String> names = new HashSet<>();
+	private int newLabels;
+
+	public PeepholeOptimizer() {
+		this(WINDOW, EnumSet.allOf(Rule.class));
+	}
+
+	// only the given rules whose pattern fits in window instructions
+	public PeepholeOptimizer(int window, Set<Rule> rules) {
+		this.window = window;
+		this.rules = rules.isEmpty() ? EnumSet.noneOf(Rule.class) : EnumSet.copyOf(rules);
+	}
+
+	// optimizes code in place, and returns it
+	public Code optimize(Code code) {
+		this.code = code;
+		for (Instr n : code) {
+			if (n.isLabel()) {
+				labels.put(n.label, n);
+				names.add(n.label.name);
+			} else if (n.label != null) refs.merge(n.label, 1, Integer::sum);
+		}
+		boolean changed = true;
+		while (changed) {
+			changed = false;
+			Instr n = code.first();
+			while (n != null) {
+				Instr back = n.prev(); // rules only change n and what follows it
+				Rule hit = null;
+				for (Rule r : rules)
+					if (r.length <= window && apply(r, n)) {
+						hit = r;
+						break;
+					}
+				if (hit == null) {
+					n = n.next();
+					continue;
+				}
+				hits[hit.ordinal()]++;
+				changed = true;
+				for (int k = 1; k < window && back != null; k++) back = back.prev(); // new patterns can start before n
+				n = back == null ? code.first() : back.next();
+			}
+		}
+		this.code = null;
+		labels.clear();
+		refs.clear();
+		names.clear();
+		return code;
+	}
+
+	public int getHits(Rule r) {
+		return hits[r.ordinal()];
+	}
+
+	public int getTotalHits() {
+		return Arrays.stream(hits).sum();
+	}
+
+	public String report() {
+		StringBuilder sb = new StringBuilder();
+		for (Rule r : Rule.values())
+			if (rules.contains(r)) sb.append(String.format("%-20s %6d%n", r, hits[r.ordinal()]));
+		return sb.toString();
+	}
+
+	private boolean apply(Rule r, Instr n) {
+		Instr a = n.next(), b = a == null ? null : a.next();
+		switch (r) {
+			case CONSTANT_BRANCH:
+				if (n.isConst() && a != null && a.isConst() && b != null && b.op.isConditional()) {
+					boolean taken = b.op.holds(n.arg, a.arg);
+					remove(n);
+					remove(a);
+					if (taken) replace(b, B, b.label);
+					else remove(b);
+					return true;
+				}
+				return false;
+			case KNOWN_VALUE_BRANCH: {
+				if (!n.isConst()) return false;
+				Instr p = skipLabels(n.next());
+				boolean jumped = p != n.next();
+				if (p != null && p.is(B)) {
+					p = skipLabels(labels.get(p.label));
+					jumped = true;
+				}
+				if (!jumped || p == null || p == n || !p.isConst()) return false;
+				Instr q = skipLabels(p.next());
+				if (q == null || !q.op.isConditional() || q.next() == null) return false;
+				boolean taken = q.op.holds(n.arg, p.arg);
+				replace(n, B, taken ? q.label : labelBefore(q.next()));
+				return true;
+			}
+			case JUMP_THREADING: {
+				if (!n.op.isBranch()) return false;
+				Label target = n.label;
+				Set<Label> seen = new HashSet<>();
+				seen.add(target);
+				for (Instr t = skipLabels(labels.get(target)); t != null && t.is(B) && seen.add(t.label); t = skipLabels(labels.get(t.label)))
+					target = t.label;
+				if (target == n.label) return false;
+				replace(n, n.op, target);
+				return true;
+			}
+			case JUMP_TO_NEXT:
+				if (!n.op.isBranch()) return false;
+				for (Instr p = n.next(); p != null && p.isLabel(); p = p.next())
+					if (p.label == n.label) {
+						if (n.is(B)) remove(n);
+						else {
+							replace(n, POP, null);
+							code.insertAfter(n, new Instr(POP, 0, null));
+						}
+						return true;
+					}
+				return false;
+			case UNREACHABLE_CODE:
+				if (!(n.is(B) || n.is(HALT)) || a == null || a.isLabel()) return false;
+				while (n.next() != null && !n.next().isLabel()) remove(n.next());
+				return true;
+			case UNUSED_LABEL:
+				if (!n.isLabel() || refs.getOrDefault(n.label, 0) > 0 || n.label.isFunction()) return false;
+				remove(n);
+				return true;
+			case ADD_ZERO:
+				if (n.isConst() && n.arg == 0 && a != null && (a.is(ADD) || a.is(SUB))) {
+					remove(n);
+					remove(a);
+					return true;
+				}
+				return false;
+			case MULT_ONE:
+				if (n.isConst() && n.arg == 1 && a != null && (a.is(MULT) || a.is(DIV))) {
+					remove(n);
+					remove(a);
+					return true;
+				}
+				return false;
+			case FOLD_CONSTANTS:
+				if (n.isConst() && a != null && a.isConst() && b != null) {
+					int v2 = n.arg, v1 = a.arg, v;
+					if (b.is(ADD)) v = v2 + v1;
+					else if (b.is(SUB)) v = v2 - v1;
+					else if (b.is(MULT)) v = v2 * v1;
+					else if (b.is(DIV) && v1 != 0) v = v2 / v1; // division by zero is left to run time
+					else if (b.is(MOD) && v1 != 0) v = v2 % v1;
+					else return false;
+					n.arg = v;
+					remove(a);
+					remove(b);
+					return true;
+				}
+				return false;
+			case PUSH_POP:
+				if ((n.is(PUSH) || n.is(LFP) || n.is(LHP) || n.is(LRA) || n.is(LTM) || n.is(DUP) || n.is(LDISP)) && a != null && a.is(POP)) {
+					remove(n);
+					remove(a);
+					return true;
+				}
+				return false;
+			case TM_COPY:
+				if (n.is(STM) && a != null && a.is(LTM) && b != null && b.is(STM)) {
+					remove(a);
+					remove(b);
+					return true;
+				}
+				return false;
+			default:
+				return false;
+		}
+	}
+
+	private static Instr skipLabels(Instr n) {
+		while (n != null && n.isLabel()) n = n.next();
+		return n;
+	}
+
+	private void remove(Instr n) {
+		if (n.isLabel()) labels.remove(n.label);
+		else if (n.label != null) refs.merge(n.label, -1, Integer::sum);
+		code.remove(n);
+	}
+
+	// n becomes op with the label operand (or no operand)
+	private void replace(Instr n, Op op, Label label) {
+		if (n.label != null) refs.merge(n.label, -1, Integer::sum);
+		n.op = op;
+		n.arg = 0;
+		n.label = label;
+		if (label != null) refs.merge(label, 1, Integer::sum);
+	}
+
+	// a label defined right before n, added if there is none
+	private Label labelBefore(Instr n) {
+		Instr p = n.prev();
+		if (p != null && p.isLabel()) return p.label;
+		String name;
+		do name = "peephole" + newLabels++; while (!names.add(name));
+		Instr l = new Instr(LABEL, 0, new Label(name));
+		code.insertAfter(p, l);
+		labels.put(l.label, l);
+		return l.label;
+	}
+
+	// samples for the rules that the test programs do not exercise (constant
+	// expressions in FOOL sources are already folded on the AST)
+	static List<Code> codeSamples() {
+		Label l1 = new Label("l1"), l2 = new Label("l2"), l3 = new Label("l3"), l4 = new Label("l4");
+		Label l5 = new Label("l5"), l6 = new Label("l6"), l7 = new Label("l7"), l8 = new Label("l8");
+		Label l9 = new Label("l9"), l10 = new Label("l10");
+		return List.of(
+			// print(2*3+4*1-10/1+0)
+			new Code().add(PUSH, 2).add(PUSH, 3).add(MULT).add(PUSH, 4).add(PUSH, 1).add(MULT).add(ADD)
+				.add(PUSH, 10).add(PUSH, 1).add(DIV).add(SUB).add(PUSH, 0).add(ADD).add(PRINT).add(HALT),
+			// if (1 <= 2) then {print(20)} else {print(10)}, the condition as a 0/1 value tested against 1
+			new Code().add(PUSH, 1).add(PUSH, 2).add(BLEQ, l7).add(PUSH, 0).add(B, l8).define(l7).add(PUSH, 1).define(l8)
+				.add(PUSH, 1).add(BEQ, l9).add(PUSH, 10).add(PRINT).add(B, l10).define(l9).add(PUSH, 20).add(PRINT).define(l10).add(HALT),
+			// print(if true then {1} else {2})
+			new Code().add(PUSH, 1).add(PUSH, 1).add(BEQ, l5).add(PUSH, 2).add(B, l6).define(l5).add(PUSH, 1).define(l6)
+				.add(PRINT).add(HALT),
+			new Code().add(PUSH, 5).add(LFP).add(POP).add(PRINT).add(STM).add(LTM).add(STM).add(LTM).add(PRINT).add(HALT),
+			new Code().add(PUSH, 1).add(B, l1).define(l1).add(PRINT).add(PUSH, 2).add(PUSH, 2).add(BEQ, l2).define(l2)
+				.add(B, l3).add(PUSH, 7).add(PRINT).define(l3).add(PRINT).define(l4).add(HALT)
+		);
+	}
+
+}
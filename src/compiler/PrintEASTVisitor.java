@@ -262,6 +262,14 @@ public class PrintEASTVisitor extends BaseEASTVisitor<Void,VoidException> {
 		return null;
 	}
 
+	@Override
+	public Void visitNode(ClassFieldNode n) {
+		printNode(n,n.idField +" at nestinglevel "+n.nl);
+		visit(n.entry);
+		visit(n.fieldEntry);
+		return null;
+	}
+
 	@Override
 	public Void visitNode(EmptyTypeNode n) {
 		printNode(n);
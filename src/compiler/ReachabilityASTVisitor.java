@@ -0,0 +1,284 @@
+package compiler;
+
+import java.util.*;
+import compiler.AST.*;
+import compiler.exc.*;
+import compiler.lib.*;
+
+/*
+ * Analisi di raggiungibilita' sull'AST arricchito, prima della generazione
+ * del codice: a partire dall'espressione del main (e dalle dichiarazioni di
+ * variabili, che vengono eseguite) si visitano i corpi delle funzioni e dei
+ * metodi che possono essere chiamati. Quelli che restano fuori hanno
+ * reachable = false e CodeGenerationASTVisitor non genera il loro codice.
+ *
+ * Calls reach their function through the STentry of CallNode; a method
+ * called on an object (ClassCallNode) is reachable once its class is
+ * instantiated by a reachable "new" (the class of an object is the declared
+ * one, there is no inheritance). A function used as a value (IdNode) counts
+ * as called.
+ */
+public class ReachabilityASTVisitor extends BaseASTVisitor<Void,VoidException> {
+
+	private final Map<STentry, DecNode> declarations = new HashMap<>(); // function/method entry -> node
+	private final Map<STentry, String> methodClass = new HashMap<>();   // method entry -> class id
+	private final Set<String> instantiated = new HashSet<>();
+	private final Map<String, List<MethodNode>> pendingCalls = new HashMap<>(); // calls on classes not instantiated yet
+	private final Deque<DecNode> worklist = new ArrayDeque<>();
+	private int functions, methods, reachableFunctions, reachableMethods;
+
+	ReachabilityASTVisitor() {}
+	ReachabilityASTVisitor(boolean debug) {super(false, debug);}
+
+	@Override
+	public Void visitNode(ProgLetInNode n) {
+		if (print) printNode(n);
+		for (DecNode dec : n.declist) collect(dec, null);
+		for (Node dec : n.declist) visit(dec);
+		visit(n.exp);
+		while (!worklist.isEmpty()) {
+			DecNode d = worklist.pop();
+			if (d instanceof FunNode) {
+				for (Node dec : ((FunNode) d).declist) visit(dec);
+				visit(((FunNode) d).exp);
+			} else {
+				for (Node dec : ((MethodNode) d).declist) visit(dec);
+				visit(((MethodNode) d).exp);
+			}
+		}
+		return null;
+	}
+
+	@Override
+	public Void visitNode(ProgNode n) {
+		if (print) printNode(n);
+		visit(n.exp);
+		return null;
+	}
+
+	// indexes the functions and methods (nested ones too), all unreachable to begin with
+	private void collect(DecNode dec, String classId) {
+		if (dec instanceof FunNode) {
+			FunNode f = (FunNode) dec;
+			f.reachable = false;
+			functions++;
+			declarations.put(f.entry, f);
+			for (DecNode d : f.declist) collect(d, null);
+		} else if (dec instanceof MethodNode) {
+			MethodNode m = (MethodNode) dec;
+			m.reachable = false;
+			methods++;
+			declarations.put(m.entry, m);
+			methodClass.put(m.entry, classId);
+			for (DecNode d : m.declist) collect(d, null);
+		} else if (dec instanceof ClassNode) {
+			for (MethodNode m : ((ClassNode) dec).methods) collect(m, ((ClassNode) dec).id);
+		}
+	}
+
+	private void reach(STentry entry) {
+		DecNode d = declarations.get(entry);
+		if (d instanceof FunNode && !((FunNode) d).reachable) {
+			((FunNode) d).reachable = true;
+			reachableFunctions++;
+			worklist.push(d);
+		} else if (d instanceof MethodNode && !((MethodNode) d).reachable) {
+			((MethodNode) d).reachable = true;
+			reachableMethods++;
+			worklist.push(d);
+		}
+	}
+
+	public int getFunctions() {
+		return functions;
+	}
+
+	public int getMethods() {
+		return methods;
+	}
+
+	public int getReachableFunctions() {
+		return reachableFunctions;
+	}
+
+	public int getReachableMethods() {
+		return reachableMethods;
+	}
+
+	// declarations: only variables run code, functions and classes are reached through calls
+
+	@Override
+	public Void visitNode(FunNode n) {
+		if (print) printNode(n,n.id);
+		return null;
+	}
+
+	@Override
+	public Void visitNode(ClassNode n) {
+		if (print) printNode(n,n.id);
+		return null;
+	}
+
+	@Override
+	public Void visitNode(VarNode n) {
+		if (print) printNode(n,n.id);
+		visit(n.exp);
+		return null;
+	}
+
+	@Override
+	public Void visitNode(CallNode n) {
+		if (print) printNode(n,n.id);
+		reach(n.entry);
+		for (Node arg : n.arglist) visit(arg);
+		return null;
+	}
+
+	@Override
+	public Void visitNode(ClassCallNode n) {
+		if (print) printNode(n,n.idMethod);
+		String classId = methodClass.get(n.methodEntry);
+		if (instantiated.contains(classId)) reach(n.methodEntry);
+		else pendingCalls.computeIfAbsent(classId, k -> new ArrayList<>()).add((MethodNode) declarations.get(n.methodEntry));
+		for (Node arg : n.arglist) visit(arg);
+		return null;
+	}
+
+	@Override
+	public Void visitNode(NewNode n) {
+		if (print) printNode(n,n.id);
+		if (instantiated.add(n.id))
+			for (MethodNode m : pendingCalls.getOrDefault(n.id, List.of())) reach(m.entry);
+		for (Node field : n.fields) visit(field);
+		return null;
+	}
+
+	@Override
+	public Void visitNode(ClassFieldNode n) {
+		if (print) printNode(n,n.idField);
+		return null;
+	}
+
+	@Override
+	public Void visitNode(IdNode n) {
+		if (print) printNode(n,n.id);
+		if (n.entry.type instanceof ArrowTypeNode) reach(n.entry);
+		return null;
+	}
+
+	// the other expressions: visit the subexpressions
+
+	@Override
+	public Void visitNode(PrintNode n) {
+		if (print) printNode(n);
+		visit(n.exp);
+		return null;
+	}
+
+	@Override
+	public Void visitNode(IfNode n) {
+		if (print) printNode(n);
+		visit(n.cond);
+		visit(n.th);
+		visit(n.el);
+		return null;
+	}
+
+	@Override
+	public Void visitNode(EqualNode n) {
+		if (print) printNode(n);
+		visit(n.left);
+		visit(n.right);
+		return null;
+	}
+
+	@Override
+	public Void visitNode(TimesNode n) {
+		if (print) printNode(n);
+		visit(n.left);
+		visit(n.right);
+		return null;
+	}
+
+	@Override
+	public Void visitNode(PlusNode n) {
+		if (print) printNode(n);
+		visit(n.left);
+		visit(n.right);
+		return null;
+	}
+
+	@Override
+	public Void visitNode(MinusNode n) {
+		if (print) printNode(n);
+		visit(n.left);
+		visit(n.right);
+		return null;
+	}
+
+	@Override
+	public Void visitNode(DivNode n) {
+		if (print) printNode(n);
+		visit(n.left);
+		visit(n.right);
+		return null;
+	}
+
+	@Override
+	public Void visitNode(AndNode n) {
+		if (print) printNode(n);
+		visit(n.left);
+		visit(n.right);
+		return null;
+	}
+
+	@Override
+	public Void visitNode(OrNode n) {
+		if (print) printNode(n);
+		visit(n.left);
+		visit(n.right);
+		return null;
+	}
+
+	@Override
+	public Void visitNode(NotNode n) {
+		if (print) printNode(n);
+		visit(n.exp);
+		return null;
+	}
+
+	@Override
+	public Void visitNode(GreaterEqualNode n) {
+		if (print) printNode(n);
+		visit(n.left);
+		visit(n.right);
+		return null;
+	}
+
+	@Override
+	public Void visitNode(LessEqualNode n) {
+		if (print) printNode(n);
+		visit(n.left);
+		visit(n.right);
+		return null;
+	}
+
+	@Override
+	public Void visitNode(BoolNode n) {
+		if (print) printNode(n,n.val.toString());
+		return null;
+	}
+
+	@Override
+	public Void visitNode(IntNode n) {
+		if (print) printNode(n,n.val.toString());
+		return null;
+	}
+
+	@Override
+	public Void visitNode(EmptyNode n) {
+		if (print) printNode(n);
+		return null;
+	}
+
+}
@@ -16,6 +16,11 @@ public class SymbolTableASTVisitor extends BaseASTVisitor<Void,VoidException> {
 	SymbolTableASTVisitor() {}
 	SymbolTableASTVisitor(boolean debug) {super(debug);}
 
+	// class id -> its fields and methods, after the visit
+	public Map<String, Map<String,STentry>> getClassTable() {
+		return Collections.unmodifiableMap(classTable);
+	}
+
 	private STentry stLookup(String id) {
 		int j = nestingLevel;
 		STentry entry = null;
@@ -49,6 +54,7 @@ public class SymbolTableASTVisitor extends BaseASTVisitor<Void,VoidException> {
 		List<TypeNode> parTypes = new ArrayList<>();  
 		for (ParNode par : n.parlist) parTypes.add(par.getType()); 
 		STentry entry = new STentry(nestingLevel, new ArrowTypeNode(parTypes,n.retType),decOffset--);
+		n.entry = entry;
 		if (hm.put(n.id, entry) != null) {
 			System.out.println("Fun id " + n.id + " at line "+ n.getLine() +" already declared");
 			stErrors++;
@@ -237,6 +243,7 @@ public class SymbolTableASTVisitor extends BaseASTVisitor<Void,VoidException> {
 		final Map<String, STentry> currentLevel = symTable.get(nestingLevel);
 		final ClassTypeNode type = new ClassTypeNode(new ArrayList<>(), new ArrayList<>());
 		final STentry entry = new STentry(nestingLevel, type, decOffset--);
+		n.entry = entry;
 		//check if the class is already declared
 		if (currentLevel.put(n.id, entry) != null) {
 			System.out.println("Class " + n.id + " at line "+ n.getLine() +" already declared");
@@ -293,6 +300,7 @@ public class SymbolTableASTVisitor extends BaseASTVisitor<Void,VoidException> {
 		n.offset = -decOffset-2;
 		decOffset--;
 		final STentry entry = new STentry(nestingLevel, new ArrowTypeNode(parametersTypes,n.retType),n.offset);
+		n.entry = entry;
 		//check if the method already exists
 		if (virtualTable.put(n.id, entry) != null) {
 			System.out.println("Method " + n.id + " at line "+ n.getLine() +" already declared");
@@ -353,6 +361,7 @@ public class SymbolTableASTVisitor extends BaseASTVisitor<Void,VoidException> {
 			n.nl = nestingLevel;
 		}
 
+		for (Node arg : n.arglist) visit(arg);
 		return null;
 	}
 
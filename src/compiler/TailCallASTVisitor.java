@@ -0,0 +1,91 @@
+package compiler;
+
+import compiler.AST.*;
+import compiler.exc.*;
+import compiler.lib.*;
+
+/*
+ * Marca le chiamate in posizione di coda (tail = true): quelle il cui valore
+ * e' direttamente il valore restituito dalla funzione o dal metodo, cioe' il
+ * corpo stesso o, attraverso gli if, uno dei due rami. Dopo una chiamata di
+ * coda il chiamante non ha altro da fare che tornare, quindi
+ * CodeGenerationASTVisitor puo' riusare il suo frame per il chiamato e
+ * saltare invece di chiamare: la ricorsione di coda gira in spazio di stack
+ * costante.
+ *
+ * Only the declarations are visited: tail positions are never inside other
+ * expressions, and the main expression is not a function body.
+ */
+public class TailCallASTVisitor extends BaseASTVisitor<Void,VoidException> {
+
+	private int calls, methodCalls;
+
+	TailCallASTVisitor() {}
+	TailCallASTVisitor(boolean debug) {super(false, debug);}
+
+	// function calls (CallNode) marked
+	public int getCalls() {
+		return calls;
+	}
+
+	// method calls (ClassCallNode) marked
+	public int getMethodCalls() {
+		return methodCalls;
+	}
+
+	private void tail(Node exp) {
+		if (exp instanceof CallNode) {
+			((CallNode) exp).tail = true;
+			calls++;
+		} else if (exp instanceof ClassCallNode) {
+			((ClassCallNode) exp).tail = true;
+			methodCalls++;
+		} else if (exp instanceof IfNode) {
+			tail(((IfNode) exp).th);
+			tail(((IfNode) exp).el);
+		}
+	}
+
+	@Override
+	public Void visitNode(ProgLetInNode n) {
+		if (print) printNode(n);
+		for (Node dec : n.declist) visit(dec);
+		return null;
+	}
+
+	@Override
+	public Void visitNode(ProgNode n) {
+		if (print) printNode(n);
+		return null;
+	}
+
+	@Override
+	public Void visitNode(FunNode n) {
+		if (print) printNode(n,n.id);
+		for (Node dec : n.declist) visit(dec);
+		tail(n.exp);
+		return null;
+	}
+
+	@Override
+	public Void visitNode(VarNode n) {
+		if (print) printNode(n,n.id);
+		return null;
+	}
+
+	@Override
+	public Void visitNode(ClassNode n) {
+		if (print) printNode(n,n.id);
+		for (MethodNode m : n.methods) visit(m);
+		return null;
+	}
+
+	@Override
+	public Void visitNode(MethodNode n) {
+		if (print) printNode(n,n.id);
+		for (Node dec : n.declist) visit(dec);
+		tail(n.exp);
+		return null;
+	}
+
+}
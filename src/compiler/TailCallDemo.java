@@ -0,0 +1,78 @@
+package compiler;
+
+import java.util.*;
+import org.antlr.v4.runtime.*;
+import svm.*;
+
+/*
+ * Tail recursive FOOL functions and methods recursing millions of times in
+ * the default address space of the VM (ExecuteVM.MEMSIZE words): with tail
+ * calls compiled as jumps the stack does not grow, without them the same
+ * programs run out of memory. The instructions run with and without tail
+ * calls are compared on M calls, in a memory large enough for the stack of
+ * ordinary calls; the outputs must be the same.
+ * Usage: java compiler.TailCallDemo [N] [M]
+ */
+public class TailCallDemo {
+
+    // name, program with N in place of the number of calls
+    static final String[][] PROGRAMS = {
+    	{"sum", "let\n" +
+    		"  fun sum:int (n:int, acc:int) if (n == 0) then { acc } else { sum(n - 1, acc + n - n / 2 * 2) };\n" +
+    		"in print(sum(N, 0));\n"},
+    	{"parity", "let\n" +
+    		"  fun parity:bool (n:int, even:bool) if (n == 0) then { even } else { parity(n - 1, !even) };\n" +
+    		"in print(if (parity(N, true)) then { 0 } else { 1 });\n"},
+    	{"nested", "let\n" +
+    		"  fun scale:int (k:int, n:int)\n" +
+    		"    let\n" +
+    		"      fun go:int (m:int, acc:int) if (m == 0) then { acc } else { go(m - 1, acc + k) };\n" +
+    		"    in go(n, 0);\n" +
+    		"in print(scale(3, N));\n"},
+    	{"method", "let\n" +
+    		"  class Counter (step:int) {\n" +
+    		"    fun run:int (n:int, acc:int, next:Counter)\n" +
+    		"      if (n <= 0) then { acc } else { next.run(n - 1, acc + step, next) };\n" +
+    		"  }\n" +
+    		"  var c:Counter = new Counter(3);\n" +
+    		"in print(c.run(N, 0, c));\n"},
+    };
+
+    public static void main(String[] args) throws Exception {
+    	int n = args.length > 0 ? Integer.parseInt(args[0]) : 5_000_000;
+    	int m = args.length > 1 ? Integer.parseInt(args[1]) : 100_000;
+    	System.out.println("N = " + n + " calls in " + ExecuteVM.MEMSIZE + " words, instructions run on M = " + m + " calls");
+    	System.out.printf("%-8s %6s %-10s %-14s %12s %12s%n", "program", "jumps", "output", "without", "instr tail", "instr calls");
+    	for (String[] p : PROGRAMS) {
+    		FOOLCompiler tail = new FOOLCompiler(), calls = new FOOLCompiler();
+    		calls.setTailCalls(false);
+    		String source = p[1].replace("N", Integer.toString(n));
+    		Program t = tail.compileQuietly(CharStreams.fromString(source)), c = calls.compileQuietly(CharStreams.fromString(source));
+    		List<String> output = new ArrayList<>();
+    		run(t, ExecuteVM.MEMSIZE, output);
+    		String without;
+    		try {
+    			run(c, ExecuteVM.MEMSIZE, new ArrayList<>());
+    			without = "ran";
+    		} catch (VMException e) {
+    			without = "out of memory";
+    		}
+    		// M calls: ordinary calls need at most 16 words of stack each
+    		source = p[1].replace("N", Integer.toString(m));
+    		t = tail.compileQuietly(CharStreams.fromString(source));
+    		c = calls.compileQuietly(CharStreams.fromString(source));
+    		List<String> expected = new ArrayList<>(), result = new ArrayList<>();
+    		ExecuteVM tv = run(t, ExecuteVM.MEMSIZE, result), cv = run(c, 16 * m + ExecuteVM.MEMSIZE, expected);
+    		if (!result.equals(expected)) throw new IllegalStateException(p[0] + ": " + result + " instead of " + expected);
+    		System.out.printf("%-8s %6d %-10s %-14s %12d %12d%n", p[0], tail.getTailCalls(), String.join(" ", output), without,
+    			tv.getExecuted(), cv.getExecuted());
+    	}
+    }
+
+    static ExecuteVM run(Program program, int memSize, List<String> output) {
+    	ExecuteVM vm = new ExecuteVM(program, memSize, OutputSink.to(output));
+    	vm.cpuDecoded(program.decoded());
+    	return vm;
+    }
+
+}
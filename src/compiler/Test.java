@@ -11,6 +11,9 @@ public class Test {
     public static void main(String[] args) throws Exception {
    			
     	String fileName = "quicksort.fool";
+    	// output di debug opzionali: -asm scrive fileName.asm, -obj l'object file
+    	boolean writeAsm = java.util.Arrays.asList(args).contains("-asm");
+    	boolean writeObject = java.util.Arrays.asList(args).contains("-obj");
 
     	CharStream chars = CharStreams.fromFileName(fileName);
     	FOOLLexer lexer = new FOOLLexer(chars);
@@ -54,28 +57,69 @@ public class Test {
 		
 		if ( frontEndErrors > 0) System.exit(1);   
 
+    	System.out.println("Inlining small functions and methods.");
+    	InliningASTVisitor inliner = new InliningASTVisitor();
+    	ast = inliner.visit(ast);
+    	System.out.println(inliner.getInlinedCalls()+" calls inlined: "+inliner.getInlined()+"\n");
+
+    	System.out.println("Folding constants and simplifying expressions.");
+    	AlgebraicSimplificationASTVisitor folding = new AlgebraicSimplificationASTVisitor();
+    	ast = folding.visit(ast);
+    	System.out.println(folding.getFolded()+" nodes folded, "+folding.getSimplified()+" simplified.\n");
+
+    	System.out.println("Removing unreachable functions and methods.");
+    	ReachabilityASTVisitor reachability = new ReachabilityASTVisitor();
+    	reachability.visit(ast);
+    	System.out.println(reachability.getReachableFunctions()+" of "+reachability.getFunctions()+" functions and "+
+    		reachability.getReachableMethods()+" of "+reachability.getMethods()+" methods are reachable.\n");
+
+    	System.out.println("Devirtualizing method calls (class hierarchy analysis).");
+    	DevirtualizationASTVisitor devirtualization = new DevirtualizationASTVisitor(symtableVisitor.getClassTable());
+    	devirtualization.visit(ast);
+    	System.out.println(devirtualization.getDevirtualized()+" of "+devirtualization.getCallSites()+" method call sites devirtualized.\n");
+
+    	System.out.println("Finding tail calls.");
+    	TailCallASTVisitor tailCalls = new TailCallASTVisitor();
+    	tailCalls.visit(ast);
+    	System.out.println(tailCalls.getCalls()+" function and "+tailCalls.getMethodCalls()+" method calls in tail position.\n");
+
     	System.out.println("Generating code.");
-    	String code = new CodeGenerationASTVisitor().visit(ast);
-    	BufferedWriter out = new BufferedWriter(new FileWriter(fileName+".asm"));
-    	out.write(code);
-    	out.close();
+    	CodeGenerationASTVisitor codegen = new CodeGenerationASTVisitor();
+    	codegen.visit(ast);
+    	IR.Code code = codegen.getCode();
+    	System.out.println(codegen.getTailCalls()+" tail calls compiled as jumps.\n");
+
+    	System.out.println("Optimizing generated code (peephole), hits per rule:");
+    	PeepholeOptimizer peephole = new PeepholeOptimizer();
+    	peephole.optimize(code);
+    	System.out.print(peephole.report());
+    	if (writeAsm) {
+    		BufferedWriter out = new BufferedWriter(new FileWriter(fileName+".asm"));
+    		out.write(code.toString()); // il testo .asm serve solo come output di debug
+    		out.close();
+    		System.out.println("Written "+fileName+".asm.");
+    	}
     	System.out.println("");
 
-    	System.out.println("Assembling generated code.");
-    	CharStream charsASM = CharStreams.fromFileName(fileName+".asm");
-    	SVMLexer lexerASM = new SVMLexer(charsASM);
-    	CommonTokenStream tokensASM = new CommonTokenStream(lexerASM);
-    	SVMParser parserASM = new SVMParser(tokensASM);
+    	System.out.println("Encoding generated code.");
+    	int[] words = code.encode(); // direttamente dall'IR, senza assembler
+    	System.out.println(words.length+" code words.\n");
 
-    	parserASM.assembly();
+    	// later runs can load it with ObjectFile.load and skip the assembly
+    	if (writeObject) {
+    		System.out.println("Writing object file "+ObjectFile.objectName(fileName+".asm")+".\n");
+    		ObjectFile.write(java.nio.file.Paths.get(ObjectFile.objectName(fileName+".asm")), words, code.getLabels());
+    	}
 
-    	// needed only for debug
-    	System.out.println("You had: "+lexerASM.lexicalErrors+" lexical errors and "+parserASM.getNumberOfSyntaxErrors()+" syntax errors.\n");
-    	if (lexerASM.lexicalErrors+parserASM.getNumberOfSyntaxErrors()>0) System.exit(1);
+    	System.out.println("Fusing superinstructions.");
+    	Superinstructions fuser = new Superinstructions();
+    	int[] fusedCode = fuser.fuse(words);
+    	System.out.println(fuser.report());
 
     	System.out.println("Running generated code via Stack Virtual Machine.");
-    	ExecuteVM vm = new ExecuteVM(parserASM.code);
+    	ExecuteVM vm = new ExecuteVM(fusedCode);
     	vm.cpu();
+    	System.out.println(vm.getInlineCaches().report());
 
     }
 }
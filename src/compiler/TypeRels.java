@@ -6,6 +6,8 @@ import compiler.lib.*;
 public class TypeRels {
 
 	public static boolean isSubtype(TypeNode a, TypeNode b) {
+		if (a instanceof RefTypeNode && b instanceof RefTypeNode) // no inheritance: a class is a subtype only of itself
+			return ((RefTypeNode) a).id.equals(((RefTypeNode) b).id);
 		return a.getClass().equals(b.getClass()) ||
 				((a instanceof BoolTypeNode) && (b instanceof IntTypeNode)) ||
 				((a instanceof EmptyTypeNode) && (b instanceof RefTypeNode));
@@ -1,5 +1,7 @@
 package compiler.lib;
 
+import compiler.IR.Code;
+
 public class FOOLlib {
 
 	public static String extractNodeName(String s) { // s is in the form compiler.AST$NameNode
@@ -16,15 +18,6 @@ public class FOOLlib {
     
 	public static int typeErrors = 0;
 
-	// crea un'unica stringa a partire da un insieme di stringhe concatenadole e 
-	// introducendo, all'interno, dei newline "\n" come separatore tra le stringhe
-	public static String nlJoin(String... lines) { //argomenti null ignorati 
-		String code = null;
-		for (int i = 0; i<lines.length; i++) 
-			if (lines[i]!=null) code = (code==null?"":code+"\n")+lines[i]; 
-		return code;
-	}
-
 	private static int labCount = 0;
 
 	public static String freshLabel() {
@@ -37,13 +30,22 @@ public class FOOLlib {
 		return "function"+(funlabCount++);
 	}
 
-	private static String funCode = null;
+	// codice delle funzioni, aggiunto in coda in tempo costante
+	private static Code funCode = new Code();
 
-	public static void putCode(String c) {
-		funCode = nlJoin(funCode, "", c); //linea vuota di separazione prima di codice funzione
+	public static void putCode(Code c) {
+		funCode.append(c);
 	}
 
-	public static String getCode() {
+	public static Code getCode() {
 		return funCode;
 	}
+
+	// stato globale azzerato prima di ogni compilazione, per compilare piu' programmi nella stessa JVM
+	public static void reset() {
+		typeErrors = 0;
+		labCount = 0;
+		funlabCount = 0;
+		funCode = new Code();
+	}
 }
@@ -0,0 +1,386 @@
+package svm;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.util.*;
+
+/*
+ * Single pass assembler for the SVM language of SVM.g4, without ANTLR:
+ * characters are read from a Reader (in chunks) or from a ByteBuffer
+ * (ASCII), mnemonics are recognised in place and labels are resolved by
+ * backpatching, with all tables kept in primitive int/char arrays. No token
+ * or string is created per instruction, so the time is linear in the size
+ * of the program. The code is the same int[] built by SVMParser.code
+ * (opcodes are still the token types of the grammar).
+ *
+ * Errors are reported like the ANTLR path (one line on System.out each)
+ * and counted by lexicalErrors and syntaxErrors; the code of a program
+ * with errors must not be run.
+ */
+public class Assembler {
+
+    public int lexicalErrors = 0;
+    public int syntaxErrors = 0;
+
+    // input: exactly one of the two
+    private final Reader reader;
+    private final ByteBuffer bytes;
+    private final char[] buf;
+    private int pos, end;
+    private int ch;          // current character, -1 at the end
+    private int line = 1;
+
+    // current word
+    private char[] word = new char[32];
+    private int wordLength, wordHash;
+    private int wordKey; // lower case words of up to 5 letters, 6 bits per letter, else 0
+
+    private int[] code = new int[ExecuteVM.CODESIZE];
+    private int i = 0;
+
+    // labels: open addressing table of the names, stored in pool
+    private char[] pool = new char[1024];
+    private int poolSize;
+    private int[] table = new int[1024];       // hash slot -> label number + 1
+    private int labels;
+    private int[] labelStart = new int[256], labelLength = new int[256], labelHash = new int[256];
+    private int[] labelAddress = new int[256]; // -1 until defined
+
+    // code addresses waiting for the address of a label
+    private int[] refAt = new int[256], refLabel = new int[256];
+    private int refs;
+
+    public Assembler(Reader in) {
+      reader = in;
+      bytes = null;
+      buf = new char[8192];
+    }
+
+    public Assembler(ByteBuffer in) {
+      reader = null;
+      bytes = in;
+      buf = null;
+    }
+
+    public static Assembler assemble(String asm) {
+      try {
+        Assembler a = new Assembler(new StringReader(asm));
+        a.assemble();
+        return a;
+      } catch (IOException e) {
+        throw new UncheckedIOException(e);
+      }
+    }
+
+    public int[] assemble() throws IOException {
+      next();
+      while (true) {
+        skipBlanks();
+        if (ch < 0) break;
+        if (isLetter(ch)) instruction();
+        else if (ch == '-' || isDigit(ch) || ch == ':') {
+          syntaxError("extraneous input '" + (char) ch + "'");
+          next();
+        } else {
+          System.out.println("Invalid char: " + (char) ch + " at line " + line);
+          lexicalErrors++;
+          next();
+        }
+      }
+      for (int r = 0; r < refs; r++) {
+        int address = labelAddress[refLabel[r]];
+        if (address < 0) {
+          System.out.println("Undefined label " + labelName(refLabel[r]));
+          syntaxErrors++;
+        } else code[refAt[r]] = address;
+      }
+      code = Arrays.copyOf(code, i); // exact size
+      return code;
+    }
+
+    public int[] getCode() {
+      return code;
+    }
+
+    public Map<String, Integer> getLabels() { // label -> code address
+      Map<String, Integer> m = new HashMap<>();
+      for (int l = 0; l < labels; l++)
+        if (labelAddress[l] >= 0) m.put(labelName(l), labelAddress[l]);
+      return Collections.unmodifiableMap(m);
+    }
+
+    public int getErrors() {
+      return lexicalErrors + syntaxErrors;
+    }
+
+    private void instruction() throws IOException {
+      readWord();
+      dispatch();
+    }
+
+    // instruction starting with the word just read
+    private void dispatch() throws IOException {
+      int op = mnemonic();
+      switch (op) {
+        case 0: // label definition
+          int l = label();
+          skipBlanks();
+          if (ch != ':') {
+            syntaxError("missing ':' after " + labelName(l));
+            return;
+          }
+          next();
+          labelAddress[l] = i; // redefinition: the last one wins, like labelDef.put
+          return;
+        case SVMParser.PUSH:
+          emit(op);
+          skipBlanks();
+          if (ch == '-' || isDigit(ch)) emit(integer());
+          else if (isLetter(ch)) reference();
+          else syntaxError("missing operand of push");
+          return;
+        case SVMParser.POPN:
+        case SVMParser.SHIFTLEFT:
+        case SVMParser.SHIFTRIGHT:
+        case SVMParser.LOADDISPLAY:
+        case SVMParser.STOREDISPLAY:
+        case SVMParser.STOREFRAME:
+        case SVMParser.DISPATCH:
+          emit(op);
+          skipBlanks();
+          if (ch == '-' || isDigit(ch)) emit(integer());
+          else syntaxError("missing operand");
+          return;
+        case SVMParser.BRANCH:
+        case SVMParser.BRANCHEQ:
+        case SVMParser.BRANCHLESSEQ:
+        case SVMParser.BRANCHLESS:
+        case SVMParser.BRANCHNOTEQ:
+        case SVMParser.BRANCHGREATEREQ:
+          emit(op);
+          skipBlanks();
+          if (isLetter(ch)) reference();
+          else syntaxError("missing label");
+          return;
+        default:
+          emit(op);
+      }
+    }
+
+    // label operand: the word must not be a mnemonic
+    private void reference() throws IOException {
+      readWord();
+      if (mnemonic() != 0) {
+        syntaxError("missing label");
+        emit(0);
+        dispatch();
+        return;
+      }
+      if (refs == refAt.length) {
+        refAt = Arrays.copyOf(refAt, 2 * refs);
+        refLabel = Arrays.copyOf(refLabel, 2 * refs);
+      }
+      refAt[refs] = i;
+      refLabel[refs++] = label();
+      emit(0);
+    }
+
+    private int integer() throws IOException {
+      boolean negative = ch == '-';
+      if (negative) next();
+      if (!isDigit(ch)) {
+        System.out.println("Invalid char: - at line " + line);
+        lexicalErrors++;
+        return 0;
+      }
+      long v = 0;
+      while (isDigit(ch)) {
+        v = v * 10 + (ch - '0');
+        if (v > (long) Integer.MAX_VALUE + 1) {
+          syntaxError("integer out of range");
+          while (isDigit(ch)) next();
+          return 0;
+        }
+        next();
+      }
+      if (negative) v = -v;
+      if (v > Integer.MAX_VALUE) {
+        syntaxError("integer out of range");
+        return 0;
+      }
+      return (int) v;
+    }
+
+    private void emit(int w) {
+      if (i == code.length) code = Arrays.copyOf(code, 2 * code.length);
+      code[i++] = w;
+    }
+
+    private void syntaxError(String message) {
+      System.out.println("line " + line + " " + message);
+      syntaxErrors++;
+    }
+
+    private static int key(String mnemonic) {
+      int k = 0;
+      for (int c = 0; c < mnemonic.length(); c++) k = k << 6 | (mnemonic.charAt(c) - 'a' + 1);
+      return k;
+    }
+
+    // mnemonics of SVM.g4, packed like wordKey and sorted, with their opcodes
+    private static final int[] KEYS, OPCODES;
+    static {
+      String[] names = {"push", "pop", "add", "sub", "mult", "div", "sw", "lw", "b", "beq", "bleq", "js",
+        "lra", "sra", "ltm", "stm", "lfp", "sfp", "cfp", "lhp", "shp", "print", "halt", "new",
+        "dup", "swap", "popn", "neg", "mod", "blt", "bneq", "bgeq", "shl", "shr", "ldisp", "sdisp", "swf", "dsp"};
+      int[] ops = {SVMParser.PUSH, SVMParser.POP, SVMParser.ADD, SVMParser.SUB, SVMParser.MULT, SVMParser.DIV,
+        SVMParser.STOREW, SVMParser.LOADW, SVMParser.BRANCH, SVMParser.BRANCHEQ, SVMParser.BRANCHLESSEQ, SVMParser.JS,
+        SVMParser.LOADRA, SVMParser.STORERA, SVMParser.LOADTM, SVMParser.STORETM, SVMParser.LOADFP, SVMParser.STOREFP,
+        SVMParser.COPYFP, SVMParser.LOADHP, SVMParser.STOREHP, SVMParser.PRINT, SVMParser.HALT, SVMParser.NEW,
+        SVMParser.DUP, SVMParser.SWAP, SVMParser.POPN, SVMParser.NEG, SVMParser.MOD, SVMParser.BRANCHLESS,
+        SVMParser.BRANCHNOTEQ, SVMParser.BRANCHGREATEREQ, SVMParser.SHIFTLEFT, SVMParser.SHIFTRIGHT,
+        SVMParser.LOADDISPLAY, SVMParser.STOREDISPLAY, SVMParser.STOREFRAME, SVMParser.DISPATCH};
+      Map<Integer, Integer> mnemonics = new TreeMap<>();
+      for (int k = 0; k < names.length; k++) mnemonics.put(key(names[k]), ops[k]);
+      KEYS = mnemonics.keySet().stream().mapToInt(Integer::intValue).toArray();
+      OPCODES = mnemonics.values().stream().mapToInt(Integer::intValue).toArray();
+    }
+
+    // opcode of the word, 0 for a label
+    private int mnemonic() {
+      if (wordKey == 0) return 0; // too long, upper case or digits
+      int k = Arrays.binarySearch(KEYS, wordKey);
+      return k >= 0 ? OPCODES[k] : 0;
+    }
+
+    // number of the label in word, added to the table the first time
+    private int label() {
+      int mask = table.length - 1;
+      for (int s = wordHash & mask; ; s = (s + 1) & mask) {
+        int l = table[s] - 1;
+        if (l < 0) {
+          l = newLabel();
+          table[s] = l + 1;
+          if (2 * labels > table.length) rehash();
+          return l;
+        }
+        if (labelHash[l] == wordHash && labelLength[l] == wordLength && samePool(labelStart[l])) return l;
+      }
+    }
+
+    private boolean samePool(int start) {
+      for (int k = 0; k < wordLength; k++)
+        if (pool[start + k] != word[k]) return false;
+      return true;
+    }
+
+    private int newLabel() {
+      if (labels == labelStart.length) {
+        int n = 2 * labels;
+        labelStart = Arrays.copyOf(labelStart, n);
+        labelLength = Arrays.copyOf(labelLength, n);
+        labelHash = Arrays.copyOf(labelHash, n);
+        labelAddress = Arrays.copyOf(labelAddress, n);
+      }
+      if (poolSize + wordLength > pool.length) pool = Arrays.copyOf(pool, Math.max(2 * pool.length, poolSize + wordLength));
+      System.arraycopy(word, 0, pool, poolSize, wordLength);
+      labelStart[labels] = poolSize;
+      labelLength[labels] = wordLength;
+      labelHash[labels] = wordHash;
+      labelAddress[labels] = -1;
+      poolSize += wordLength;
+      return labels++;
+    }
+
+    private void rehash() {
+      table = new int[2 * table.length];
+      int mask = table.length - 1;
+      for (int l = 0; l < labels; l++) {
+        int s = labelHash[l] & mask;
+        while (table[s] != 0) s = (s + 1) & mask;
+        table[s] = l + 1;
+      }
+    }
+
+    private String labelName(int l) {
+      return new String(pool, labelStart[l], labelLength[l]);
+    }
+
+    // letters and digits starting at the current character (a letter)
+    private void readWord() throws IOException {
+      int n = 0, h = 0, k = 0;
+      while (isLetter(ch) || isDigit(ch)) {
+        if (n == word.length) word = Arrays.copyOf(word, 2 * n);
+        word[n++] = (char) ch;
+        h = 31 * h + ch;
+        k = ch >= 'a' && ch <= 'z' && n <= 5 ? k << 6 | (ch - 'a' + 1) : -1;
+        next();
+      }
+      wordLength = n;
+      wordKey = k < 0 ? 0 : k;
+      wordHash = h ^ (h >>> 16);
+    }
+
+    // white space and /* */ comments
+    private void skipBlanks() throws IOException {
+      while (true) {
+        if (ch == ' ' || ch == '\t' || ch == '\r') next();
+        else if (ch == '\n') {
+          line++;
+          next();
+        } else if (ch == '/' && peek() == '*') {
+          next();
+          next();
+          while (ch >= 0 && !(ch == '*' && peek() == '/')) {
+            if (ch == '\n') line++;
+            next();
+          }
+          if (ch < 0) return; // unterminated comment
+          next();
+          next();
+        } else return;
+      }
+    }
+
+    private static boolean isLetter(int c) {
+      return c >= 'a' && c <= 'z' || c >= 'A' && c <= 'Z';
+    }
+
+    private static boolean isDigit(int c) {
+      return c >= '0' && c <= '9';
+    }
+
+    private void next() throws IOException {
+      if (bytes != null) {
+        ch = bytes.hasRemaining() ? bytes.get() & 0xFF : -1;
+        return;
+      }
+      if (pos == end && !fill()) {
+        ch = -1;
+        return;
+      }
+      ch = buf[pos++];
+    }
+
+    // character after the current one, without consuming it
+    private int peek() throws IOException {
+      if (bytes != null) return bytes.hasRemaining() ? bytes.get(bytes.position()) & 0xFF : -1;
+      if (pos == end) {
+        // keep the current character readable: it is already in ch
+        if (!fill()) return -1;
+      }
+      return buf[pos];
+    }
+
+    private boolean fill() throws IOException {
+      int n = reader.read(buf, 0, buf.length);
+      if (n <= 0) {
+        pos = end = 0;
+        return false;
+      }
+      pos = 0;
+      end = n;
+      return true;
+    }
+
+}
@@ -0,0 +1,92 @@
+package svm;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import org.antlr.v4.runtime.*;
+
+/*
+ * Compares the hand-written Assembler (from a Reader and from a ByteBuffer)
+ * with the ANTLR assembler of SVM.g4 on the sample programs and on
+ * synthetic programs of growing size, checking that they build the same
+ * code and labels. The .asm files are the output of the current compiler
+ * (see VMBenchmark).
+ * Usage: java svm.AssemblerBenchmark [rounds]
+ */
+public class AssemblerBenchmark {
+
+    public static void main(String[] args) throws Exception {
+      int rounds = args.length > 0 ? Integer.parseInt(args[0]) : 3;
+      for (String sample : new String[] {"quicksort.fool.asm", "prova.fool.asm", "prova4.fool.asm"})
+        try (Reader in = new FileReader(sample)) {
+          StringBuilder sb = new StringBuilder();
+          char[] buf = new char[8192];
+          for (int n; (n = in.read(buf)) > 0; ) sb.append(buf, 0, n);
+          bench(sample, sb.toString(), rounds);
+        }
+      for (int size : new int[] {10_000, 100_000, 1_000_000})
+        bench(size + " instructions", program(size), rounds);
+    }
+
+    static void bench(String name, String asm, int rounds) throws IOException {
+      byte[] bytes = asm.getBytes(StandardCharsets.US_ASCII);
+      SVMParser parser = antlr(asm);
+      Assembler reader = assembler(asm);
+      Assembler buffer = new Assembler(ByteBuffer.wrap(bytes));
+      buffer.assemble();
+      if (!Arrays.equals(parser.code, reader.getCode()) || !Arrays.equals(parser.code, buffer.getCode())
+          || !parser.getLabels().equals(reader.getLabels()) || !parser.getLabels().equals(buffer.getLabels()))
+        throw new IllegalStateException(name + ": the assemblers disagree");
+      int reps = Math.max(1, 2_000_000 / Math.max(1, parser.code.length));
+      long tAntlr = Long.MAX_VALUE, tReader = Long.MAX_VALUE, tBuffer = Long.MAX_VALUE;
+      for (int r = 0; r < rounds; r++) {
+        long t0 = System.nanoTime();
+        for (int k = 0; k < reps; k++) antlr(asm);
+        long t1 = System.nanoTime();
+        for (int k = 0; k < reps; k++) assembler(asm);
+        long t2 = System.nanoTime();
+        for (int k = 0; k < reps; k++) new Assembler(ByteBuffer.wrap(bytes)).assemble();
+        long t3 = System.nanoTime();
+        tAntlr = Math.min(tAntlr, (t1 - t0) / reps);
+        tReader = Math.min(tReader, (t2 - t1) / reps);
+        tBuffer = Math.min(tBuffer, (t3 - t2) / reps);
+      }
+      System.out.println(name + ": " + parser.code.length + " code words");
+      print("antlr", tAntlr, parser.code.length, tAntlr);
+      print("reader", tReader, parser.code.length, tAntlr);
+      print("bytebuffer", tBuffer, parser.code.length, tAntlr);
+    }
+
+    static void print(String assembler, long time, int words, long reference) {
+      System.out.printf("  %-12s %10.3f ms %8.1f ns/word  %6.1fx%n", assembler, time / 1e6, (double) time / words, (double) reference / time);
+    }
+
+    static SVMParser antlr(String asm) {
+      SVMParser parser = new SVMParser(new CommonTokenStream(new SVMLexer(CharStreams.fromString(asm))));
+      parser.assembly();
+      return parser;
+    }
+
+    static Assembler assembler(String asm) throws IOException {
+      Assembler a = new Assembler(new StringReader(asm));
+      a.assemble();
+      return a;
+    }
+
+    // about n instructions shaped like the output of CodeGenerationASTVisitor
+    static String program(int n) {
+      StringBuilder sb = new StringBuilder();
+      int functions = Math.max(1, n / 25);
+      sb.append("push 0\n");
+      for (int f = 0; f < functions; f++) sb.append("lfp\npush function").append(f).append("\nlfp\njs\n");
+      sb.append("halt\n");
+      for (int f = 0; f < functions; f++)
+        sb.append("\nfunction").append(f).append(":\ncfp\nlra\n/* body */\npush 1\nlfp\nadd\nlw\npush ").append(-f)
+          .append("\nbeq label").append(2 * f).append("\npush ").append(f).append("\nb label").append(2 * f + 1)
+          .append("\nlabel").append(2 * f).append(":\npush 1\nlabel").append(2 * f + 1)
+          .append(":\nstm\nsra\npop\npop\nsfp\nltm\nlra\njs\n");
+      return sb.toString();
+    }
+
+}
@@ -0,0 +1,141 @@
+package svm;
+
+import java.io.Reader;
+import java.lang.reflect.Method;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.function.BiConsumer;
+
+/*
+ * Runs batches of jobs in parallel on an ExecutorService: every job is a
+ * fresh ExecuteVM on a (shared, immutable) Program, with its own memory and
+ * its output collected in its Result. Results are returned in job order; a
+ * job that fails (VMException, ...) does not stop the others.
+ *
+ * Usage: java svm.BatchRunner [-n copies] [-m memSize] file.asm|file.svmo ...
+ */
+public class BatchRunner {
+
+    // ExecuteVM engine running a program
+    public static final BiConsumer<ExecuteVM, Program> CPU = (vm, p) -> vm.cpu();
+    public static final BiConsumer<ExecuteVM, Program> DECODED = (vm, p) -> vm.cpuDecoded(p.decoded());
+    public static final BiConsumer<ExecuteVM, Program> CACHED = (vm, p) -> vm.cpuCached(p.decoded());
+
+    public static class Result {
+      public final Program program;
+      public final List<String> output;
+      public final Throwable error; // null if the program halted normally
+      public final long nanos;
+
+      Result(Program program, List<String> output, Throwable error, long nanos) {
+        this.program = program;
+        this.output = output;
+        this.error = error;
+        this.nanos = nanos;
+      }
+    }
+
+    private final ExecutorService executor;
+    private final int memSize;
+    private final BiConsumer<ExecuteVM, Program> engine;
+
+    public BatchRunner(ExecutorService executor) {
+      this(executor, ExecuteVM.MEMSIZE, DECODED);
+    }
+
+    public BatchRunner(ExecutorService executor, int memSize, BiConsumer<ExecuteVM, Program> engine) {
+      this.executor = executor;
+      this.memSize = memSize;
+      this.engine = engine;
+    }
+
+    /*
+     * One virtual thread per task where the JVM has them (Java 21+, looked up
+     * by reflection so that the VM still builds on 17), otherwise one
+     * platform thread per core.
+     */
+    public static ExecutorService newExecutor() {
+      try {
+        Method m = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+        return (ExecutorService) m.invoke(null);
+      } catch (ReflectiveOperationException e) {
+        return Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors());
+      }
+    }
+
+    public Result run(Program program) {
+      List<String> output = new ArrayList<>();
+      long start = System.nanoTime();
+      Throwable error = null;
+      try {
+        engine.accept(new ExecuteVM(program, memSize, OutputSink.to(output)), program);
+      } catch (RuntimeException | StackOverflowError | OutOfMemoryError e) {
+        error = e;
+      }
+      return new Result(program, output, error, System.nanoTime() - start);
+    }
+
+    public List<Result> runAll(List<Program> programs) throws InterruptedException {
+      List<Future<Result>> futures = new ArrayList<>();
+      for (Program p : programs) futures.add(executor.submit(() -> run(p)));
+      List<Result> results = new ArrayList<>();
+      for (Future<Result> f : futures)
+        try {
+          results.add(f.get());
+        } catch (ExecutionException e) { // run() catches the errors of the program
+          throw new IllegalStateException(e.getCause());
+        }
+      return results;
+    }
+
+    public static void main(String[] args) throws Exception {
+      List<Program> programs = new ArrayList<>();
+      List<String> names = new ArrayList<>();
+      int copies = 1;
+      int memSize = ExecuteVM.MEMSIZE;
+      for (int i = 0; i < args.length; i++) {
+        if (args[i].equals("-n")) {
+          copies = Integer.parseInt(args[++i]);
+          continue;
+        }
+        if (args[i].equals("-m")) {
+          memSize = Integer.parseInt(args[++i]);
+          continue;
+        }
+        names.add(args[i]);
+        if (args[i].endsWith(".svmo")) programs.add(Program.load(Paths.get(args[i])));
+        else try (Reader asm = Files.newBufferedReader(Paths.get(args[i]))) {
+          programs.add(Program.assemble(asm));
+        }
+      }
+      List<Program> batch = new ArrayList<>();
+      for (int c = 0; c < copies; c++) batch.addAll(programs);
+
+      ExecutorService single = Executors.newSingleThreadExecutor();
+      ExecutorService parallel = newExecutor();
+      try {
+        for (int round = 0; round < 3; round++) { // the last round is the measured one
+          long t0 = System.nanoTime();
+          List<Result> sequential = new BatchRunner(single, memSize, DECODED).runAll(batch);
+          long t1 = System.nanoTime();
+          List<Result> results = new BatchRunner(parallel, memSize, DECODED).runAll(batch);
+          long t2 = System.nanoTime();
+          for (int i = 0; i < batch.size(); i++)
+            if (!sequential.get(i).output.equals(results.get(i).output))
+              throw new IllegalStateException("Job " + i + ": parallel output differs");
+          if (round < 2) continue;
+          for (int i = 0; i < programs.size(); i++) {
+            Result r = results.get(i);
+            System.out.println(names.get(i) + ": " + (r.error != null ? "error " + r.error : String.join(" ", r.output)));
+          }
+          System.out.printf("%d jobs: 1 thread %.1f ms, parallel (%d cores) %.1f ms%n", batch.size(),
+            (t1 - t0) / 1e6, Runtime.getRuntime().availableProcessors(), (t2 - t1) / 1e6);
+        }
+      } finally {
+        single.shutdown();
+        parallel.shutdown();
+      }
+    }
+
+}
@@ -0,0 +1,263 @@
+package svm;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/*
+ * Minimal writer of JVM class files, enough for the classes generated by
+ * JitCompiler: constant pool, static methods and their Code attribute.
+ * Classes are written with version 49 (Java 5), which is verified by type
+ * inference and therefore needs no StackMapTable.
+ */
+public class ClassWriter {
+
+    // opcodes used by JitCompiler
+    static final int ICONST_0 = 0x03, BIPUSH = 0x10, SIPUSH = 0x11, LDC_W = 0x13;
+    static final int ILOAD = 0x15, ALOAD = 0x19, IALOAD = 0x2e, ISTORE = 0x36, ASTORE = 0x3a, IASTORE = 0x4f;
+    static final int DUP2 = 0x5c, IADD = 0x60, ISUB = 0x64, IMUL = 0x68, IDIV = 0x6c, IREM = 0x70, INEG = 0x74, ISHL = 0x78, IINC = 0x84;
+    static final int IF_ICMPEQ = 0x9f, IF_ICMPNE = 0xa0, IF_ICMPLT = 0xa1, IF_ICMPGE = 0xa2, IF_ICMPGT = 0xa3, IF_ICMPLE = 0xa4;
+    static final int GOTO = 0xa7, LOOKUPSWITCH = 0xab, IRETURN = 0xac, RETURN = 0xb1;
+    static final int GETFIELD = 0xb4, PUTFIELD = 0xb5, INVOKEVIRTUAL = 0xb6, INVOKESTATIC = 0xb8;
+
+    static final int ACC_PUBLIC = 0x0001, ACC_STATIC = 0x0008, ACC_FINAL = 0x0010, ACC_SUPER = 0x0020;
+
+    private final ByteArrayOutputStream pool = new ByteArrayOutputStream();
+    private final DataOutputStream poolOut = new DataOutputStream(pool);
+    private final Map<String, Integer> entries = new HashMap<>();
+    private int poolCount = 1;
+    private final int thisClass, superClass;
+    private final List<byte[]> methods = new ArrayList<>();
+
+    public ClassWriter(String name) {
+      thisClass = classRef(name);
+      superClass = classRef("java/lang/Object");
+    }
+
+    int utf8(String s) {
+      return entry("U" + s, () -> { poolOut.writeByte(1); poolOut.writeUTF(s); });
+    }
+
+    int classRef(String name) {
+      int n = utf8(name);
+      return entry("C" + name, () -> { poolOut.writeByte(7); poolOut.writeShort(n); });
+    }
+
+    int integer(int value) {
+      return entry("I" + value, () -> { poolOut.writeByte(3); poolOut.writeInt(value); });
+    }
+
+    int fieldRef(String owner, String name, String descriptor) {
+      return memberRef(9, owner, name, descriptor);
+    }
+
+    int methodRef(String owner, String name, String descriptor) {
+      return memberRef(10, owner, name, descriptor);
+    }
+
+    private int memberRef(int tag, String owner, String name, String descriptor) {
+      int c = classRef(owner);
+      int n = utf8(name), d = utf8(descriptor);
+      int nt = entry("N" + name + " " + descriptor, () -> { poolOut.writeByte(12); poolOut.writeShort(n); poolOut.writeShort(d); });
+      return entry(tag + owner + "." + name + " " + descriptor, () -> { poolOut.writeByte(tag); poolOut.writeShort(c); poolOut.writeShort(nt); });
+    }
+
+    private interface PoolWrite {
+      void write() throws IOException;
+    }
+
+    private int entry(String key, PoolWrite write) {
+      Integer index = entries.get(key);
+      if (index != null) return index;
+      try {
+        write.write();
+      } catch (IOException e) {
+        throw new IllegalStateException(e);
+      }
+      entries.put(key, poolCount);
+      return poolCount++;
+    }
+
+    public Code method(int access, String name, String descriptor, int maxStack, int maxLocals) {
+      return new Code(access, utf8(name), utf8(descriptor), maxStack, maxLocals);
+    }
+
+    public byte[] toByteArray() {
+      ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+      DataOutputStream out = new DataOutputStream(bytes);
+      try {
+        int codeName = utf8("Code");
+        out.writeInt(0xCAFEBABE);
+        out.writeShort(0);
+        out.writeShort(49);
+        out.writeShort(poolCount);
+        pool.writeTo(out);
+        out.writeShort(ACC_PUBLIC | ACC_FINAL | ACC_SUPER);
+        out.writeShort(thisClass);
+        out.writeShort(superClass);
+        out.writeShort(0); // interfaces
+        out.writeShort(0); // fields
+        out.writeShort(methods.size());
+        for (byte[] m : methods) {
+          out.write(m, 0, 8);               // access, name, descriptor, attribute count
+          out.writeShort(codeName);
+          out.write(m, 8, m.length - 8);
+        }
+        out.writeShort(0); // class attributes
+      } catch (IOException e) {
+        throw new IllegalStateException(e);
+      }
+      return bytes.toByteArray();
+    }
+
+    public static class Label {
+      int position = -1;
+    }
+
+    /*
+     * Bytecode of one method. Branches to labels not yet bound are patched
+     * when the method is finished.
+     */
+    public class Code {
+
+      private final int access, name, descriptor, maxStack, maxLocals;
+      private byte[] code = new byte[256];
+      private int length;
+      private final List<int[]> fixups = new ArrayList<>(); // {instruction, offset position, wide}
+      private final List<Label> fixupLabels = new ArrayList<>();
+
+      private Code(int access, int name, int descriptor, int maxStack, int maxLocals) {
+        this.access = access;
+        this.name = name;
+        this.descriptor = descriptor;
+        this.maxStack = maxStack;
+        this.maxLocals = maxLocals;
+      }
+
+      public int length() {
+        return length;
+      }
+
+      public Code op(int opcode) {
+        return u1(opcode);
+      }
+
+      Code u1(int b) {
+        if (length == code.length) code = java.util.Arrays.copyOf(code, 2 * length);
+        code[length++] = (byte) b;
+        return this;
+      }
+
+      Code u2(int v) {
+        return u1(v >> 8).u1(v);
+      }
+
+      Code u4(int v) {
+        return u2(v >> 16).u2(v);
+      }
+
+      public Code iconst(int v) {
+        if (v >= -1 && v <= 5) return op(ICONST_0 + v);
+        if (v == (byte) v) return op(BIPUSH).u1(v);
+        if (v == (short) v) return op(SIPUSH).u2(v);
+        return op(LDC_W).u2(integer(v));
+      }
+
+      public Code iload(int local) {
+        return op(ILOAD).u1(local);
+      }
+
+      public Code istore(int local) {
+        return op(ISTORE).u1(local);
+      }
+
+      public Code aload(int local) {
+        return op(ALOAD).u1(local);
+      }
+
+      public Code astore(int local) {
+        return op(ASTORE).u1(local);
+      }
+
+      public Code iinc(int local, int delta) {
+        return op(IINC).u1(local).u1(delta);
+      }
+
+      public Code field(int opcode, String owner, String name, String descriptor) {
+        return op(opcode).u2(fieldRef(owner, name, descriptor));
+      }
+
+      public Code invoke(int opcode, String owner, String name, String descriptor) {
+        return op(opcode).u2(methodRef(owner, name, descriptor));
+      }
+
+      public Code jump(int opcode, Label target) {
+        fixups.add(new int[] {length, length + 1, 0});
+        fixupLabels.add(target);
+        return op(opcode).u2(0);
+      }
+
+      public Code bind(Label label) {
+        label.position = length;
+        return this;
+      }
+
+      public Code lookupswitch(int[] keys, Label[] targets, Label otherwise) {
+        int start = length;
+        op(LOOKUPSWITCH);
+        while (length % 4 != 0) u1(0);
+        fixups.add(new int[] {start, length, 1});
+        fixupLabels.add(otherwise);
+        u4(0).u4(keys.length);
+        for (int i = 0; i < keys.length; i++) {
+          u4(keys[i]);
+          fixups.add(new int[] {start, length, 1});
+          fixupLabels.add(targets[i]);
+          u4(0);
+        }
+        return this;
+      }
+
+      /*
+       * Resolves the branches and adds the method to the class. Returns false
+       * (and adds nothing) if the method does not fit the class file limits.
+       */
+      public boolean finish() {
+        if (length >= 65536) return false;
+        for (int i = 0; i < fixups.size(); i++) {
+          int[] f = fixups.get(i);
+          int offset = fixupLabels.get(i).position - f[0];
+          if (f[2] == 0) {
+            if (offset != (short) offset) return false;
+            code[f[1]] = (byte) (offset >> 8);
+            code[f[1] + 1] = (byte) offset;
+          } else
+            for (int b = 0; b < 4; b++) code[f[1] + b] = (byte) (offset >> (24 - 8 * b));
+        }
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        try {
+          out.writeShort(access);
+          out.writeShort(name);
+          out.writeShort(descriptor);
+          out.writeShort(1);            // attributes: Code (name written by toByteArray)
+          out.writeInt(12 + length);
+          out.writeShort(maxStack);
+          out.writeShort(maxLocals);
+          out.writeInt(length);
+          out.write(code, 0, length);
+          out.writeShort(0);            // exception table
+          out.writeShort(0);            // attributes
+        } catch (IOException e) {
+          throw new IllegalStateException(e);
+        }
+        methods.add(bytes.toByteArray());
+        return true;
+      }
+    }
+
+}
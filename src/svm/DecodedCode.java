@@ -0,0 +1,78 @@
+package svm;
+
+import java.util.Arrays;
+
+/*
+ * Pre-decoded form of the code segment, built once before execution.
+ * Every instruction becomes a record (op[i], arg[i]) indexed by instruction
+ * number instead of by code address: the operand is already fetched and the
+ * targets of the branches are already translated into instruction numbers.
+ * Addresses that escape to the program (return addresses, function labels
+ * pushed on the stack) keep living in the code address space, so index[]
+ * and address[] translate between the two numberings when js is executed.
+ * A fused opcode (see Superinstructions) is decoded like the instruction it
+ * overwrites and is followed by the records of the rest of its sequence.
+ * The code is followed by a HALT record (falling off the end) and a TRAP one.
+ */
+public class DecodedCode {
+
+    public final int[] op;      // opcode of instruction i
+    public final int[] arg;     // resolved operand of instruction i (0 if none)
+    public final int[] index;   // code address -> instruction number (-1 inside operands)
+    public final int[] address; // instruction number -> code address (one extra entry for the end)
+    public final int length;    // number of instructions
+
+    public static final int TRAP = -1; // opcode of the record after the HALT one, where bad jump targets lead
+
+    public DecodedCode(int[] code) {
+      this(code, code.length);
+    }
+
+    public DecodedCode(int[] code, int size) {
+      index = new int[size + 1];
+      Arrays.fill(index, -1);
+      int[] ops = new int[size];
+      int[] args = new int[size];
+      int[] addrs = new int[size + 1];
+      int n = 0;
+      int a = 0;
+      while (a < size) {
+        index[a] = n;
+        addrs[n] = a;
+        ops[n] = code[a++];
+        if (hasOperand(ops[n]) && a < size) args[n] = code[a++];
+        n++;
+      }
+      index[size] = n;
+      addrs[n] = size;
+      length = n;
+      // branch targets become instruction numbers
+      for (int i = 0; i < n; i++)
+        if (isBranch(ops[i])) args[i] = target(args[i]);
+      op = Arrays.copyOf(ops, n + 2);
+      op[n] = SVMParser.HALT; // falling off the end stops the machine
+      op[n + 1] = TRAP;
+      arg = Arrays.copyOf(args, n + 2);
+      address = Arrays.copyOf(addrs, n + 2);
+    }
+
+    // instruction number of a code address; a jump into an operand word or out of
+    // the code leads to the TRAP record, which stops the machine with a VMException
+    public int target(int codeAddress) {
+      if (codeAddress < 0 || codeAddress >= index.length || index[codeAddress] < 0) return length + 1;
+      return index[codeAddress];
+    }
+
+    public static boolean hasOperand(int bytecode) {
+      if (Superinstructions.isFused(bytecode)) bytecode = Superinstructions.first(bytecode);
+      return bytecode == SVMParser.PUSH || bytecode == SVMParser.POPN || bytecode == SVMParser.SHIFTLEFT
+        || bytecode == SVMParser.SHIFTRIGHT || bytecode == SVMParser.LOADDISPLAY || bytecode == SVMParser.STOREDISPLAY
+        || bytecode == SVMParser.STOREFRAME || bytecode == SVMParser.DISPATCH || isBranch(bytecode);
+    }
+
+    public static boolean isBranch(int bytecode) {
+      return bytecode == SVMParser.BRANCH || bytecode == SVMParser.BRANCHEQ || bytecode == SVMParser.BRANCHLESSEQ
+        || bytecode == SVMParser.BRANCHLESS || bytecode == SVMParser.BRANCHNOTEQ || bytecode == SVMParser.BRANCHGREATEREQ;
+    }
+
+}
@@ -0,0 +1,71 @@
+package svm;
+
+import java.io.*;
+import java.util.*;
+import java.util.function.BiConsumer;
+import org.antlr.v4.runtime.*;
+
+/*
+ * Method calls through the dispatch table, as "dup lw push k add lw js" and
+ * as "dsp k" with the inline caches of ExecuteVM, on a loop calling a method
+ * on objects of 1, 2, 4 and 8 classes in turn (monomorphic, polymorphic and,
+ * beyond InlineCaches.ENTRIES, megamorphic call site). Reports the
+ * instructions run, the hit rate of the caches and the best time of every
+ * engine.
+ * Usage: java svm.DispatchBenchmark [rounds] [calls]
+ */
+public class DispatchBenchmark {
+
+    public static void main(String[] args) throws Exception {
+      int rounds = args.length > 0 ? Integer.parseInt(args[0]) : 5;
+      int calls = args.length > 1 ? Integer.parseInt(args[1]) : 1_000_000;
+      for (int classes : new int[] {1, 2, 4, 8}) {
+        int[] chain = VMBenchmark.assemble(CharStreams.fromString(program(classes, calls, false))).code;
+        int[] dsp = VMBenchmark.assemble(CharStreams.fromString(program(classes, calls, true))).code;
+        ExecuteVM counter = new ExecuteVM(dsp);
+        counter.cpuDecoded();
+        System.out.println(classes + " classes: " + VMBenchmark.dispatches(chain) + " instructions with the dispatch chain, "
+          + counter.getExecuted() + " with dsp");
+        System.out.println("  " + counter.getInlineCaches().report());
+        System.out.printf("  %-8s %12s %12s%n", "engine", "chain ms", "dsp ms");
+        for (Map.Entry<String, BiConsumer<ExecuteVM, DecodedCode>> engine : VMBenchmark.engines.entrySet())
+          System.out.printf("  %-8s %12.2f %12.2f%n", engine.getKey(), time(chain, engine.getValue(), rounds),
+            time(dsp, engine.getValue(), rounds));
+      }
+    }
+
+    /*
+     * The dispatch table of class i (one method, methodi) is at address i, its
+     * object at address classes+i; the counter is in the first global slot and
+     * iteration n calls the method on object n mod classes.
+     */
+    static String program(int classes, int n, boolean dsp) {
+      StringBuilder sb = new StringBuilder();
+      for (int i = 0; i < classes; i++)
+        sb.append("push method").append(i).append("\nlhp\nsw\nlhp\npush 1\nadd\nshp\n");
+      for (int i = 0; i < classes; i++)
+        sb.append("push ").append(i).append("\nlhp\nsw\nlhp\npush 1\nadd\nshp\n");
+      sb.append("push 0\npush ").append(n).append('\n');
+      sb.append("loop:\nlfp\npush -2\nadd\nlw\npush 0\nbeq end\n");
+      sb.append("lfp\npush -2\nadd\nlw\npush ").append(classes).append("\nmod\npush ").append(classes).append("\nadd\n");
+      sb.append(dsp ? "dsp 0\n" : "dup\nlw\npush 0\nadd\nlw\njs\n");
+      sb.append("lfp\npush -2\nadd\nlw\npush 1\nsub\nlfp\npush -2\nadd\nsw\nb loop\n");
+      sb.append("end:\nhalt\n");
+      for (int i = 0; i < classes; i++) // drop the object and return
+        sb.append("method").append(i).append(":\npop\nlra\njs\n");
+      return sb.toString();
+    }
+
+    // best of rounds, after two warm-up runs
+    static double time(int[] code, BiConsumer<ExecuteVM, DecodedCode> engine, int rounds) {
+      DecodedCode decoded = new DecodedCode(code);
+      long best = Long.MAX_VALUE;
+      for (int r = 0; r < rounds + 2; r++) {
+        long start = System.nanoTime();
+        engine.accept(new ExecuteVM(code), decoded);
+        if (r >= 2) best = Math.min(best, System.nanoTime() - start);
+      }
+      return best / 1e6;
+    }
+
+}
@@ -6,25 +6,88 @@ import java.util.List;
 
 public class ExecuteVM {
     
-    public static final int CODESIZE = 10000;
-    public static final int MEMSIZE = 10000;
+    public static final int CODESIZE = 10000; // initial capacity of the code segment
+    public static final int MEMSIZE = 10000;  // default size of the address space
+    public static final int SEGMENT = 1024;   // initial capacity of the stack and heap segments
+    public static final int HALTED = -1;      // next address after halt, for the JIT
     
-    private int[] code;
-    private int[] memory = new int[MEMSIZE];
+    private final int[] code;
+    
+    // The address space [0,top) is split in two segments that grow on demand:
+    // the heap grows upwards from address 0 and is indexed by address, the
+    // stack grows downwards from top and is indexed by top-address (stack[0] is
+    // a spare word below the stack bottom, used by cpuCached()).
+    final int top;
+    int[] heap;
+    int[] stack;
+    int limit; // lowest sp reachable without growing the stack or meeting the heap
     
     private int ip = 0;
-    private int sp = MEMSIZE;
+    int sp;
+    
+    int hp = 0;       
+    int fp; 
+    int ra;           
+    int tm;
+    int[] display = new int[8]; // frame of the innermost active function of each nesting level (ldisp/sdisp)
     
-    private int hp = 0;       
-    private int fp = MEMSIZE; 
-    private int ra;           
-    private int tm;
+    private final GarbageCollector gc; // heap blocks allocated by "new"
+    private InlineCaches caches;       // of the dsp call sites
+    private final OutputSink out;
     
     public ExecuteVM(int[] code) {
+      this(code, MEMSIZE);
+    }
+    
+    public ExecuteVM(int[] code, int memSize) {
+      this(code, memSize, GarbageCollector.THRESHOLD);
+    }
+    
+    // gcThreshold: heap words allocated between two collections
+    public ExecuteVM(int[] code, int memSize, int gcThreshold) {
+      this(code, memSize, gcThreshold, OutputSink.STANDARD);
+    }
+    
+    public ExecuteVM(Program program, OutputSink out) {
+      this(program, MEMSIZE, out);
+    }
+    
+    public ExecuteVM(Program program, int memSize, OutputSink out) {
+      this(program, memSize, GarbageCollector.THRESHOLD, out);
+    }
+    
+    public ExecuteVM(Program program, int memSize, int gcThreshold, OutputSink out) {
+      this(program.code(), memSize, gcThreshold, out);
+    }
+    
+    // the code is only read, so it can be shared by machines running in parallel
+    public ExecuteVM(int[] code, int memSize, int gcThreshold, OutputSink out) {
       this.code = code;
+      this.out = out;
+      gc = new GarbageCollector(this, gcThreshold);
+      caches = new InlineCaches(this, InlineCaches.ENTRIES);
+      top = memSize;
+      sp = fp = top;
+      heap = new int[Math.min(SEGMENT, top)];
+      stack = new int[Math.min(SEGMENT, top) + 1];
+      updateLimit();
     }
     
     public void cpu() {
+      try {
+        interpretCode();
+      } catch (ArrayIndexOutOfBoundsException e) {
+        throw badAddress(e);
+      }
+    }
+
+    // a jump to an operand word or out of the code runs data as instructions,
+    // until an address falls outside the code or the memory
+    private static VMException badAddress(ArrayIndexOutOfBoundsException e) {
+      return new VMException("Bad code or memory address (" + e.getMessage() + ")", e);
+    }
+
+    private void interpretCode() {
       while ( true ) {
         int bytecode = code[ip++]; // fetch
         int v1,v2;
@@ -36,6 +99,17 @@ public class ExecuteVM {
           case SVMParser.POP:
             pop();
             break;
+          case SVMParser.DUP :
+            push(stack[top-sp]);
+            break;
+          case SVMParser.SWAP :
+            v1 = stack[top-sp];
+            stack[top-sp] = stack[top-sp-1];
+            stack[top-sp-1] = v1;
+            break;
+          case SVMParser.POPN :
+            sp += code[ip++];
+            break;
           case SVMParser.ADD :
             v1=pop();
             v2=pop();
@@ -51,17 +125,42 @@ public class ExecuteVM {
             v2=pop();
             push(v2 / v1);
             break;
+          case SVMParser.MOD :
+            v1=pop();
+            v2=pop();
+            push(v2 % v1);
+            break;
           case SVMParser.SUB :
             v1=pop();
             v2=pop();
             push(v2 - v1);
             break;
+          case SVMParser.NEG :
+            stack[top-sp] = -stack[top-sp];
+            break;
+          case SVMParser.SHIFTLEFT :
+            stack[top-sp] <<= code[ip++];
+            break;
+          case SVMParser.SHIFTRIGHT :
+            stack[top-sp] = shiftRight(stack[top-sp], code[ip++]);
+            break;
+          case SVMParser.LOADDISPLAY :
+            push(display[code[ip++]]);
+            break;
+          case SVMParser.STOREDISPLAY :
+            setDisplay(code[ip++], pop());
+            break;
+          case SVMParser.STOREFRAME :
+            address = fp + code[ip++];
+            stack[top - address] = pop();
+            break;
           case SVMParser.STOREW : //
             address = pop();
-            memory[address] = pop();    
+            v1 = pop();
+            store(address, v1, sp);
             break;
           case SVMParser.LOADW : //
-            push(memory[pop()]);
+            push(load(pop(), sp));
             break;
           case SVMParser.BRANCH : 
             address = code[ip];
@@ -79,11 +178,34 @@ public class ExecuteVM {
             v2=pop();
             if (v2 <= v1) ip = address;
             break;
+          case SVMParser.BRANCHLESS :
+            address = code[ip++];
+            v1=pop();
+            v2=pop();
+            if (v2 < v1) ip = address;
+            break;
+          case SVMParser.BRANCHNOTEQ :
+            address = code[ip++];
+            v1=pop();
+            v2=pop();
+            if (v2 != v1) ip = address;
+            break;
+          case SVMParser.BRANCHGREATEREQ :
+            address = code[ip++];
+            v1=pop();
+            v2=pop();
+            if (v2 >= v1) ip = address;
+            break;
           case SVMParser.JS : //
             address = pop();
             ra = ip;
             ip = address;
             break;
+          case SVMParser.DISPATCH : // js to method k of the object on top, which stays there
+            address = dispatch(ip - 1, stack[top-sp], code[ip], sp);
+            ra = ip + 1;
+            ip = address;
+            break;
          case SVMParser.STORERA : //
             ra=pop();
             break;
@@ -106,26 +228,1196 @@ public class ExecuteVM {
             fp=sp;
             break;
          case SVMParser.STOREHP : //
-            hp=pop();
+            setHp(pop(), sp);
             break;
          case SVMParser.LOADHP : //
             push(hp);
             break;
          case SVMParser.PRINT :
-            System.out.println((sp<MEMSIZE)?memory[sp]:"Empty stack!");
+            out.println((sp<top)?String.valueOf(stack[top-sp]):"Empty stack!");
+            break;
+         case SVMParser.NEW :
+            v1 = GarbageCollector.fields(stack[top-sp]);
+            v2 = newObject(sp);
+            sp += v1 + 1;
+            stack[top-sp] = v2;
             break;
          case SVMParser.HALT :
             return;
+         // superinstructions: operands are read where the fused sequence has them
+         case Superinstructions.DUP :
+            tm=stack[top-sp];
+            push(tm);
+            ip += 2;
+            break;
+         case Superinstructions.LOADLOCAL :
+            push(load(fp + code[ip+1], sp));
+            ip += 4;
+            break;
+         case Superinstructions.LOADOUTER :
+            push(load(load(fp, sp) + code[ip+2], sp));
+            ip += 5;
+            break;
+         case Superinstructions.LOADOFFSET :
+            push(load(pop() + code[ip], sp));
+            ip += 3;
+            break;
+         case Superinstructions.STOREHEAP :
+            v1 = pop();
+            store(hp, v1, sp);
+            setHp(hp + code[ip+3], sp);
+            ip += 6;
+            break;
+         case Superinstructions.BUMPHP :
+            setHp(hp + code[ip+1], sp);
+            ip += 4;
+            break;
+         case Superinstructions.BRANCHEQK :
+            if (pop() == code[ip]) ip = code[ip+2];
+            else ip += 3;
+            break;
+         case Superinstructions.RETURN :
+            fp=pop();
+            push(tm);
+            address = ra;
+            ra = ip + 3;
+            ip = address;
+            break;
+         case Superinstructions.ENTER :
+            fp=sp;
+            push(ra);
+            ip += 1;
+            break;
         }
       }
     } 
     
+    /*
+     * Same loop as cpu() with the profiling hooks (see Profiler), so that the
+     * other engines pay nothing for them. Superinstructions are unfused
+     * first: the profile is in terms of the plain SVM instructions.
+     */
+    public void cpuProfiled(Profiler profiler) {
+      try {
+        interpretProfiled(profiler);
+      } catch (ArrayIndexOutOfBoundsException e) {
+        throw badAddress(e);
+      }
+    }
+
+    private void interpretProfiled(Profiler profiler) {
+      int[] code = JitCompiler.unfuse(this.code);
+      while ( true ) {
+        int bytecode = code[ip++]; // fetch
+        int v1,v2;
+        int address;
+        profiler.instruction(bytecode);
+        switch ( bytecode ) {
+          case SVMParser.PUSH:
+            push( code[ip++] );
+            break;
+          case SVMParser.POP:
+            pop();
+            break;
+          case SVMParser.DUP :
+            push(stack[top-sp]);
+            break;
+          case SVMParser.SWAP :
+            v1 = stack[top-sp];
+            stack[top-sp] = stack[top-sp-1];
+            stack[top-sp-1] = v1;
+            break;
+          case SVMParser.POPN :
+            sp += code[ip++];
+            break;
+          case SVMParser.ADD :
+            v1=pop();
+            v2=pop();
+            push(v2 + v1);
+            break;
+          case SVMParser.MULT :
+            v1=pop();
+            v2=pop();
+            push(v2 * v1);
+            break;
+          case SVMParser.DIV :
+            v1=pop();
+            v2=pop();
+            push(v2 / v1);
+            break;
+          case SVMParser.MOD :
+            v1=pop();
+            v2=pop();
+            push(v2 % v1);
+            break;
+          case SVMParser.SUB :
+            v1=pop();
+            v2=pop();
+            push(v2 - v1);
+            break;
+          case SVMParser.NEG :
+            stack[top-sp] = -stack[top-sp];
+            break;
+          case SVMParser.SHIFTLEFT :
+            stack[top-sp] <<= code[ip++];
+            break;
+          case SVMParser.SHIFTRIGHT :
+            stack[top-sp] = shiftRight(stack[top-sp], code[ip++]);
+            break;
+          case SVMParser.LOADDISPLAY :
+            push(display[code[ip++]]);
+            break;
+          case SVMParser.STOREDISPLAY :
+            setDisplay(code[ip++], pop());
+            break;
+          case SVMParser.STOREFRAME :
+            address = fp + code[ip++];
+            stack[top - address] = pop();
+            break;
+          case SVMParser.STOREW :
+            address = pop();
+            v1 = pop();
+            store(address, v1, sp);
+            break;
+          case SVMParser.LOADW :
+            push(load(pop(), sp));
+            break;
+          case SVMParser.BRANCH :
+            ip = code[ip];
+            profiler.branch(code, ip); // a tail call if it enters a function
+            break;
+          case SVMParser.BRANCHEQ :
+            address = code[ip++];
+            v1=pop();
+            v2=pop();
+            if (v2 == v1) ip = address;
+            break;
+          case SVMParser.BRANCHLESSEQ :
+            address = code[ip++];
+            v1=pop();
+            v2=pop();
+            if (v2 <= v1) ip = address;
+            break;
+          case SVMParser.BRANCHLESS :
+            address = code[ip++];
+            v1=pop();
+            v2=pop();
+            if (v2 < v1) ip = address;
+            break;
+          case SVMParser.BRANCHNOTEQ :
+            address = code[ip++];
+            v1=pop();
+            v2=pop();
+            if (v2 != v1) ip = address;
+            break;
+          case SVMParser.BRANCHGREATEREQ :
+            address = code[ip++];
+            v1=pop();
+            v2=pop();
+            if (v2 >= v1) ip = address;
+            break;
+          case SVMParser.JS :
+            address = pop();
+            ra = ip;
+            ip = address;
+            profiler.jump(address, ra); // call or return
+            break;
+          case SVMParser.DISPATCH :
+            address = dispatch(ip - 1, stack[top-sp], code[ip], sp);
+            ra = ip + 1;
+            ip = address;
+            profiler.jump(address, ra);
+            break;
+         case SVMParser.STORERA :
+            ra=pop();
+            break;
+         case SVMParser.LOADRA :
+            push(ra);
+            break;
+         case SVMParser.STORETM :
+            tm=pop();
+            break;
+         case SVMParser.LOADTM :
+            push(tm);
+            break;
+         case SVMParser.LOADFP :
+            push(fp);
+            break;
+         case SVMParser.STOREFP :
+            fp=pop();
+            break;
+         case SVMParser.COPYFP :
+            fp=sp;
+            break;
+         case SVMParser.STOREHP :
+            setHp(pop(), sp);
+            break;
+         case SVMParser.LOADHP :
+            push(hp);
+            break;
+         case SVMParser.PRINT :
+            out.println((sp<top)?String.valueOf(stack[top-sp]):"Empty stack!");
+            break;
+         case SVMParser.NEW :
+            v1 = GarbageCollector.fields(stack[top-sp]);
+            v2 = newObject(sp);
+            sp += v1 + 1;
+            stack[top-sp] = v2;
+            break;
+         case SVMParser.HALT :
+            profiler.halt();
+            return;
+        }
+      }
+    }
+    
+    private long executed; // instructions run by the decoded engine
+
+    /*
+     * Same semantics as cpu(), but runs over the pre-decoded records of
+     * DecodedCode: no operand fetch from code[], branch targets already
+     * resolved, and a single dense switch per instruction.
+     */
+    public void cpuDecoded() {
+      cpuDecoded(new DecodedCode(code));
+    }
+
+    public void cpuDecoded(DecodedCode decoded) {
+      final int[] op = decoded.op;
+      final int[] arg = decoded.arg;
+      final int[] address = decoded.address;
+      final int top = this.top;
+      int pc = decoded.target(ip);
+      int sp = this.sp;
+      int fp = this.fp;
+      long count = 0;
+      while ( true ) {
+        int bytecode = op[pc];
+        int a = arg[pc++];
+        int v1;
+        count++;
+        switch ( bytecode ) {
+          case SVMParser.PUSH:
+            if (--sp < limit) growStack(sp);
+            stack[top - sp] = a;
+            break;
+          case SVMParser.POP:
+            sp++;
+            break;
+          case SVMParser.DUP :
+            v1 = stack[top - sp];
+            if (--sp < limit) growStack(sp);
+            stack[top - sp] = v1;
+            break;
+          case SVMParser.SWAP :
+            v1 = stack[top - sp];
+            stack[top - sp] = stack[top - sp - 1];
+            stack[top - sp - 1] = v1;
+            break;
+          case SVMParser.POPN :
+            sp += a;
+            break;
+          case SVMParser.ADD :
+            v1 = stack[top - sp++];
+            stack[top - sp] += v1;
+            break;
+          case SVMParser.MULT :
+            v1 = stack[top - sp++];
+            stack[top - sp] *= v1;
+            break;
+          case SVMParser.DIV :
+            v1 = stack[top - sp++];
+            stack[top - sp] /= v1;
+            break;
+          case SVMParser.MOD :
+            v1 = stack[top - sp++];
+            stack[top - sp] %= v1;
+            break;
+          case SVMParser.SUB :
+            v1 = stack[top - sp++];
+            stack[top - sp] -= v1;
+            break;
+          case SVMParser.NEG :
+            stack[top - sp] = -stack[top - sp];
+            break;
+          case SVMParser.SHIFTLEFT :
+            stack[top - sp] <<= a;
+            break;
+          case SVMParser.SHIFTRIGHT :
+            stack[top - sp] = shiftRight(stack[top - sp], a);
+            break;
+          case SVMParser.LOADDISPLAY :
+            if (--sp < limit) growStack(sp);
+            stack[top - sp] = display[a];
+            break;
+          case SVMParser.STOREDISPLAY :
+            setDisplay(a, stack[top - sp++]);
+            break;
+          case SVMParser.STOREFRAME :
+            stack[top - fp - a] = stack[top - sp++];
+            break;
+          case SVMParser.STOREW :
+            v1 = stack[top - sp];
+            sp += 2;
+            store(v1, stack[top - sp + 1], sp);
+            break;
+          case SVMParser.LOADW :
+            stack[top - sp] = load(stack[top - sp], sp + 1);
+            break;
+          case SVMParser.BRANCH :
+            pc = a;
+            break;
+          case SVMParser.BRANCHEQ :
+            v1 = stack[top - sp++];
+            if (stack[top - sp++] == v1) pc = a;
+            break;
+          case SVMParser.BRANCHLESSEQ :
+            v1 = stack[top - sp++];
+            if (stack[top - sp++] <= v1) pc = a;
+            break;
+          case SVMParser.BRANCHLESS :
+            v1 = stack[top - sp++];
+            if (stack[top - sp++] < v1) pc = a;
+            break;
+          case SVMParser.BRANCHNOTEQ :
+            v1 = stack[top - sp++];
+            if (stack[top - sp++] != v1) pc = a;
+            break;
+          case SVMParser.BRANCHGREATEREQ :
+            v1 = stack[top - sp++];
+            if (stack[top - sp++] >= v1) pc = a;
+            break;
+          case SVMParser.JS :
+            ra = address[pc];
+            pc = decoded.target(stack[top - sp++]);
+            break;
+          case SVMParser.DISPATCH :
+            ra = address[pc];
+            pc = decoded.target(dispatch(address[pc - 1], stack[top - sp], a, sp));
+            break;
+          case SVMParser.STORERA :
+            ra = stack[top - sp++];
+            break;
+          case SVMParser.LOADRA :
+            if (--sp < limit) growStack(sp);
+            stack[top - sp] = ra;
+            break;
+          case SVMParser.STORETM :
+            tm = stack[top - sp++];
+            break;
+          case SVMParser.LOADTM :
+            if (--sp < limit) growStack(sp);
+            stack[top - sp] = tm;
+            break;
+          case SVMParser.LOADFP :
+            if (--sp < limit) growStack(sp);
+            stack[top - sp] = fp;
+            break;
+          case SVMParser.STOREFP :
+            fp = stack[top - sp++];
+            break;
+          case SVMParser.COPYFP :
+            fp = sp;
+            break;
+          case SVMParser.STOREHP :
+            setHp(stack[top - sp], sp + 1);
+            sp++;
+            break;
+          case SVMParser.LOADHP :
+            if (--sp < limit) growStack(sp);
+            stack[top - sp] = hp;
+            break;
+          case SVMParser.PRINT :
+            out.println((sp<top)?String.valueOf(stack[top - sp]):"Empty stack!");
+            break;
+          case SVMParser.NEW :
+            v1 = newObject(sp);
+            sp += GarbageCollector.fields(stack[top - sp]) + 1;
+            stack[top - sp] = v1;
+            break;
+          // superinstructions: skip the records of the rest of the sequence
+          case Superinstructions.DUP :
+            tm = stack[top - sp];
+            if (--sp < limit) growStack(sp);
+            stack[top - sp] = tm;
+            pc += 2;
+            break;
+          case Superinstructions.LOADLOCAL :
+            v1 = load(fp + arg[pc], sp);
+            if (--sp < limit) growStack(sp);
+            stack[top - sp] = v1;
+            pc += 3;
+            break;
+          case Superinstructions.LOADOUTER :
+            v1 = load(load(fp, sp) + arg[pc+1], sp);
+            if (--sp < limit) growStack(sp);
+            stack[top - sp] = v1;
+            pc += 4;
+            break;
+          case Superinstructions.LOADOFFSET :
+            stack[top - sp] = load(stack[top - sp] + a, sp + 1);
+            pc += 2;
+            break;
+          case Superinstructions.STOREHEAP :
+            v1 = stack[top - sp++];
+            store(hp, v1, sp);
+            setHp(hp + arg[pc+2], sp);
+            pc += 5;
+            break;
+          case Superinstructions.BUMPHP :
+            setHp(hp + arg[pc], sp);
+            pc += 3;
+            break;
+          case Superinstructions.BRANCHEQK :
+            if (stack[top - sp++] == a) pc = arg[pc];
+            else pc += 1;
+            break;
+          case Superinstructions.RETURN :
+            fp = stack[top - sp];
+            stack[top - sp] = tm;
+            v1 = ra;
+            ra = address[pc+3];
+            pc = decoded.target(v1);
+            break;
+          case Superinstructions.ENTER :
+            fp = sp;
+            if (--sp < limit) growStack(sp);
+            stack[top - sp] = ra;
+            pc += 1;
+            break;
+          case SVMParser.HALT :
+            this.sp = sp;
+            this.fp = fp;
+            executed = count;
+            return;
+          case DecodedCode.TRAP :
+            throw new VMException("Jump to a code address that is not an instruction");
+        }
+      }
+    }
+
+    /*
+     * Stack caching on top of the decoded engine: whenever the stack is not
+     * empty its top is kept in the local tos, while its slot in the stack
+     * segment may be stale. The top is written back only when another value is
+     * pushed over it or when cfp makes the frame visible through fp (and at
+     * halt), so arithmetic, comparisons and branches consume their operands
+     * without going through the stack segment. Loads always follow a push of
+     * their address, which spills the previous top, so they see it up to date.
+     */
+    public void cpuCached() {
+      cpuCached(new DecodedCode(code));
+    }
+
+    public void cpuCached(DecodedCode decoded) {
+      final int[] op = decoded.op;
+      final int[] arg = decoded.arg;
+      final int[] address = decoded.address;
+      final int top = this.top;
+      int pc = decoded.target(ip);
+      int sp = this.sp;
+      int fp = this.fp;
+      int tos = stack[top - sp];
+      long count = 0;
+      while ( true ) {
+        int bytecode = op[pc];
+        int a = arg[pc++];
+        int v1,v2;
+        count++;
+        switch ( bytecode ) {
+          case SVMParser.PUSH:
+            stack[top - sp] = tos;
+            if (--sp < limit) growStack(sp);
+            tos = a;
+            break;
+          case SVMParser.POP:
+            tos = stack[top - ++sp];
+            break;
+          case SVMParser.DUP :
+            stack[top - sp] = tos;
+            if (--sp < limit) growStack(sp);
+            break;
+          case SVMParser.SWAP :
+            v1 = tos;
+            tos = stack[top - sp - 1];
+            stack[top - sp - 1] = v1;
+            break;
+          case SVMParser.POPN : // popn 0 leaves the top in tos
+            if (a != 0) tos = stack[top - (sp += a)];
+            break;
+          case SVMParser.ADD :
+            tos = stack[top - ++sp] + tos;
+            break;
+          case SVMParser.MULT :
+            tos = stack[top - ++sp] * tos;
+            break;
+          case SVMParser.DIV :
+            tos = stack[top - ++sp] / tos;
+            break;
+          case SVMParser.MOD :
+            tos = stack[top - ++sp] % tos;
+            break;
+          case SVMParser.SUB :
+            tos = stack[top - ++sp] - tos;
+            break;
+          case SVMParser.NEG :
+            tos = -tos;
+            break;
+          case SVMParser.SHIFTLEFT :
+            tos <<= a;
+            break;
+          case SVMParser.SHIFTRIGHT :
+            tos = shiftRight(tos, a);
+            break;
+          case SVMParser.LOADDISPLAY :
+            stack[top - sp] = tos;
+            if (--sp < limit) growStack(sp);
+            tos = display[a];
+            break;
+          case SVMParser.STOREDISPLAY :
+            setDisplay(a, tos);
+            tos = stack[top - ++sp];
+            break;
+          case SVMParser.STOREFRAME :
+            stack[top - fp - a] = tos;
+            tos = stack[top - ++sp];
+            break;
+          case SVMParser.STOREW :
+            v1 = stack[top - sp - 1];
+            sp += 2;
+            store(tos, v1, sp);
+            tos = stack[top - sp]; // after the store: it may have written the new top
+            break;
+          case SVMParser.LOADW :
+            tos = load(tos, sp + 1);
+            break;
+          case SVMParser.BRANCH :
+            pc = a;
+            break;
+          case SVMParser.BRANCHEQ :
+            v1 = tos;
+            v2 = stack[top - sp - 1];
+            sp += 2;
+            tos = stack[top - sp];
+            if (v2 == v1) pc = a;
+            break;
+          case SVMParser.BRANCHLESSEQ :
+            v1 = tos;
+            v2 = stack[top - sp - 1];
+            sp += 2;
+            tos = stack[top - sp];
+            if (v2 <= v1) pc = a;
+            break;
+          case SVMParser.BRANCHLESS :
+            v1 = tos;
+            v2 = stack[top - sp - 1];
+            sp += 2;
+            tos = stack[top - sp];
+            if (v2 < v1) pc = a;
+            break;
+          case SVMParser.BRANCHNOTEQ :
+            v1 = tos;
+            v2 = stack[top - sp - 1];
+            sp += 2;
+            tos = stack[top - sp];
+            if (v2 != v1) pc = a;
+            break;
+          case SVMParser.BRANCHGREATEREQ :
+            v1 = tos;
+            v2 = stack[top - sp - 1];
+            sp += 2;
+            tos = stack[top - sp];
+            if (v2 >= v1) pc = a;
+            break;
+          case SVMParser.JS :
+            v1 = tos;
+            tos = stack[top - ++sp];
+            ra = address[pc];
+            pc = decoded.target(v1);
+            break;
+          case SVMParser.DISPATCH :
+            ra = address[pc];
+            pc = decoded.target(dispatch(address[pc - 1], tos, a, sp));
+            break;
+          case SVMParser.STORERA :
+            ra = tos;
+            tos = stack[top - ++sp];
+            break;
+          case SVMParser.LOADRA :
+            stack[top - sp] = tos;
+            if (--sp < limit) growStack(sp);
+            tos = ra;
+            break;
+          case SVMParser.STORETM :
+            tm = tos;
+            tos = stack[top - ++sp];
+            break;
+          case SVMParser.LOADTM :
+            stack[top - sp] = tos;
+            if (--sp < limit) growStack(sp);
+            tos = tm;
+            break;
+          case SVMParser.LOADFP :
+            stack[top - sp] = tos;
+            if (--sp < limit) growStack(sp);
+            tos = fp;
+            break;
+          case SVMParser.STOREFP :
+            fp = tos;
+            tos = stack[top - ++sp];
+            break;
+          case SVMParser.COPYFP : // the new frame is addressed through memory: flush
+            stack[top - sp] = tos;
+            fp = sp;
+            break;
+          case SVMParser.STOREHP :
+            setHp(tos, sp + 1);
+            tos = stack[top - ++sp];
+            break;
+          case SVMParser.LOADHP :
+            stack[top - sp] = tos;
+            if (--sp < limit) growStack(sp);
+            tos = hp;
+            break;
+          case SVMParser.PRINT :
+            out.println((sp<top)?String.valueOf(tos):"Empty stack!");
+            break;
+          case SVMParser.NEW : // the collector scans the stack segment: flush
+            stack[top - sp] = tos;
+            tos = newObject(sp);
+            sp += GarbageCollector.fields(stack[top - sp]) + 1;
+            break;
+          case Superinstructions.DUP :
+            tm = tos;
+            stack[top - sp] = tos;
+            if (--sp < limit) growStack(sp);
+            pc += 2;
+            break;
+          case Superinstructions.LOADLOCAL :
+            stack[top - sp] = tos;
+            if (--sp < limit) growStack(sp);
+            tos = load(fp + arg[pc], sp);
+            pc += 3;
+            break;
+          case Superinstructions.LOADOUTER :
+            stack[top - sp] = tos;
+            if (--sp < limit) growStack(sp);
+            tos = load(load(fp, sp) + arg[pc+1], sp);
+            pc += 4;
+            break;
+          case Superinstructions.LOADOFFSET :
+            tos = load(tos + a, sp + 1);
+            pc += 2;
+            break;
+          case Superinstructions.STOREHEAP :
+            store(hp, tos, sp + 1);
+            tos = stack[top - ++sp];
+            setHp(hp + arg[pc+2], sp);
+            pc += 5;
+            break;
+          case Superinstructions.BUMPHP :
+            setHp(hp + arg[pc], sp);
+            pc += 3;
+            break;
+          case Superinstructions.BRANCHEQK :
+            v1 = tos;
+            tos = stack[top - ++sp];
+            if (v1 == a) pc = arg[pc];
+            else pc += 1;
+            break;
+          case Superinstructions.RETURN :
+            fp = tos;
+            tos = tm;
+            v1 = ra;
+            ra = address[pc+3];
+            pc = decoded.target(v1);
+            break;
+          case Superinstructions.ENTER : // flush and push at once
+            fp = sp;
+            stack[top - sp] = tos;
+            if (--sp < limit) growStack(sp);
+            tos = ra;
+            pc += 1;
+            break;
+          case SVMParser.HALT :
+            stack[top - sp] = tos;
+            this.sp = sp;
+            this.fp = fp;
+            executed = count;
+            return;
+          case DecodedCode.TRAP :
+            throw new VMException("Jump to a code address that is not an instruction");
+        }
+      }
+    }
+
+    public long getExecuted() {
+      return executed;
+    }
+
+    // stack high-water mark, in words: the stack segment only grows when the
+    // stack goes past it, so its size bounds the deepest stack reached
+    public int getStackHighWater() {
+      return stack.length - 1;
+    }
+
+    private JitCode jit;
+    private TieredCode tiers;  // null unless run by cpuTiered()
+    private int[] interpreted; // code run by interpret()
+
+    /*
+     * Runs the program with the functions translated to JVM bytecode by
+     * JitCompiler; the rest of the code (main program, functions that could
+     * not be translated) is interpreted. Every SVM call into translated code
+     * is also a JVM call, so the machine runs on a thread with a large stack.
+     */
+    public void cpuJit(JitCode jit) {
+      onLargeStack(() -> runJit(jit));
+    }
+
+    void runJit(JitCode jit) {
+      this.jit = jit;
+      interpreted = jit.code;
+      run();
+    }
+
+    /*
+     * Tiered execution: functions start interpreted and are fused or
+     * translated by TieredCode when they get hot (see TieredCode).
+     */
+    public void cpuTiered(TieredCode tiers) {
+      onLargeStack(() -> runTiered(tiers));
+    }
+
+    void runTiered(TieredCode tiers) {
+      this.tiers = tiers;
+      jit = tiers.jit();
+      interpreted = tiers.code;
+      run();
+    }
+
+    private void run() {
+      try {
+        if (jit.isCompiled(ip)) ip = jit.call(this, ip);
+        if (ip != HALTED) interpret(ip, HALTED);
+      } catch (StackOverflowError e) {
+        throw new VMException("Call depth too big for the JIT (sp=" + sp + ", memory size " + top + ")", e);
+      } catch (ArrayIndexOutOfBoundsException e) {
+        throw badAddress(e);
+      }
+    }
+
+    static final long JIT_STACK = 1L << 30;
+
+    // runs r on a new thread with a JIT_STACK bytes stack and waits for it
+    static void onLargeStack(Runnable r) {
+      Throwable[] failure = new Throwable[1];
+      Thread t = new Thread(null, () -> {
+        try {
+          r.run();
+        } catch (RuntimeException | Error e) {
+          failure[0] = e;
+        }
+      }, "svm", JIT_STACK);
+      t.start();
+      try {
+        t.join();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new VMException("Interrupted", e);
+      }
+      if (failure[0] instanceof RuntimeException) throw (RuntimeException) failure[0];
+      if (failure[0] != null) throw (Error) failure[0];
+    }
+
+    // called by the translated code for a js to code it does not have:
+    // interprets until control comes back to the return address in ra
+    int interpretCall(int target) {
+      if (tiers != null) {
+        tiers.invoked(target);
+        jit = tiers.jit();
+        if (jit.isCompiled(target)) return jit.call(this, target); // compiled in the meantime
+      }
+      return interpret(target, ra);
+    }
+
+    /*
+     * Interpreter used with the JIT and by tiered execution. Returns when a
+     * js jumps to stop (the return address of the call being interpreted) or
+     * at halt. A tail call (b to a function, see JitCompiler) runs the
+     * function translated if it is. With tiers, it counts the calls it makes,
+     * tail calls included, and the backward branches it takes.
+     */
+    private int interpret(int from, int stop) {
+      final int[] code = interpreted;
+      int ip = from;
+      while ( true ) {
+        int bytecode = code[ip++];
+        int v1,v2;
+        int address;
+        switch ( bytecode ) {
+          case SVMParser.PUSH:
+            push( code[ip++] );
+            break;
+          case SVMParser.POP:
+            pop();
+            break;
+          case SVMParser.DUP :
+            push(stack[top-sp]);
+            break;
+          case SVMParser.SWAP :
+            v1 = stack[top-sp];
+            stack[top-sp] = stack[top-sp-1];
+            stack[top-sp-1] = v1;
+            break;
+          case SVMParser.POPN :
+            sp += code[ip++];
+            break;
+          case SVMParser.ADD :
+            v1=pop();
+            v2=pop();
+            push(v2 + v1);
+            break;
+          case SVMParser.MULT :
+            v1=pop();
+            v2=pop();
+            push(v2 * v1);
+            break;
+          case SVMParser.DIV :
+            v1=pop();
+            v2=pop();
+            push(v2 / v1);
+            break;
+          case SVMParser.MOD :
+            v1=pop();
+            v2=pop();
+            push(v2 % v1);
+            break;
+          case SVMParser.SUB :
+            v1=pop();
+            v2=pop();
+            push(v2 - v1);
+            break;
+          case SVMParser.NEG :
+            stack[top-sp] = -stack[top-sp];
+            break;
+          case SVMParser.SHIFTLEFT :
+            stack[top-sp] <<= code[ip++];
+            break;
+          case SVMParser.SHIFTRIGHT :
+            stack[top-sp] = shiftRight(stack[top-sp], code[ip++]);
+            break;
+          case SVMParser.LOADDISPLAY :
+            push(display[code[ip++]]);
+            break;
+          case SVMParser.STOREDISPLAY :
+            setDisplay(code[ip++], pop());
+            break;
+          case SVMParser.STOREFRAME :
+            address = fp + code[ip++];
+            stack[top - address] = pop();
+            break;
+          case SVMParser.STOREW :
+            address = pop();
+            v1 = pop();
+            store(address, v1, sp);
+            break;
+          case SVMParser.LOADW :
+            push(load(pop(), sp));
+            break;
+          case SVMParser.BRANCH : 
+            address = code[ip];
+            if (tiers != null) branch(ip, address);
+            v1 = jit.tailCallEntry(address);
+            if (v1 < 0) {
+              ip = address;
+              break;
+            }
+            // a tail call to a translated function: past cfp lra, its entry pushes the return address again
+            if (v1 != address) ra = pop();
+            ip = jit.call(this, v1);
+            if (ip == stop || ip == HALTED) return ip;
+            break;
+          case SVMParser.BRANCHEQ :
+            address = code[ip++];
+            v1=pop();
+            v2=pop();
+            if (v2 == v1) {
+              if (tiers != null && address < ip) backEdge(ip);
+              ip = address;
+            }
+            break;
+          case SVMParser.BRANCHLESSEQ :
+            address = code[ip++];
+            v1=pop();
+            v2=pop();
+            if (v2 <= v1) {
+              if (tiers != null && address < ip) backEdge(ip);
+              ip = address;
+            }
+            break;
+          case SVMParser.BRANCHLESS :
+            address = code[ip++];
+            v1=pop();
+            v2=pop();
+            if (v2 < v1) {
+              if (tiers != null && address < ip) backEdge(ip);
+              ip = address;
+            }
+            break;
+          case SVMParser.BRANCHNOTEQ :
+            address = code[ip++];
+            v1=pop();
+            v2=pop();
+            if (v2 != v1) {
+              if (tiers != null && address < ip) backEdge(ip);
+              ip = address;
+            }
+            break;
+          case SVMParser.BRANCHGREATEREQ :
+            address = code[ip++];
+            v1=pop();
+            v2=pop();
+            if (v2 >= v1) {
+              if (tiers != null && address < ip) backEdge(ip);
+              ip = address;
+            }
+            break;
+          case SVMParser.DISPATCH :
+            v1 = code[ip++];
+            address = dispatch(ip - 2, stack[top-sp], v1, sp);
+            ra = ip;
+            if (address == stop) return address;
+            ip = call(address);
+            if (ip == stop || ip == HALTED) return ip;
+            break;
+          case SVMParser.JS :
+            address = pop();
+            ra = ip;
+            if (address == stop) return address;
+            ip = call(address);
+            if (ip == stop || ip == HALTED) return ip;
+            break;
+          case SVMParser.STORERA :
+            ra=pop();
+            break;
+          case SVMParser.LOADRA :
+            push(ra);
+            break;
+          case SVMParser.STORETM : 
+            tm=pop();
+            break;
+          case SVMParser.LOADTM : 
+            push(tm);
+            break;
+          case SVMParser.LOADFP :
+            push(fp);
+            break;
+          case SVMParser.STOREFP :
+            fp=pop();
+            break;
+          case SVMParser.COPYFP :
+            fp=sp;
+            break;
+          case SVMParser.STOREHP :
+            setHp(pop(), sp);
+            break;
+          case SVMParser.LOADHP :
+            push(hp);
+            break;
+          case SVMParser.PRINT :
+            print(sp);
+            break;
+          case SVMParser.NEW :
+            sp = newInstruction(sp);
+            break;
+          case SVMParser.HALT :
+            this.ip = ip;
+            return HALTED;
+          // superinstructions of the FUSED tier
+          case Superinstructions.DUP :
+            tm=stack[top-sp];
+            push(tm);
+            ip += 2;
+            break;
+          case Superinstructions.LOADLOCAL :
+            push(load(fp + code[ip+1], sp));
+            ip += 4;
+            break;
+          case Superinstructions.LOADOUTER :
+            push(load(load(fp, sp) + code[ip+2], sp));
+            ip += 5;
+            break;
+          case Superinstructions.LOADOFFSET :
+            push(load(pop() + code[ip], sp));
+            ip += 3;
+            break;
+          case Superinstructions.STOREHEAP :
+            v1 = pop();
+            store(hp, v1, sp);
+            setHp(hp + code[ip+3], sp);
+            ip += 6;
+            break;
+          case Superinstructions.BUMPHP :
+            setHp(hp + code[ip+1], sp);
+            ip += 4;
+            break;
+          case Superinstructions.BRANCHEQK :
+            if (pop() == code[ip]) ip = code[ip+2];
+            else ip += 3;
+            break;
+          case Superinstructions.RETURN : // sfp ltm lra js
+            fp=pop();
+            push(tm);
+            address = ra;
+            ra = ip + 3;
+            if (address == stop) return address;
+            ip = call(address);
+            if (ip == stop || ip == HALTED) return ip;
+            break;
+          case Superinstructions.ENTER :
+            fp=sp;
+            push(ra);
+            ip += 1;
+            break;
+        }
+      }
+    }
+
+    // jump of the interpreter to address (a call or a return): runs the
+    // compiled code if there is any, returns where to go on interpreting
+    private int call(int address) {
+      if (tiers != null) {
+        tiers.invoked(address);
+        jit = tiers.jit();
+      }
+      return jit.isCompiled(address) ? jit.call(this, address) : address;
+    }
+
+    private void backEdge(int from) {
+      tiers.backEdge(from);
+      jit = tiers.jit();
+    }
+
+    private void branch(int from, int to) {
+      tiers.branch(from, to);
+      jit = tiers.jit();
+    }
+
+    // helpers for the code generated by JitCompiler
+
+    int[] room(int sp) {
+      if (sp < limit) growStack(sp);
+      return stack;
+    }
+
+    void print(int sp) {
+      out.println((sp<top)?String.valueOf(stack[top-sp]):"Empty stack!");
+    }
+
+    // dsp k at code address site, with the object on top of the stack at sp:
+    // address of method k of its class
+    int dispatch(int site, int object, int k, int sp) {
+      return caches.target(site, load(object, sp), k);
+    }
+
+    int codeSize() {
+      return code.length;
+    }
+
+    // hits and misses of the inline caches
+    public InlineCaches getInlineCaches() {
+      return caches;
+    }
+
+    // entries of every inline cache, 0 to look up every call in the dispatch table;
+    // empties the caches
+    public void setInlineCacheEntries(int entries) {
+      caches = new InlineCaches(this, entries);
+    }
+
+    // executes "new" with the stack at sp, returns the new sp
+    int newInstruction(int sp) {
+      int n = GarbageCollector.fields(stack[top - sp]);
+      int object = newObject(sp);
+      sp += n + 1;
+      stack[top - sp] = object;
+      return sp;
+    }
+
+    public GarbageCollector getCollector() {
+      return gc;
+    }
+
+    /*
+     * "new": the header is on top of the stack, below it the dispatch pointer
+     * and the fields (the last one first). They stay on the stack, visible to
+     * the collector, until the block is allocated; then they are moved into it.
+     * Returns the object pointer, the caller pops the header, the dispatch
+     * pointer and the fields and pushes it.
+     */
+    private int newObject(int sp) {
+      int header = stack[top - sp];
+      int n = GarbageCollector.fields(header);
+      int block = gc.allocate(n + 2, sp);
+      heap[block] = header;
+      for (int k = 1; k <= n; k++) heap[block + k] = stack[top - (sp + 1 + k)]; // field n-k
+      heap[block + n + 1] = stack[top - (sp + 1)];
+      return block + n + 1;
+    }
+
+    void setDisplay(int level, int frame) {
+      if (level >= display.length) display = Arrays.copyOf(display, Math.max(2 * display.length, level + 1));
+      display[level] = frame;
+    }
+    
+    // shr k: division by 2^k rounded toward zero like div (a plain arithmetic
+    // shift rounds negative values down)
+    static int shiftRight(int v, int k) {
+      return (v < 0 ? v + (1 << k) - 1 : v) >> k;
+    }
+    
     private int pop() {
-      return memory[sp++];
+      return stack[top - sp++];
     }
     
     private void push(int v) {
-      memory[--sp] = v;
+      if (--sp < limit) growStack(sp);
+      stack[top - sp] = v;
+    }
+    
+    int load(int address, int sp) {
+      return address >= sp ? stack[top - address] : heap[address];
+    }
+    
+    void store(int address, int value, int sp) {
+      if (address >= sp) stack[top - address] = value;
+      else {
+        if (address >= heap.length) growHeap(address);
+        heap[address] = value;
+      }
+    }
+    
+    void setHp(int value, int sp) {
+      if (value > sp || value < 0)
+        throw new VMException("Heap overflow: hp=" + value + " collides with the stack (sp=" + sp + ", memory size " + top + ")");
+      hp = value;
+      updateLimit();
+    }
+    
+    void growStack(int sp) {
+      if (sp < hp)
+        throw new VMException("Stack overflow: sp=" + sp + " collides with the heap (hp=" + hp + ", memory size " + top + ")");
+      stack = Arrays.copyOf(stack, Math.min(Math.max(2 * stack.length, top - sp + 1), top - hp + 1));
+      updateLimit();
+    }
+    
+    void growHeap(int address) {
+      heap = Arrays.copyOf(heap, Math.min(Math.max(2 * heap.length, address + 1), top));
+    }
+    
+    private void updateLimit() {
+      limit = Math.max(hp, top - stack.length + 1);
     }
     
 }
\ No newline at end of file
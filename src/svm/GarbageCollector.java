@@ -0,0 +1,243 @@
+package svm;
+
+import java.util.Arrays;
+import java.util.BitSet;
+
+/*
+ * Mark-sweep collector for the heap segment of ExecuteVM.
+ *
+ * Objects are allocated by the "new" instruction with this layout:
+ *
+ *   block:        header (number of fields + pointer mask, see header())
+ *   block+1..n:   fields n-1 .. 0
+ *   block+n+1:    dispatch pointer   <- object pointer
+ *
+ * The pointer mask comes from the field types known by the code generator.
+ * Stack slots are not typed (temporaries of pending calls and expressions sit
+ * between the frames), so every word between sp and the top of the address
+ * space that is the pointer of an allocated object is a root: an integer that
+ * happens to look like one only keeps that object alive. For this reason the
+ * collector never moves objects: freed blocks are coalesced and reused through
+ * free lists, and a free run at the end of the heap is given back to hp.
+ * Dispatch tables are built with lhp/shp before the first object and are
+ * never collected.
+ */
+public class GarbageCollector {
+
+    public static final int MAX_FIELDS = 0xFFFF;
+    public static final int MASKED_FIELDS = 15; // fields with a precise pointer bit
+    public static final int THRESHOLD = 4096;   // default minimum of heap words allocated between collections
+
+    private static final int SMALL = 64;        // blocks smaller than this have their own free list
+
+    private final ExecuteVM vm;
+    private final int threshold;
+    private int base = -1;                      // address of the first object
+    private long budget;                        // words to allocate before the next collection
+    private final BitSet starts = new BitSet(); // first word of the allocated blocks
+    private final BitSet objects = new BitSet();// object pointers of the allocated blocks
+    private final BitSet marked = new BitSet();
+    private final int[] small = new int[SMALL]; // heads of the exact-size free lists
+    private int large = -1;                     // head of the free list of bigger blocks
+    private int[] work = new int[256];
+
+    private int collections;
+    private long totalPause, maxPause;
+    private long allocated, reclaimed;          // in words
+    private long sinceCollection;
+    private long live;                          // words in use after the last collection
+
+    GarbageCollector(ExecuteVM vm, int threshold) {
+      this.vm = vm;
+      this.threshold = threshold;
+      Arrays.fill(small, -1);
+    }
+
+    // header word of an object with the given number of fields: bit i of
+    // pointerMask tells whether field i holds an object pointer; fields from
+    // MASKED_FIELDS on are scanned like stack slots
+    public static int header(int fields, int pointerMask) {
+      if (fields < 0 || fields > MAX_FIELDS) throw new IllegalArgumentException("Bad number of fields: " + fields);
+      return ((pointerMask & ((1 << MASKED_FIELDS) - 1)) << 16) | fields;
+    }
+
+    public static int fields(int header) {
+      return header & MAX_FIELDS;
+    }
+
+    /*
+     * Returns the first word of a free block of size words for an object
+     * whose fields are still on the stack above sp. A collection runs after
+     * max(threshold, live words) words have been allocated since the previous
+     * one, or before the heap grows past half of the memory left between its
+     * first object and the stack (the stack cannot start a collection when it
+     * needs room). Free blocks are reused before the heap grows.
+     */
+    int allocate(int size, int sp) {
+      if (base < 0) {
+        base = vm.hp;
+        budget = threshold;
+      }
+      boolean collected = sinceCollection + size > budget;
+      if (collected) collect(sp);
+      int block = take(size);
+      if (block < 0 && !collected && 2 * (vm.hp + size) > base + sp) {
+        collect(sp);
+        block = take(size);
+      }
+      if (block < 0) {
+        block = vm.hp;
+        vm.setHp(block + size, sp); // still too big: heap overflow
+        if (block + size > vm.heap.length) vm.growHeap(block + size - 1);
+      }
+      starts.set(block);
+      objects.set(block + size - 1);
+      allocated += size;
+      sinceCollection += size;
+      return block;
+    }
+
+    void collect(int sp) {
+      if (base < 0) return; // no objects yet
+      long start = System.nanoTime();
+      int[] heap = vm.heap;
+      int n = 0;
+      for (int a = sp; a < vm.top; a++) n = mark(vm.stack[vm.top - a], n);
+      n = mark(vm.tm, n);
+      while (n > 0) {
+        int object = work[--n];
+        int header = heap[starts.previousSetBit(object)];
+        int mask = header >>> 16;
+        for (int i = 0; i < fields(header); i++)
+          if (i >= MASKED_FIELDS || (mask & (1 << i)) != 0) n = mark(heap[object - 1 - i], n);
+      }
+      sweep(sp);
+      marked.clear();
+      long pause = System.nanoTime() - start;
+      collections++;
+      totalPause += pause;
+      maxPause = Math.max(maxPause, pause);
+      budget = Math.max(threshold, live);
+      sinceCollection = 0;
+    }
+
+    private int mark(int v, int n) {
+      if (v >= base && v < vm.hp && objects.get(v) && !marked.get(v)) {
+        marked.set(v);
+        if (n == work.length) work = Arrays.copyOf(work, 2 * n);
+        work[n++] = v;
+      }
+      return n;
+    }
+
+    // frees the unmarked blocks and rebuilds the free lists out of the runs
+    // of adjacent free blocks
+    private void sweep(int sp) {
+      int[] heap = vm.heap;
+      Arrays.fill(small, -1);
+      large = -1;
+      live = 0;
+      int run = -1;
+      int size;
+      for (int a = base; a < vm.hp; a += size) {
+        int header = heap[a];
+        boolean free = header < 0;
+        if (free) size = -header;
+        else {
+          size = fields(header) + 2;
+          if (marked.get(a + size - 1)) live += size;
+          else {
+            free = true;
+            starts.clear(a);
+            objects.clear(a + size - 1);
+            reclaimed += size;
+          }
+        }
+        if (free && run < 0) run = a;
+        if (!free && run >= 0) {
+          release(run, a - run);
+          run = -1;
+        }
+      }
+      if (run >= 0) vm.setHp(run, sp);
+    }
+
+    private void release(int block, int size) {
+      int[] heap = vm.heap;
+      heap[block] = -size;
+      if (size < SMALL) {
+        heap[block + 1] = small[size];
+        small[size] = block;
+      } else {
+        heap[block + 1] = large;
+        large = block;
+      }
+    }
+
+    // a free block of exactly size words, or the front of the first free
+    // block big enough to leave a block behind; -1 if there is none
+    private int take(int size) {
+      int block = exact(size);
+      if (block >= 0) return block;
+      for (int s = size + 2; s < SMALL; s++)
+        if (small[s] >= 0) return split(exact(s), s, size);
+      for (block = large; block >= 0; block = vm.heap[block + 1]) {
+        int s = -vm.heap[block];
+        if (s >= size + 2) return split(exact(s), s, size);
+      }
+      return -1;
+    }
+
+    private int exact(int size) {
+      int[] heap = vm.heap;
+      if (size < SMALL) {
+        int block = small[size];
+        if (block >= 0) small[size] = heap[block + 1];
+        return block;
+      }
+      for (int prev = -1, block = large; block >= 0; prev = block, block = heap[block + 1])
+        if (-heap[block] == size) {
+          if (prev < 0) large = heap[block + 1];
+          else heap[prev + 1] = heap[block + 1];
+          return block;
+        }
+      return -1;
+    }
+
+    private int split(int block, int blockSize, int size) {
+      release(block + size, blockSize - size);
+      return block;
+    }
+
+    public int getCollections() {
+      return collections;
+    }
+
+    public long getTotalPauseNanos() {
+      return totalPause;
+    }
+
+    public long getMaxPauseNanos() {
+      return maxPause;
+    }
+
+    // memory is measured in 4-byte words
+    public long getAllocatedBytes() {
+      return 4 * allocated;
+    }
+
+    public long getReclaimedBytes() {
+      return 4 * reclaimed;
+    }
+
+    public long getLiveBytes() {
+      return 4 * live;
+    }
+
+    public String report() {
+      return "GC: " + collections + " collections, pause total " + totalPause / 1000 + " us, max " + maxPause / 1000
+        + " us, allocated " + getAllocatedBytes() + " bytes, reclaimed " + getReclaimedBytes()
+        + " bytes, live after last collection " + getLiveBytes() + " bytes";
+    }
+
+}
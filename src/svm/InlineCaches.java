@@ -0,0 +1,118 @@
+package svm;
+
+import java.util.Arrays;
+
+/*
+ * Inline caches of the "dsp k" call sites of an ExecuteVM.
+ *
+ * dsp k calls method k of the object on top of the stack: the method address
+ * is word k of the dispatch table the object points to. Every dsp instruction
+ * (identified by its code address) has its own cache of up to "entries"
+ * (dispatch pointer, method address) pairs, filled on the misses: a site
+ * starts monomorphic and becomes polymorphic as objects of other classes
+ * reach it. On a hit the method address is taken from the cache without
+ * reading the object and the dispatch table; when a full cache misses the
+ * site is megamorphic and the missing classes are looked up in their
+ * dispatch tables at every call.
+ *
+ * Dispatch tables are built before the first object and are never moved or
+ * collected (see GarbageCollector), so a cached entry never goes stale.
+ * The caches belong to the machine: the code segment stays read-only and can
+ * be shared by machines running in parallel.
+ */
+public class InlineCaches {
+
+    public static final int ENTRIES = 4; // default size of a polymorphic cache
+
+    private final ExecuteVM vm;
+    private final int entries;
+    private int[] sites;                 // code address -> cache number + 1 (0: site not run yet)
+    private int count;                   // caches in use
+    private int[] size = new int[16];    // entries of every cache
+    private boolean[] full = new boolean[16]; // megamorphic caches
+    private int[] keys, targets;         // cache c is at [c*entries, (c+1)*entries)
+    private long hits, misses;
+    private int megamorphic;
+
+    InlineCaches(ExecuteVM vm, int entries) {
+      if (entries < 0) throw new IllegalArgumentException("Bad number of cache entries: " + entries);
+      this.vm = vm;
+      this.entries = entries;
+      keys = new int[size.length * entries];
+      targets = new int[size.length * entries];
+    }
+
+    // method k of the class with dispatch table dp, for the dsp at code address site
+    int target(int site, int dp, int k) {
+      int c = cache(site);
+      int base = c * entries, n = size[c];
+      for (int i = base; i < base + n; i++)
+        if (keys[i] == dp) {
+          hits++;
+          return targets[i];
+        }
+      misses++;
+      int target = vm.heap[dp + k];
+      if (n < entries) {
+        keys[base + n] = dp;
+        targets[base + n] = target;
+        size[c] = n + 1;
+      } else if (!full[c]) { // the entries stay as they are
+        full[c] = true;
+        megamorphic++;
+      }
+      return target;
+    }
+
+    private int cache(int site) {
+      if (sites == null) sites = new int[vm.codeSize()];
+      int c = sites[site] - 1;
+      if (c >= 0) return c;
+      if (count == size.length) {
+        size = Arrays.copyOf(size, 2 * count);
+        full = Arrays.copyOf(full, 2 * count);
+        keys = Arrays.copyOf(keys, 2 * count * entries);
+        targets = Arrays.copyOf(targets, 2 * count * entries);
+      }
+      sites[site] = count + 1;
+      return count++;
+    }
+
+    public int getEntries() {
+      return entries;
+    }
+
+    public long getHits() {
+      return hits;
+    }
+
+    public long getMisses() {
+      return misses;
+    }
+
+    // calls that found their target in the cache, 0 without calls
+    public double getHitRate() {
+      return hits + misses == 0 ? 0 : (double) hits / (hits + misses);
+    }
+
+    // call sites run, and how many of them saw more than one class / overflowed their cache
+    public int getSites() {
+      return count;
+    }
+
+    public int getPolymorphicSites() {
+      int p = 0;
+      for (int c = 0; c < count; c++) if (size[c] > 1) p++;
+      return p;
+    }
+
+    public int getMegamorphicSites() {
+      return megamorphic;
+    }
+
+    public String report() {
+      return String.format("Inline caches: %d call sites (%d polymorphic, %d megamorphic), %d hits, %d misses, hit rate %.1f%%",
+        count, getPolymorphicSites(), megamorphic, hits, misses, 100 * getHitRate());
+    }
+
+}
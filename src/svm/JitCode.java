@@ -0,0 +1,55 @@
+package svm;
+
+import java.lang.invoke.MethodHandle;
+import java.util.List;
+
+/*
+ * Result of JitCompiler: the (unfused) code run by ExecuteVM.cpuJit() and
+ * the translated functions. It holds no machine state, so the same JitCode
+ * can be run by any number of ExecuteVM instances.
+ */
+public class JitCode {
+
+    final int[] code;
+    private final boolean[] compiled; // code address -> entry of a translated function
+    private final MethodHandle call;
+    private final List<String> report;
+
+    JitCode(int[] code, List<Integer> entries, MethodHandle call, List<String> report) {
+      this.code = code;
+      this.compiled = new boolean[code.length];
+      for (int e : entries) compiled[e] = true;
+      this.call = call;
+      this.report = report;
+    }
+
+    public boolean isCompiled(int address) {
+      return address >= 0 && address < compiled.length && compiled[address];
+    }
+
+    // the translated function entered by a b to address (a tail call, see
+    // JitCompiler.tailCallEntry), -1 if there is none
+    int tailCallEntry(int address) {
+      if (address > 0 && isCompiled(address)) return address;
+      int entry = address - 2;
+      return entry > 0 && isCompiled(entry) && code[entry] == SVMParser.COPYFP && code[entry + 1] == SVMParser.LOADRA ? entry : -1;
+    }
+
+    // runs the translated function at target, with ra already set
+    int call(ExecuteVM vm, int target) {
+      try {
+        return (int) call.invokeExact(vm, target);
+      } catch (RuntimeException | Error e) {
+        throw e;
+      } catch (Throwable e) {
+        throw new IllegalStateException(e);
+      }
+    }
+
+    public String report() {
+      StringBuilder sb = new StringBuilder();
+      for (String line : report) sb.append(line).append('\n');
+      return sb.toString();
+    }
+
+}
@@ -0,0 +1,402 @@
+package svm;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.*;
+import svm.ClassWriter.Code;
+import svm.ClassWriter.Label;
+import static svm.ClassWriter.*;
+
+/*
+ * Translates the functions of an SVM program into JVM bytecode.
+ *
+ * Every function (the code from a functionN label to the next one) and the
+ * main program (the code before the first function) becomes a static method of one hidden class, so that HotSpot compiles it like any
+ * other Java code. The generated method keeps sp, fp and the stack segment
+ * in JVM locals and accesses the rest of the machine through ExecuteVM. Its
+ * contract is the one of the SVM: it is entered by js with ra holding the
+ * return address, and it returns the next code address when control leaves
+ * it. A js whose target is the return address the method was entered with
+ * becomes a JVM return; any other js is a call through the generated
+ * call(vm, target) dispatcher and, if control comes back right after it,
+ * execution continues inline. A b to a function entry, or to its body past
+ * cfp lra, is a tail call (see CodeGenerationASTVisitor): the frame is
+ * already the one of the callee, so it becomes a call through
+ * call(vm, target) whose result the method returns. Other branches out of
+ * the function, halt and unexpected return addresses end the method, which
+ * hands the address back to its caller and eventually to the interpreter.
+ *
+ * Functions that cannot be translated (too big for a JVM method) are run by
+ * the interpreter: call(vm, target) falls back to it for every address that
+ * is not a translated entry.
+ */
+public class JitCompiler {
+
+    static final String VM = "svm/ExecuteVM";
+    static final String VM_TYPE = "Lsvm/ExecuteVM;";
+    static final String CLASS = "svm/JitCompiled";
+
+    // locals of a generated function
+    private static final int L_VM = 0, L_RET = 1, L_SP = 2, L_FP = 3, L_STACK = 4, L_TOP = 5, L_T = 6;
+
+    /*
+     * Entry points of the translation units: the main program at address 0
+     * and the functions, at the labels created by FOOLlib.freshFunLabel()
+     * ("function0", "function1", ...).
+     */
+    public static SortedSet<Integer> functionEntries(Map<String, Integer> labels) {
+      SortedSet<Integer> entries = new TreeSet<>();
+      entries.add(0);
+      for (Map.Entry<String, Integer> label : labels.entrySet())
+        if (label.getKey().matches("function\\d+")) entries.add(label.getValue());
+      return entries;
+    }
+
+    public static JitCode compile(int[] code, Map<String, Integer> labels) {
+      return compile(code, functionEntries(labels));
+    }
+
+    public static JitCode compile(int[] code, SortedSet<Integer> entries) {
+      return compile(code, entries, entries);
+    }
+
+    // translates only the units starting at the selected entries
+    public static JitCode compile(int[] code, SortedSet<Integer> entries, Set<Integer> selected) {
+      code = unfuse(code);
+      ClassWriter cw = new ClassWriter(CLASS);
+      List<Integer> compiled = new ArrayList<>();
+      List<String> report = new ArrayList<>();
+      Integer[] starts = entries.toArray(new Integer[0]);
+      for (int u = 0; u < starts.length; u++) {
+        int start = starts[u];
+        int end = u + 1 < starts.length ? starts[u + 1] : code.length;
+        if (start < 0 || start >= code.length || !selected.contains(start)) continue;
+        if (translate(cw, code, entries, start, end)) {
+          compiled.add(start);
+          report.add("compiled    " + start + ".." + (end - 1));
+        } else
+          report.add("interpreted " + start + ".." + (end - 1) + " (too big for a JVM method)");
+      }
+      writeDispatcher(cw, compiled);
+      try {
+        MethodHandles.Lookup lookup = MethodHandles.lookup().defineHiddenClass(cw.toByteArray(), true);
+        MethodHandle call = lookup.findStatic(lookup.lookupClass(), "call",
+          MethodType.methodType(int.class, ExecuteVM.class, int.class));
+        return new JitCode(code, compiled, call, report);
+      } catch (ReflectiveOperationException e) {
+        throw new IllegalStateException("Generated class rejected", e);
+      }
+    }
+
+    // fused opcodes only overwrite the first opcode word of their sequence
+    static int[] unfuse(int[] code) {
+      int[] out = code.clone();
+      for (int a = 0; a < out.length; a += DecodedCode.hasOperand(out[a]) ? 2 : 1)
+        if (Superinstructions.isFused(out[a])) out[a] = Superinstructions.first(out[a]);
+      return out;
+    }
+
+    private static String method(int entry) {
+      return "f" + entry;
+    }
+
+    // static int call(ExecuteVM vm, int target): translated function or interpreter
+    private static void writeDispatcher(ClassWriter cw, List<Integer> compiled) {
+      Code c = cw.method(ACC_PUBLIC | ACC_STATIC, "call", "(" + VM_TYPE + "I)I", 3, 2);
+      int[] keys = new int[compiled.size()];
+      Label[] targets = new Label[keys.length];
+      for (int i = 0; i < keys.length; i++) {
+        keys[i] = compiled.get(i);
+        targets[i] = new Label();
+      }
+      Label otherwise = new Label();
+      c.iload(1).lookupswitch(keys, targets, otherwise);
+      for (int i = 0; i < keys.length; i++)
+        c.bind(targets[i]).aload(0).invoke(INVOKESTATIC, CLASS, method(keys[i]), "(" + VM_TYPE + ")I").op(IRETURN);
+      c.bind(otherwise).aload(0).iload(1).invoke(INVOKEVIRTUAL, VM, "interpretCall", "(I)I").op(IRETURN);
+      if (!c.finish()) throw new IllegalStateException("Too many functions for the JIT dispatcher");
+    }
+
+    private static boolean translate(ClassWriter cw, int[] code, Set<Integer> entries, int start, int end) {
+      // labels for the branch targets inside the function
+      Map<Integer, Label> labels = new HashMap<>();
+      Set<Integer> instructions = new HashSet<>();
+      for (int a = start; a < end; a += DecodedCode.hasOperand(code[a]) ? 2 : 1) {
+        instructions.add(a);
+        if (DecodedCode.isBranch(code[a]) && a + 1 < end) labels.put(code[a + 1], null);
+      }
+      for (Integer t : new ArrayList<>(labels.keySet()))
+        if (instructions.contains(t)) labels.put(t, new Label());
+        else labels.remove(t);
+
+      Code c = cw.method(ACC_PUBLIC | ACC_STATIC, method(start), "(" + VM_TYPE + ")I", 8, 7);
+      c.aload(L_VM).field(GETFIELD, VM, "ra", "I").istore(L_RET);
+      reload(c);
+      c.aload(L_VM).field(GETFIELD, VM, "top", "I").istore(L_TOP);
+      int a = start;
+      while (a < end) {
+        if (labels.get(a) != null) c.bind(labels.get(a));
+        int op = code[a++];
+        int arg = DecodedCode.hasOperand(op) && a < end ? code[a++] : 0;
+        switch (op) {
+          case SVMParser.PUSH :
+            push(c).iconst(arg).op(IASTORE);
+            break;
+          case SVMParser.POP :
+            c.iinc(L_SP, 1);
+            break;
+          case SVMParser.DUP :
+            push(c);
+            below(c).op(IALOAD).op(IASTORE);
+            break;
+          case SVMParser.SWAP :
+            top(c).op(IALOAD).istore(L_T);
+            top(c);
+            below(c).op(IALOAD).op(IASTORE);
+            below(c).iload(L_T).op(IASTORE);
+            break;
+          case SVMParser.POPN : // the count may not fit the byte of iinc
+            c.iload(L_SP).iconst(arg).op(IADD).istore(L_SP);
+            break;
+          case SVMParser.ADD :
+            arithmetic(c, IADD);
+            break;
+          case SVMParser.SUB :
+            arithmetic(c, ISUB);
+            break;
+          case SVMParser.MULT :
+            arithmetic(c, IMUL);
+            break;
+          case SVMParser.DIV :
+            arithmetic(c, IDIV);
+            break;
+          case SVMParser.MOD :
+            arithmetic(c, IREM);
+            break;
+          case SVMParser.NEG :
+            top(c).op(DUP2).op(IALOAD).op(INEG).op(IASTORE);
+            break;
+          case SVMParser.SHIFTLEFT :
+            top(c).op(DUP2).op(IALOAD).iconst(arg).op(ISHL).op(IASTORE);
+            break;
+          case SVMParser.SHIFTRIGHT :
+            top(c).op(DUP2).op(IALOAD).iconst(arg).invoke(INVOKESTATIC, VM, "shiftRight", "(II)I").op(IASTORE);
+            break;
+          case SVMParser.LOADDISPLAY :
+            push(c).aload(L_VM).field(GETFIELD, VM, "display", "[I").iconst(arg).op(IALOAD).op(IASTORE);
+            break;
+          case SVMParser.STOREDISPLAY :
+            c.aload(L_VM).iconst(arg);
+            top(c).op(IALOAD).invoke(INVOKEVIRTUAL, VM, "setDisplay", "(II)V");
+            c.iinc(L_SP, 1);
+            break;
+          case SVMParser.STOREFRAME : // stack[top-fp-arg] = stack[top-sp]
+            c.aload(L_STACK).iload(L_TOP).iload(L_FP).op(ISUB).iconst(arg).op(ISUB);
+            top(c).op(IALOAD).op(IASTORE).iinc(L_SP, 1);
+            break;
+          case SVMParser.STOREW : // store(address, value, sp + 2)
+            c.aload(L_VM);
+            top(c).op(IALOAD);
+            below(c).op(IALOAD);
+            c.iinc(L_SP, 2).iload(L_SP);
+            c.invoke(INVOKEVIRTUAL, VM, "store", "(III)V");
+            break;
+          case SVMParser.LOADW : // stack[top-sp] = load(stack[top-sp], sp + 1)
+            top(c).aload(L_VM);
+            top(c).op(IALOAD);
+            c.iload(L_SP).iconst(1).op(IADD);
+            c.invoke(INVOKEVIRTUAL, VM, "load", "(II)I").op(IASTORE);
+            break;
+          case SVMParser.BRANCH :
+            if (labels.get(arg) == null && tailCallEntry(code, entries, arg) >= 0)
+              tailCall(c, tailCallEntry(code, entries, arg), arg);
+            else
+              jump(c, labels, arg, GOTO);
+            break;
+          case SVMParser.BRANCHEQ :
+            compare(c, labels, arg, IF_ICMPEQ);
+            break;
+          case SVMParser.BRANCHLESSEQ :
+            compare(c, labels, arg, IF_ICMPLE);
+            break;
+          case SVMParser.BRANCHLESS :
+            compare(c, labels, arg, IF_ICMPLT);
+            break;
+          case SVMParser.BRANCHNOTEQ :
+            compare(c, labels, arg, IF_ICMPNE);
+            break;
+          case SVMParser.BRANCHGREATEREQ :
+            compare(c, labels, arg, IF_ICMPGE);
+            break;
+          case SVMParser.JS :
+            js(c, a);
+            break;
+          case SVMParser.DISPATCH : // target = dispatch(site, stack[top-sp], arg, sp), the object stays
+            c.aload(L_VM).iconst(a - 2);
+            top(c).op(IALOAD);
+            c.iconst(arg).iload(L_SP).invoke(INVOKEVIRTUAL, VM, "dispatch", "(IIII)I").istore(L_T);
+            call(c, a);
+            break;
+          case SVMParser.STORERA :
+            c.aload(L_VM);
+            top(c).op(IALOAD).field(PUTFIELD, VM, "ra", "I").iinc(L_SP, 1);
+            break;
+          case SVMParser.LOADRA :
+            push(c).aload(L_VM).field(GETFIELD, VM, "ra", "I").op(IASTORE);
+            break;
+          case SVMParser.STORETM :
+            c.aload(L_VM);
+            top(c).op(IALOAD).field(PUTFIELD, VM, "tm", "I").iinc(L_SP, 1);
+            break;
+          case SVMParser.LOADTM :
+            push(c).aload(L_VM).field(GETFIELD, VM, "tm", "I").op(IASTORE);
+            break;
+          case SVMParser.LOADFP :
+            push(c).iload(L_FP).op(IASTORE);
+            break;
+          case SVMParser.STOREFP :
+            top(c).op(IALOAD).istore(L_FP).iinc(L_SP, 1);
+            break;
+          case SVMParser.COPYFP :
+            c.iload(L_SP).istore(L_FP);
+            break;
+          case SVMParser.LOADHP :
+            push(c).aload(L_VM).field(GETFIELD, VM, "hp", "I").op(IASTORE);
+            break;
+          case SVMParser.STOREHP :
+            c.aload(L_VM);
+            top(c).op(IALOAD);
+            c.iinc(L_SP, 1).iload(L_SP).invoke(INVOKEVIRTUAL, VM, "setHp", "(II)V");
+            break;
+          case SVMParser.PRINT :
+            c.aload(L_VM).iload(L_SP).invoke(INVOKEVIRTUAL, VM, "print", "(I)V");
+            break;
+          case SVMParser.NEW :
+            c.aload(L_VM).iload(L_SP).invoke(INVOKEVIRTUAL, VM, "newInstruction", "(I)I").istore(L_SP);
+            break;
+          case SVMParser.HALT :
+            exit(c).iconst(ExecuteVM.HALTED).op(IRETURN);
+            break;
+          default : // not an instruction: the interpreter stops there as well
+            exit(c).iconst(a - 1).op(IRETURN);
+        }
+      }
+      exit(c).iconst(end).op(IRETURN); // falling off the end of the function
+      return c.finish();
+    }
+
+    private static void reload(Code c) {
+      c.aload(L_VM).field(GETFIELD, VM, "sp", "I").istore(L_SP);
+      c.aload(L_VM).field(GETFIELD, VM, "fp", "I").istore(L_FP);
+      c.aload(L_VM).field(GETFIELD, VM, "stack", "[I").astore(L_STACK);
+    }
+
+    // writes sp and fp back before leaving the function or calling
+    private static Code exit(Code c) {
+      c.aload(L_VM).iload(L_SP).field(PUTFIELD, VM, "sp", "I");
+      return c.aload(L_VM).iload(L_FP).field(PUTFIELD, VM, "fp", "I");
+    }
+
+    // stack, top-sp
+    private static Code top(Code c) {
+      return c.aload(L_STACK).iload(L_TOP).iload(L_SP).op(ISUB);
+    }
+
+    // stack, top-sp-1
+    private static Code below(Code c) {
+      return top(c).iconst(1).op(ISUB);
+    }
+
+    // --sp, room for it, then stack, top-sp: the value to push follows
+    private static Code push(Code c) {
+      c.iinc(L_SP, -1).aload(L_VM).iload(L_SP).invoke(INVOKEVIRTUAL, VM, "room", "(I)[I").astore(L_STACK);
+      return top(c);
+    }
+
+    // v1 = pop; stack[top-sp] = stack[top-sp] op v1
+    private static void arithmetic(Code c, int opcode) {
+      top(c).op(IALOAD).istore(L_T).iinc(L_SP, 1);
+      top(c).op(DUP2).op(IALOAD).iload(L_T).op(opcode).op(IASTORE);
+    }
+
+    // v1 = pop; v2 = pop; if (v2 cmp v1) jump
+    private static void compare(Code c, Map<Integer, Label> labels, int target, int opcode) {
+      below(c).op(IALOAD);
+      top(c).op(IALOAD);
+      c.iinc(L_SP, 2);
+      jump(c, labels, target, opcode);
+    }
+
+    private static void jump(Code c, Map<Integer, Label> labels, int target, int opcode) {
+      Label l = labels.get(target);
+      if (l != null) {
+        c.jump(opcode, l);
+        return;
+      }
+      // target outside the function: leave it to the caller
+      Label stay = new Label();
+      if (opcode != GOTO) c.jump(negate(opcode), stay);
+      exit(c).iconst(target).op(IRETURN);
+      c.bind(stay);
+    }
+
+    /*
+     * A b to a function entry, or to its body past cfp lra, is a tail call
+     * (see CodeGenerationASTVisitor): the entry of the function, -1 for any
+     * other address.
+     */
+    static int tailCallEntry(int[] code, Set<Integer> entries, int address) {
+      if (address > 0 && entries.contains(address)) return address;
+      int entry = address - 2;
+      return entry > 0 && entries.contains(entry) && code[entry] == SVMParser.COPYFP && code[entry + 1] == SVMParser.LOADRA ? entry : -1;
+    }
+
+    // the method ends with the result of the callee, entered with ra set: past
+    // cfp lra the return address is on the stack, where the entry pushes it again
+    private static void tailCall(Code c, int entry, int target) {
+      if (target != entry) {
+        c.aload(L_VM);
+        top(c).op(IALOAD).field(PUTFIELD, VM, "ra", "I").iinc(L_SP, 1);
+      }
+      exit(c).aload(L_VM).iconst(entry).invoke(INVOKESTATIC, CLASS, "call", "(" + VM_TYPE + "I)I").op(IRETURN);
+    }
+
+    // if_icmp<cond> with the opposite condition
+    private static int negate(int opcode) {
+      switch (opcode) {
+        case IF_ICMPEQ : return IF_ICMPNE;
+        case IF_ICMPNE : return IF_ICMPEQ;
+        case IF_ICMPLT : return IF_ICMPGE;
+        case IF_ICMPGE : return IF_ICMPLT;
+        case IF_ICMPGT : return IF_ICMPLE;
+        default : return IF_ICMPGT; // IF_ICMPLE
+      }
+    }
+
+    /*
+     * target = pop; ra = continuation; if target is the return address of
+     * this function return it, otherwise call it and go on if it comes back
+     * to the continuation.
+     */
+    private static void js(Code c, int continuation) {
+      top(c).op(IALOAD).istore(L_T).iinc(L_SP, 1);
+      call(c, continuation);
+    }
+
+    // the same with the target in L_T
+    private static void call(Code c, int continuation) {
+      c.aload(L_VM).iconst(continuation).field(PUTFIELD, VM, "ra", "I");
+      exit(c);
+      Label call = new Label();
+      c.iload(L_T).iload(L_RET).jump(IF_ICMPNE, call);
+      c.iload(L_T).op(IRETURN);
+      c.bind(call).aload(L_VM).iload(L_T).invoke(INVOKESTATIC, CLASS, "call", "(" + VM_TYPE + "I)I").istore(L_T);
+      reload(c);
+      Label back = new Label();
+      c.iload(L_T).iconst(continuation).jump(IF_ICMPEQ, back);
+      c.iload(L_T).op(IRETURN);
+      c.bind(back);
+    }
+
+}
@@ -0,0 +1,126 @@
+package svm;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.*;
+import java.util.zip.CRC32;
+
+/*
+ * Binary object file of an assembled SVM program, so that running it again
+ * needs no lexing and parsing of the .asm text. Layout (big endian):
+ *
+ *   magic      "SVMO"
+ *   version    u2
+ *   flags      u2   (HAS_SYMBOLS)
+ *   length     i4   number of code words
+ *   code       i4 * length, label references already resolved
+ *   symbols    only with HAS_SYMBOLS: count i4, then for each label its
+ *              name (u2 length + UTF-8 bytes) and address i4
+ *   checksum   i4   CRC32 of all the bytes before it
+ *
+ * Usage: java svm.ObjectFile file.asm   (assembles and writes file.svmo)
+ *        java svm.ObjectFile file.svmo  (loads and runs it)
+ */
+public class ObjectFile {
+
+    static final int MAGIC = 0x53564D4F; // "SVMO"
+    public static final int VERSION = 1;
+    static final int HAS_SYMBOLS = 1;
+
+    public final int[] code;
+    public final Map<String, Integer> labels; // empty if the file has no symbol table
+
+    public ObjectFile(int[] code, Map<String, Integer> labels) {
+      this.code = code;
+      this.labels = labels;
+    }
+
+    public static String objectName(String asmName) {
+      return (asmName.endsWith(".asm") ? asmName.substring(0, asmName.length() - 4) : asmName) + ".svmo";
+    }
+
+    // labels may be null for a file without symbol table
+    public static void write(Path file, int[] code, Map<String, Integer> labels) throws IOException {
+      int size = 12 + 4 * code.length + 4;
+      List<byte[]> names = new ArrayList<>();
+      List<Integer> addresses = new ArrayList<>();
+      if (labels != null) {
+        size += 4;
+        for (Map.Entry<String, Integer> label : labels.entrySet()) {
+          byte[] bytes = label.getKey().getBytes(StandardCharsets.UTF_8);
+          names.add(bytes);
+          addresses.add(label.getValue());
+          size += 2 + bytes.length + 4;
+        }
+      }
+      ByteBuffer buf = ByteBuffer.allocate(size);
+      buf.putInt(MAGIC).putShort((short) VERSION).putShort((short) (labels != null ? HAS_SYMBOLS : 0));
+      buf.putInt(code.length);
+      buf.asIntBuffer().put(code);
+      buf.position(buf.position() + 4 * code.length);
+      if (labels != null) {
+        buf.putInt(names.size());
+        for (int i = 0; i < names.size(); i++)
+          buf.putShort((short) names.get(i).length).put(names.get(i)).putInt(addresses.get(i));
+      }
+      CRC32 crc = new CRC32();
+      crc.update(buf.array(), 0, buf.position());
+      buf.putInt((int) crc.getValue());
+      Files.write(file, buf.array());
+    }
+
+    /*
+     * Maps the file and copies its code words straight into the code
+     * segment; the checksum is verified on the mapped bytes.
+     */
+    public static ObjectFile load(Path file) throws IOException {
+      try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+        long size = channel.size();
+        if (size < 16) throw new IOException(file + ": not an SVM object file");
+        MappedByteBuffer buf = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+        if (buf.getInt() != MAGIC) throw new IOException(file + ": not an SVM object file");
+        int version = buf.getShort() & 0xFFFF;
+        if (version != VERSION) throw new IOException(file + ": object file version " + version + ", expected " + VERSION);
+        int flags = buf.getShort();
+        CRC32 crc = new CRC32();
+        crc.update(buf.duplicate().position(0).limit((int) size - 4));
+        if (buf.getInt((int) size - 4) != (int) crc.getValue()) throw new IOException(file + ": checksum mismatch");
+        try {
+          int[] code = new int[buf.getInt()];
+          buf.asIntBuffer().get(code);
+          buf.position(buf.position() + 4 * code.length);
+          Map<String, Integer> labels = new HashMap<>();
+          if ((flags & HAS_SYMBOLS) != 0)
+            for (int n = buf.getInt(); n > 0; n--) {
+              byte[] name = new byte[buf.getShort() & 0xFFFF];
+              buf.get(name);
+              labels.put(new String(name, StandardCharsets.UTF_8), buf.getInt());
+            }
+          return new ObjectFile(code, Collections.unmodifiableMap(labels));
+        } catch (RuntimeException e) { // lengths pointing outside the file
+          throw new IOException(file + ": corrupted object file", e);
+        }
+      }
+    }
+
+    public static void main(String[] args) throws Exception {
+      String name = args[0];
+      if (name.endsWith(".svmo")) {
+        new ExecuteVM(load(Paths.get(name)).code).cpu();
+        return;
+      }
+      Assembler assembler;
+      try (Reader asm = Files.newBufferedReader(Paths.get(name))) {
+        assembler = new Assembler(asm);
+        assembler.assemble();
+      }
+      if (assembler.getErrors() > 0) System.exit(1);
+      write(Paths.get(objectName(name)), assembler.getCode(), assembler.getLabels());
+      System.out.println("Written " + objectName(name) + " (" + assembler.getCode().length + " code words, " + assembler.getLabels().size() + " labels)");
+    }
+
+}
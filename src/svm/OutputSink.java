@@ -0,0 +1,23 @@
+package svm;
+
+import java.util.List;
+
+/*
+ * Destination of the lines printed by "print". Every ExecuteVM has its own,
+ * so machines running at the same time do not share System.out.
+ */
+@FunctionalInterface
+public interface OutputSink {
+
+    void println(String line);
+
+    OutputSink STANDARD = line -> System.out.println(line); // System.out at every line, it can be redirected
+
+    OutputSink DISCARD = line -> {};
+
+    // appends to lines, which is not synchronized: one list per machine
+    static OutputSink to(List<String> lines) {
+      return lines::add;
+    }
+
+}
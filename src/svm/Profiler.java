@@ -0,0 +1,231 @@
+package svm;
+
+import java.io.*;
+import java.nio.file.*;
+import java.util.*;
+
+/*
+ * Execution profile collected by ExecuteVM.cpuProfiled(): counts per opcode
+ * and per pair of consecutive opcodes, instructions per function, calls per
+ * caller -> callee edge and instructions per call stack.
+ *
+ * Functions are the main program and the functionN labels. A js to a
+ * function entry is a call and pushes a frame on a shadow stack together
+ * with its return address; a js to the return address of a frame is a
+ * return and pops the frames down to it. The exclusive count of a function
+ * is the number of instructions run in its own frames, the inclusive count
+ * also includes its callees (recursive activations are counted once).
+ * A b to a function entry, or past its cfp lra, is a tail call (see
+ * JitCompiler.tailCallEntry): the frame of the callee takes the place of
+ * the top one, which keeps its return address.
+ * Like TieredCode, a Profiler belongs to one machine and one run at a time.
+ *
+ * Usage: java svm.Profiler file.asm [collapsed-stacks-file]
+ */
+public class Profiler {
+
+    private static final int OPS = 128; // above the fused opcodes
+
+    private final int[] entries;   // sorted entry addresses, 0 = main
+    private final Set<Integer> entrySet;
+    private final String[] names;
+    private final long[] ops = new long[OPS];
+    private final long[] pairs = new long[OPS * OPS];
+    private int previous = -1;
+    private long total;
+
+    private final long[] calls, inclusive, exclusive;
+    private final int[] active;    // activations of every function on the shadow stack
+    private final long[][] edges;
+
+    // shadow stack
+    private int depth;
+    private int[] frameFunction = new int[64], frameNode = new int[64], frameReturn = new int[64];
+    private long[] frameStart = new long[64];
+    private int function, node;    // of the top frame
+
+    // call tree: node -> (parent, function), instructions run with that exact stack
+    private int nodes;
+    private int[] nodeParent = new int[64], nodeFunction = new int[64];
+    private long[] nodeCount = new long[64];
+    private final Map<Long, Integer> children = new HashMap<>();
+
+    public Profiler(Map<String, Integer> labels) {
+      SortedSet<Integer> entrySet = JitCompiler.functionEntries(labels);
+      entries = entrySet.stream().mapToInt(Integer::intValue).toArray();
+      this.entrySet = new HashSet<>(entrySet);
+      names = new String[entries.length];
+      names[0] = "main";
+      for (Map.Entry<String, Integer> label : labels.entrySet()) {
+        int u = Arrays.binarySearch(entries, label.getValue());
+        if (u > 0 && label.getKey().matches("function\\d+")) names[u] = label.getKey();
+      }
+      int n = entries.length;
+      calls = new long[n];
+      inclusive = new long[n];
+      exclusive = new long[n];
+      active = new int[n];
+      edges = new long[n][n];
+      nodes = 1; // root: main
+      calls[0] = 1;
+      active[0] = 1;
+      depth = 1;
+      frameReturn[0] = -1;
+    }
+
+    void instruction(int op) {
+      ops[op]++;
+      if (previous >= 0) pairs[previous * OPS + op]++;
+      previous = op;
+      total++;
+      exclusive[function]++;
+      nodeCount[node]++;
+    }
+
+    // js to target, that leaves ra = returnAddress
+    void jump(int target, int returnAddress) {
+      if (frameReturn[depth - 1] == target) {
+        pop();
+        return;
+      }
+      int u = Arrays.binarySearch(entries, target);
+      if (u > 0) {
+        call(function, u, returnAddress);
+        return;
+      }
+      for (int d = depth - 2; d > 0; d--) // return skipping frames
+        if (frameReturn[d] == target) {
+          while (depth > d) pop();
+          return;
+        }
+    }
+
+    // b to target in code
+    void branch(int[] code, int target) {
+      int entry = JitCompiler.tailCallEntry(code, entrySet, target);
+      if (entry < 0 || depth < 2) return;
+      int caller = function, returnAddress = frameReturn[depth - 1];
+      pop();
+      call(caller, Arrays.binarySearch(entries, entry), returnAddress);
+    }
+
+    void halt() {
+      while (depth > 0) pop();
+    }
+
+    // pushes the frame of callee, called by caller (not the top frame after a tail call)
+    private void call(int caller, int callee, int returnAddress) {
+      calls[callee]++;
+      edges[caller][callee]++;
+      long key = ((long) node << 32) | callee;
+      Integer child = children.get(key);
+      if (child == null) {
+        if (nodes == nodeCount.length) {
+          nodeParent = Arrays.copyOf(nodeParent, 2 * nodes);
+          nodeFunction = Arrays.copyOf(nodeFunction, 2 * nodes);
+          nodeCount = Arrays.copyOf(nodeCount, 2 * nodes);
+        }
+        nodeParent[nodes] = node;
+        nodeFunction[nodes] = callee;
+        children.put(key, child = nodes++);
+      }
+      if (depth == frameFunction.length) {
+        frameFunction = Arrays.copyOf(frameFunction, 2 * depth);
+        frameNode = Arrays.copyOf(frameNode, 2 * depth);
+        frameReturn = Arrays.copyOf(frameReturn, 2 * depth);
+        frameStart = Arrays.copyOf(frameStart, 2 * depth);
+      }
+      frameFunction[depth] = function = callee;
+      frameNode[depth] = node = child;
+      frameReturn[depth] = returnAddress;
+      frameStart[depth++] = total;
+      active[callee]++;
+    }
+
+    private void pop() {
+      int f = frameFunction[--depth];
+      if (--active[f] == 0) inclusive[f] += total - frameStart[depth];
+      if (depth > 0) {
+        function = frameFunction[depth - 1];
+        node = frameNode[depth - 1];
+      }
+    }
+
+    public long getInstructions() {
+      return total;
+    }
+
+    public long getOpcodeCount(int op) {
+      return ops[op];
+    }
+
+    public long getPairCount(int first, int second) {
+      return pairs[first * OPS + second];
+    }
+
+    public String report() {
+      StringBuilder sb = new StringBuilder();
+      sb.append("Instructions: ").append(total).append("\n\nOpcodes:\n");
+      Integer[] order = sorted(ops);
+      for (int op : order)
+        if (ops[op] > 0) sb.append(String.format("  %-10s %12d %6.2f%%%n", Superinstructions.name(op), ops[op], percent(ops[op])));
+      sb.append("\nMost frequent pairs:\n");
+      Integer[] pairOrder = sorted(pairs);
+      for (int i = 0; i < 20 && pairs[pairOrder[i]] > 0; i++) {
+        int p = pairOrder[i];
+        sb.append(String.format("  %-21s %12d%n", Superinstructions.name(p / OPS) + " " + Superinstructions.name(p % OPS), pairs[p]));
+      }
+      sb.append(String.format("%nFunctions:%n  %-12s %7s %10s %12s %8s %12s %8s%n", "function", "entry", "calls", "inclusive", "", "exclusive", ""));
+      for (int u : sorted(inclusive))
+        if (calls[u] > 0) sb.append(String.format("  %-12s %7d %10d %12d %7.2f%% %12d %7.2f%%%n", names[u], entries[u], calls[u],
+          inclusive[u], percent(inclusive[u]), exclusive[u], percent(exclusive[u])));
+      sb.append("\nCalls (caller -> callee):\n");
+      for (int caller = 0; caller < names.length; caller++)
+        for (int callee = 0; callee < names.length; callee++)
+          if (edges[caller][callee] > 0) sb.append(String.format("  %-12s -> %-12s %10d%n", names[caller], names[callee], edges[caller][callee]));
+      return sb.toString();
+    }
+
+    /*
+     * One line per call stack ("main;function3;function1 1234", instructions
+     * run with exactly that stack), the input format of flamegraph.pl and
+     * similar tools.
+     */
+    public void writeCollapsedStacks(Writer out) throws IOException {
+      for (int n = 0; n < nodes; n++) {
+        if (nodeCount[n] == 0) continue;
+        Deque<String> path = new ArrayDeque<>();
+        for (int m = n; m != 0; m = nodeParent[m]) path.addFirst(names[nodeFunction[m]]);
+        path.addFirst(names[0]);
+        out.write(String.join(";", path) + " " + nodeCount[n] + "\n");
+      }
+      out.flush();
+    }
+
+    private double percent(long count) {
+      return total == 0 ? 0 : 100.0 * count / total;
+    }
+
+    private static Integer[] sorted(long[] counts) {
+      Integer[] order = new Integer[counts.length];
+      for (int i = 0; i < order.length; i++) order[i] = i;
+      Arrays.sort(order, (x, y) -> Long.compare(counts[y], counts[x]));
+      return order;
+    }
+
+    public static void main(String[] args) throws Exception {
+      Program program;
+      try (Reader asm = Files.newBufferedReader(Paths.get(args[0]))) {
+        program = Program.assemble(asm);
+      }
+      Profiler profiler = new Profiler(program.getLabels());
+      new ExecuteVM(program, OutputSink.STANDARD).cpuProfiled(profiler);
+      System.out.println();
+      System.out.print(profiler.report());
+      if (args.length > 1)
+        try (Writer out = Files.newBufferedWriter(Paths.get(args[1]))) {
+          profiler.writeCollapsedStacks(out);
+        }
+    }
+
+}
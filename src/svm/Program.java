@@ -0,0 +1,57 @@
+package svm;
+
+import java.io.*;
+import java.nio.file.Path;
+import java.util.*;
+
+/*
+ * An assembled SVM program: code segment and labels. It is immutable (the
+ * code is copied in and never handed out), so one Program can be shared
+ * read-only by any number of ExecuteVM instances on different threads;
+ * each of them has its own memory, registers and output sink.
+ * The pre-decoded form used by cpuDecoded() and cpuCached() is built once,
+ * on first use, and shared as well.
+ */
+public final class Program {
+
+    private final int[] code;
+    private final Map<String, Integer> labels;
+    private volatile DecodedCode decoded;
+
+    public Program(int[] code, Map<String, Integer> labels) {
+      this.code = code.clone();
+      this.labels = Collections.unmodifiableMap(new HashMap<>(labels));
+    }
+
+    public static Program assemble(Reader asm) throws IOException {
+      Assembler assembler = new Assembler(asm);
+      assembler.assemble();
+      if (assembler.getErrors() > 0) throw new IllegalArgumentException(assembler.getErrors() + " assembly errors");
+      return new Program(assembler.getCode(), assembler.getLabels());
+    }
+
+    public static Program load(Path objectFile) throws IOException {
+      ObjectFile object = ObjectFile.load(objectFile);
+      return new Program(object.code, object.labels);
+    }
+
+    // read by the machines, never written
+    int[] code() {
+      return code;
+    }
+
+    public int length() {
+      return code.length;
+    }
+
+    public Map<String, Integer> getLabels() {
+      return labels;
+    }
+
+    public DecodedCode decoded() {
+      DecodedCode d = decoded;
+      if (d == null) decoded = d = new DecodedCode(code); // a race only decodes twice
+      return d;
+    }
+
+}
@@ -13,6 +13,15 @@ public int[] code = new int[ExecuteVM.CODESIZE];
 private int i = 0;
 private Map<String,Integer> labelDef = new HashMap<>();
 private Map<Integer,String> labelRef = new HashMap<>();
+
+private void emit(int word) { // the code segment grows on demand
+	if (i == code.length) code = Arrays.copyOf(code, 2 * code.length);
+	code[i++] = word;
+}
+
+public Map<String,Integer> getLabels() { // label -> code address, e.g. the entries of the functions
+	return Collections.unmodifiableMap(labelDef);
+}
 }
 
 /*------------------------------------------------------------------
@@ -21,39 +30,65 @@ private Map<Integer,String> labelRef = new HashMap<>();
    
 assembly: instruction* EOF 	{ for (Integer j: labelRef.keySet()) 
 								code[j]=labelDef.get(labelRef.get(j)); 
+								code = Arrays.copyOf(code, i); // exact size
 							} ;
 
 instruction : 
-        PUSH n=INTEGER   {code[i++] = PUSH; 
-			              code[i++] = Integer.parseInt($n.text);}
-	  | PUSH l=LABEL    {code[i++] = PUSH; 
-	    		             labelRef.put(i++,$l.text);} 		     
-	  | POP		    {code[i++] = POP;}	
-	  | ADD		    {code[i++] = ADD;}
-	  | SUB		    {code[i++] = SUB;}
-	  | MULT	    {code[i++] = MULT;}
-	  | DIV		    {code[i++] = DIV;}
-	  | STOREW	  {code[i++] = STOREW;} //
-	  | LOADW           {code[i++] = LOADW;} //
+        PUSH n=INTEGER   {emit(PUSH); 
+			              emit(Integer.parseInt($n.text));}
+	  | PUSH l=LABEL    {emit(PUSH); 
+	    		             labelRef.put(i,$l.text); emit(0);} 		     
+	  | POP		    {emit(POP);}	
+	  | ADD		    {emit(ADD);}
+	  | SUB		    {emit(SUB);}
+	  | MULT	    {emit(MULT);}
+	  | DIV		    {emit(DIV);}
+	  | STOREW	  {emit(STOREW);} //
+	  | LOADW           {emit(LOADW);} //
 	  | l=LABEL COL     {labelDef.put($l.text,i);}
-	  | BRANCH l=LABEL  {code[i++] = BRANCH;
-                       labelRef.put(i++,$l.text);}
-	  | BRANCHEQ l=LABEL {code[i++] = BRANCHEQ;
-                        labelRef.put(i++,$l.text);}
-	  | BRANCHLESSEQ l=LABEL {code[i++] = BRANCHLESSEQ;
-                          labelRef.put(i++,$l.text);}
-	  | JS              {code[i++] = JS;}		     //
-	  | LOADRA          {code[i++] = LOADRA;}    //
-	  | STORERA         {code[i++] = STORERA;}   //
-	  | LOADTM          {code[i++] = LOADTM;}   
-	  | STORETM         {code[i++] = STORETM;}   
-	  | LOADFP          {code[i++] = LOADFP;}   //
-	  | STOREFP         {code[i++] = STOREFP;}   //
-	  | COPYFP          {code[i++] = COPYFP;}   //
-	  | LOADHP          {code[i++] = LOADHP;}   //
-	  | STOREHP         {code[i++] = STOREHP;}   //
-	  | PRINT           {code[i++] = PRINT;}
-	  | HALT            {code[i++] = HALT;}
+	  | BRANCH l=LABEL  {emit(BRANCH);
+                       labelRef.put(i,$l.text); emit(0);}
+	  | BRANCHEQ l=LABEL {emit(BRANCHEQ);
+                        labelRef.put(i,$l.text); emit(0);}
+	  | BRANCHLESSEQ l=LABEL {emit(BRANCHLESSEQ);
+                          labelRef.put(i,$l.text); emit(0);}
+	  | BRANCHLESS l=LABEL {emit(BRANCHLESS);
+                        labelRef.put(i,$l.text); emit(0);}
+	  | BRANCHNOTEQ l=LABEL {emit(BRANCHNOTEQ);
+                         labelRef.put(i,$l.text); emit(0);}
+	  | BRANCHGREATEREQ l=LABEL {emit(BRANCHGREATEREQ);
+                             labelRef.put(i,$l.text); emit(0);}
+	  | JS              {emit(JS);}		     //
+	  | LOADRA          {emit(LOADRA);}    //
+	  | STORERA         {emit(STORERA);}   //
+	  | LOADTM          {emit(LOADTM);}   
+	  | STORETM         {emit(STORETM);}   
+	  | LOADFP          {emit(LOADFP);}   //
+	  | STOREFP         {emit(STOREFP);}   //
+	  | COPYFP          {emit(COPYFP);}   //
+	  | LOADHP          {emit(LOADHP);}   //
+	  | STOREHP         {emit(STOREHP);}   //
+	  | PRINT           {emit(PRINT);}
+	  | NEW             {emit(NEW);}
+	  | DUP             {emit(DUP);}
+	  | SWAP            {emit(SWAP);}
+	  | POPN n=INTEGER  {emit(POPN);
+	                     emit(Integer.parseInt($n.text));}
+	  | NEG             {emit(NEG);}
+	  | MOD             {emit(MOD);}
+	  | SHIFTLEFT n=INTEGER {emit(SHIFTLEFT);
+	                         emit(Integer.parseInt($n.text));}
+	  | SHIFTRIGHT n=INTEGER {emit(SHIFTRIGHT);
+	                          emit(Integer.parseInt($n.text));}
+	  | LOADDISPLAY n=INTEGER {emit(LOADDISPLAY);
+	                           emit(Integer.parseInt($n.text));}
+	  | STOREDISPLAY n=INTEGER {emit(STOREDISPLAY);
+	                            emit(Integer.parseInt($n.text));}
+	  | STOREFRAME n=INTEGER {emit(STOREFRAME);
+	                          emit(Integer.parseInt($n.text));}
+	  | DISPATCH n=INTEGER {emit(DISPATCH);
+	                        emit(Integer.parseInt($n.text));}
+	  | HALT            {emit(HALT);}
 	  ;
 	  
 /*------------------------------------------------------------------
@@ -83,6 +118,21 @@ LOADHP	 : 'lhp' ;
 STOREHP	 : 'shp' ;	
 PRINT	 : 'print' ;	
 HALT	 : 'halt' ;	
+NEW	 : 'new' ;	
+DUP	 : 'dup' ;	
+SWAP	 : 'swap' ;	
+POPN	 : 'popn' ;	
+NEG	 : 'neg' ;	
+MOD	 : 'mod' ;	
+BRANCHLESS : 'blt' ;	
+BRANCHNOTEQ : 'bneq' ;	
+BRANCHGREATEREQ : 'bgeq' ;	
+SHIFTLEFT : 'shl' ;	
+SHIFTRIGHT : 'shr' ;	
+LOADDISPLAY : 'ldisp' ;	
+STOREDISPLAY : 'sdisp' ;	
+STOREFRAME : 'swf' ;	
+DISPATCH : 'dsp' ;	
  
 COL	 : ':' ;
 LABEL	 : ('a'..'z'|'A'..'Z')('a'..'z' | 'A'..'Z' | '0'..'9')* ;
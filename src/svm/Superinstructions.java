@@ -0,0 +1,184 @@
+package svm;
+
+import java.util.*;
+
+/*
+ * Fusion stage between the assembler and ExecuteVM.
+ *
+ * A superinstruction replaces a fixed sequence of instructions emitted by the
+ * code generator. Fusion is done in place: only the opcode word of the first
+ * instruction of the sequence is overwritten, all the other words (operands
+ * included) are left untouched. Code addresses therefore do not change, labels
+ * pointing inside a fused sequence still find the original instructions there,
+ * and the VM handler reads its operands from their original position before
+ * skipping the whole sequence.
+ *
+ * Which superinstructions are enabled is decided by an opcode pair/triple
+ * frequency profile of the program: static (every instruction counted once) or
+ * dynamic (every instruction weighted by its execution count).
+ */
+public class Superinstructions {
+
+    // fused opcodes, outside the range of the SVMParser token types
+    public static final int DUP = 100;        // stm ltm ltm (code written before the dup instruction)
+    public static final int LOADLOCAL = 101;  // lfp push k add lw
+    public static final int LOADOUTER = 102;  // lfp lw push k add lw
+    public static final int LOADOFFSET = 103; // push k add lw
+    public static final int STOREHEAP = 104;  // lhp sw lhp push k add shp
+    public static final int BUMPHP = 105;     // lhp push k add shp
+    public static final int BRANCHEQK = 106;  // push k beq l
+    public static final int RETURN = 107;     // sfp ltm lra js
+    public static final int ENTER = 108;      // cfp lra
+
+    public static final int FIRST = DUP;
+    public static final int LAST = ENTER;
+
+    private static final int[][] PATTERNS = {
+      {SVMParser.STORETM, SVMParser.LOADTM, SVMParser.LOADTM},
+      {SVMParser.LOADFP, SVMParser.PUSH, SVMParser.ADD, SVMParser.LOADW},
+      {SVMParser.LOADFP, SVMParser.LOADW, SVMParser.PUSH, SVMParser.ADD, SVMParser.LOADW},
+      {SVMParser.PUSH, SVMParser.ADD, SVMParser.LOADW},
+      {SVMParser.LOADHP, SVMParser.STOREW, SVMParser.LOADHP, SVMParser.PUSH, SVMParser.ADD, SVMParser.STOREHP},
+      {SVMParser.LOADHP, SVMParser.PUSH, SVMParser.ADD, SVMParser.STOREHP},
+      {SVMParser.PUSH, SVMParser.BRANCHEQ},
+      {SVMParser.STOREFP, SVMParser.LOADTM, SVMParser.LOADRA, SVMParser.JS},
+      {SVMParser.COPYFP, SVMParser.LOADRA}
+    };
+
+    private final double minShare;
+    private final Map<String, Long> pairs = new HashMap<>();
+    private final Map<String, Long> triples = new HashMap<>();
+    private final boolean[] enabled = new boolean[PATTERNS.length];
+    private final int[] fused = new int[PATTERNS.length];
+    private long profiled;
+    private boolean hasProfile;
+
+    public Superinstructions() {
+      this(0.01);
+    }
+
+    // minShare: minimum fraction of the profiled dispatches a superinstruction
+    // must be able to save in order to be enabled
+    public Superinstructions(double minShare) {
+      this.minShare = minShare;
+    }
+
+    // number of instructions replaced by a fused opcode
+    public static int instructions(int op) {
+      return PATTERNS[op - FIRST].length;
+    }
+
+    // number of code words covered by a fused opcode
+    public static int words(int op) {
+      int w = 0;
+      for (int p : PATTERNS[op - FIRST]) w += DecodedCode.hasOperand(p) ? 2 : 1;
+      return w;
+    }
+
+    // original instruction whose opcode word a fused opcode overwrites
+    public static int first(int op) {
+      return PATTERNS[op - FIRST][0];
+    }
+
+    public static boolean isFused(int op) {
+      return op >= FIRST && op <= LAST;
+    }
+
+    /*
+     * Collects the opcode pair/triple profile of the code and enables the
+     * superinstructions it makes worthwhile. weights, if not null, holds the
+     * execution count of every code address (dynamic profile).
+     */
+    public void profile(int[] code, long[] weights) {
+      pairs.clear();
+      triples.clear();
+      profiled = 0;
+      int prev2 = -1, prev1 = -1;
+      for (int a = 0; a < code.length; a += DecodedCode.hasOperand(code[a]) ? 2 : 1) {
+        int op = code[a];
+        if (op == 0) { prev1 = prev2 = -1; continue; } // unused code words
+        long w = weights == null ? 1 : weights[a];
+        profiled += w;
+        if (prev1 >= 0) pairs.merge(name(prev1) + " " + name(op), w, Long::sum);
+        if (prev2 >= 0) triples.merge(name(prev2) + " " + name(prev1) + " " + name(op), w, Long::sum);
+        prev2 = prev1;
+        prev1 = op;
+      }
+      for (int s = 0; s < PATTERNS.length; s++) {
+        // the leading pair/triple of the sequence bounds how often it occurs
+        int[] p = PATTERNS[s];
+        String lead = name(p[0]) + " " + name(p[1]);
+        Long count = p.length > 2 ? triples.get(lead + " " + name(p[2])) : pairs.get(lead);
+        enabled[s] = count != null && count * (p.length - 1) >= minShare * profiled;
+      }
+      hasProfile = true;
+    }
+
+    /*
+     * Returns a copy of code with the enabled superinstructions fused in.
+     * The code is profiled statically if no profile was collected before.
+     */
+    public int[] fuse(int[] code) {
+      if (!hasProfile) profile(code, null);
+      Arrays.fill(fused, 0);
+      int[] out = code.clone();
+      fuse(out, 0, out.length);
+      return out;
+    }
+
+    /*
+     * Fuses in place the sequences starting in [from, to), e.g. one function
+     * at a time (see TieredCode). The code may be running: instructions after
+     * the first opcode word of a sequence are left as they are.
+     */
+    public int fuse(int[] code, int from, int to) {
+      if (!hasProfile) profile(code, null);
+      int count = 0;
+      for (int a = from; a < to; a += DecodedCode.hasOperand(code[a]) ? 2 : 1) {
+        int best = -1;
+        for (int s = 0; s < PATTERNS.length; s++)
+          if (enabled[s] && matches(code, a, PATTERNS[s]) && (best < 0 || PATTERNS[s].length > PATTERNS[best].length))
+            best = s;
+        if (best >= 0) {
+          code[a] = FIRST + best; // only later positions are matched from now on
+          fused[best]++;
+          count++;
+        }
+      }
+      return count;
+    }
+
+    private static boolean matches(int[] code, int a, int[] pattern) {
+      for (int op : pattern) {
+        if (a >= code.length || code[a] != op) return false;
+        a += DecodedCode.hasOperand(op) ? 2 : 1;
+      }
+      return true;
+    }
+
+    static String name(int op) {
+      if (isFused(op)) return "super" + op;
+      String s = SVMParser.VOCABULARY.getLiteralName(op);
+      return s == null ? String.valueOf(op) : s.substring(1, s.length() - 1);
+    }
+
+    public String report() {
+      StringBuilder sb = new StringBuilder();
+      sb.append("Profiled instructions: ").append(profiled).append('\n');
+      sb.append("Most frequent pairs: ").append(top(pairs, 5)).append('\n');
+      sb.append("Most frequent triples: ").append(top(triples, 5)).append('\n');
+      for (int s = 0; s < PATTERNS.length; s++) {
+        StringBuilder seq = new StringBuilder();
+        for (int op : PATTERNS[s]) seq.append(seq.length() > 0 ? " " : "").append(name(op));
+        sb.append(enabled[s] ? "  fused " : "  off   ").append(fused[s]).append("x ").append(seq).append('\n');
+      }
+      return sb.toString();
+    }
+
+    private static String top(Map<String, Long> counts, int n) {
+      List<Map.Entry<String, Long>> entries = new ArrayList<>(counts.entrySet());
+      entries.sort((x, y) -> Long.compare(y.getValue(), x.getValue()));
+      return entries.subList(0, Math.min(n, entries.size())).toString();
+    }
+
+}
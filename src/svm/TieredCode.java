@@ -0,0 +1,157 @@
+package svm;
+
+import java.util.*;
+
+/*
+ * Code run by ExecuteVM.cpuTiered(): every function starts interpreted and
+ * is moved to a faster tier when its hotness (invocations plus back-edges)
+ * crosses the thresholds:
+ *
+ *   INTERPRETED  plain code, run by the interpreter
+ *   FUSED        superinstructions fused in place in the function, still
+ *                interpreted (see Superinstructions.fuse(code, from, to))
+ *   COMPILED     translated to JVM bytecode by JitCompiler
+ *
+ * Functions are the units of JitCompiler: the main program and the code of
+ * every functionN label. A function changes tier at its next invocation:
+ * running activations go on where they are (there is no on-stack
+ * replacement), which is always safe because fusion only overwrites the
+ * first opcode word of each sequence.
+ * A TieredCode collects the profile of the runs that use it, so it should
+ * not be shared by machines running at the same time.
+ */
+public class TieredCode {
+
+    public enum Tier { INTERPRETED, FUSED, COMPILED }
+
+    public static final int FUSE_THRESHOLD = 50;
+    public static final int JIT_THRESHOLD = 1000;
+
+    final int[] code;                     // interpreted code, fused function by function
+    private final int[] plain;
+    private final SortedSet<Integer> entrySet;
+    private final int[] entries;          // sorted entry addresses
+    private final String[] names;         // label of every entry
+    private final long[] invocations, backEdges;
+    private final Tier[] tiers;
+    private final int fuseThreshold, jitThreshold;
+    private final Superinstructions fuser = new Superinstructions();
+    private final Set<Integer> compiled = new HashSet<>();
+    private JitCode jit;
+    private int compilations;
+
+    public TieredCode(int[] code, Map<String, Integer> labels) {
+      this(code, labels, FUSE_THRESHOLD, JIT_THRESHOLD);
+    }
+
+    public TieredCode(int[] code, Map<String, Integer> labels, int fuseThreshold, int jitThreshold) {
+      this.plain = JitCompiler.unfuse(code);
+      this.code = plain.clone();
+      this.entrySet = JitCompiler.functionEntries(labels);
+      this.entries = entrySet.stream().mapToInt(Integer::intValue).toArray();
+      this.names = new String[entries.length];
+      names[0] = "main";
+      for (Map.Entry<String, Integer> label : labels.entrySet()) {
+        int u = Arrays.binarySearch(entries, label.getValue());
+        if (u > 0 && label.getKey().matches("function\\d+")) names[u] = label.getKey();
+      }
+      this.invocations = new long[entries.length];
+      this.backEdges = new long[entries.length];
+      this.tiers = new Tier[entries.length];
+      Arrays.fill(tiers, Tier.INTERPRETED);
+      this.fuseThreshold = fuseThreshold;
+      this.jitThreshold = jitThreshold;
+      fuser.profile(plain, null);
+      jit = JitCompiler.compile(plain, entrySet, compiled);
+    }
+
+    JitCode jit() {
+      return jit;
+    }
+
+    // js to address from interpreted code
+    void invoked(int address) {
+      int u = Arrays.binarySearch(entries, address);
+      if (u >= 0) {
+        invocations[u]++;
+        promote(u);
+      }
+    }
+
+    // taken branch from "from" back to "to"
+    void backEdge(int from) {
+      int u = unit(from);
+      if (u >= 0) {
+        backEdges[u]++;
+        promote(u);
+      }
+    }
+
+    // b from "from" to "to": the invocation of another function (a tail
+    // call, see JitCompiler), a back edge if it stays in the function
+    void branch(int from, int to) {
+      int u = unit(from), v = unit(to);
+      if (v != u && v >= 0) {
+        invocations[v]++;
+        promote(v);
+      } else if (to < from)
+        backEdge(from);
+    }
+
+    private int unit(int address) {
+      int u = Arrays.binarySearch(entries, address);
+      return u >= 0 ? u : -u - 2;
+    }
+
+    private void promote(int u) {
+      long hotness = invocations[u] + backEdges[u];
+      if (tiers[u] == Tier.INTERPRETED && hotness >= fuseThreshold) {
+        fuser.fuse(code, entries[u], u + 1 < entries.length ? entries[u + 1] : code.length);
+        tiers[u] = Tier.FUSED;
+      }
+      if (tiers[u] != Tier.COMPILED && hotness >= jitThreshold) {
+        // one hidden class with all the compiled functions, so that they call
+        // each other directly (the previous one is left to the GC); functions
+        // halfway there are taken along to save recompilations
+        for (int f = 0; f < entries.length; f++)
+          if (f == u || tiers[f] == Tier.FUSED && 2 * (invocations[f] + backEdges[f]) >= jitThreshold) {
+            compiled.add(entries[f]);
+            tiers[f] = Tier.COMPILED;
+          }
+        jit = JitCompiler.compile(plain, entrySet, compiled);
+        compilations++;
+      }
+    }
+
+    public Tier tier(String label) {
+      for (int u = 0; u < names.length; u++)
+        if (label.equals(names[u])) return tiers[u];
+      throw new IllegalArgumentException("Not a function: " + label);
+    }
+
+    // function label (or "main") -> current tier
+    public Map<String, Tier> tiers() {
+      Map<String, Tier> m = new LinkedHashMap<>();
+      for (int u = 0; u < names.length; u++) m.put(names[u], tiers[u]);
+      return m;
+    }
+
+    public long getInvocations(String label) {
+      return invocations[Arrays.asList(names).indexOf(label)];
+    }
+
+    public long getBackEdges(String label) {
+      return backEdges[Arrays.asList(names).indexOf(label)];
+    }
+
+    // counters stop at the COMPILED tier: calls inside translated code are not counted
+    public String report() {
+      StringBuilder sb = new StringBuilder();
+      sb.append(String.format("%-12s %7s %12s %12s  %s%n", "function", "entry", "invocations", "back-edges", "tier"));
+      for (int u = 0; u < names.length; u++)
+        sb.append(String.format("%-12s %7d %12d %12d  %s%n", names[u], entries[u], invocations[u], backEdges[u], tiers[u]));
+      sb.append("JIT compilations: ").append(compilations).append('\n');
+      return sb.toString();
+    }
+
+}
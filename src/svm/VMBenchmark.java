@@ -0,0 +1,150 @@
+package svm;
+
+import java.io.*;
+import java.nio.file.*;
+import java.util.*;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+import org.antlr.v4.runtime.*;
+
+/*
+ * Measures instructions per second of the VM execution engines (and of the
+ * JIT) on quicksort.fool.asm and on synthetic programs of growing size.
+ * The .asm files are written by "java compiler.FOOLCompiler file.fool -asm"
+ * (AsmFilesTest checks that they are up to date).
+ * Usage: java svm.VMBenchmark [rounds]
+ */
+public class VMBenchmark {
+
+    static final Map<String, BiConsumer<ExecuteVM, DecodedCode>> engines = new LinkedHashMap<>();
+    static {
+      engines.put("cpu", (vm, decoded) -> vm.cpu());
+      engines.put("decoded", ExecuteVM::cpuDecoded); // decoded once at load time
+      engines.put("cached", ExecuteVM::cpuCached);
+    }
+
+    public static void main(String[] args) throws Exception {
+      int rounds = args.length > 0 ? Integer.parseInt(args[0]) : 5;
+      startup("quicksort.fool.asm", 200, rounds);
+      for (String sample : new String[] {"quicksort.fool.asm", "prova.fool.asm", "prova4.fool.asm"})
+        bench(sample, assemble(CharStreams.fromFileName(sample)), 2000, rounds);
+      bench("loop (body 10)", assemble(CharStreams.fromString(loop(200000, 10))), 1, rounds);
+      bench("loop (body 1000)", assemble(CharStreams.fromString(loop(2000, 1000))), 1, rounds);
+    }
+
+    static SVMParser assemble(CharStream chars) {
+      SVMParser parser = new SVMParser(new CommonTokenStream(new SVMLexer(chars)));
+      parser.assembly();
+      return parser;
+    }
+
+    // time to get the code segment from the .asm text and from the object file
+    static void startup(String sample, int reps, int rounds) throws IOException {
+      Path object = Files.createTempFile("bench", ".svmo");
+      try {
+        SVMParser assembled = assemble(CharStreams.fromFileName(sample));
+        ObjectFile.write(object, assembled.code, assembled.getLabels());
+        long parse = Long.MAX_VALUE, load = Long.MAX_VALUE;
+        for (int r = 0; r < rounds + 2; r++) {
+          long start = System.nanoTime();
+          for (int i = 0; i < reps; i++) assemble(CharStreams.fromFileName(sample));
+          long middle = System.nanoTime();
+          for (int i = 0; i < reps; i++) ObjectFile.load(object);
+          long end = System.nanoTime();
+          if (r >= 2) {
+            parse = Math.min(parse, middle - start);
+            load = Math.min(load, end - middle);
+          }
+        }
+        System.out.printf("%s startup: assemble %.1f us, load object file %.1f us%n", sample, parse / 1e3 / reps, load / 1e3 / reps);
+      } finally {
+        Files.delete(object);
+      }
+    }
+
+    /*
+     * Counts down from n keeping the counter in the first global slot;
+     * every iteration also runs "body" groups of arithmetic instructions.
+     */
+    static String loop(int n, int body) {
+      StringBuilder sb = new StringBuilder();
+      sb.append("push 0\npush ").append(n).append('\n');
+      sb.append("loop:\nlfp\npush -2\nadd\nlw\npush 0\nbeq end\n");
+      for (int i = 0; i < body; i++) sb.append("push ").append(i).append("\npush 3\nmult\npush 2\nadd\npop\n");
+      sb.append("lfp\npush -2\nadd\nlw\npush 1\nsub\nlfp\npush -2\nadd\nsw\nb loop\n");
+      sb.append("end:\nhalt\n");
+      return sb.toString();
+    }
+
+    static void bench(String name, SVMParser assembled, int reps, int rounds) {
+      int[] code = assembled.code;
+      Superinstructions fuser = new Superinstructions();
+      int[] fused = fuser.fuse(code);
+      long instructions = dispatches(code) * reps;
+      System.out.println(name + ": " + instructions + " instructions per round, "
+        + dispatches(fused) * reps + " dispatches with superinstructions");
+      run("", code, instructions, reps, rounds);
+      run("+fused", fused, instructions, reps, rounds);
+      JitCode jit = JitCompiler.compile(code, assembled.getLabels());
+      runCompiled("jit", code, instructions, reps, rounds, vm -> vm.runJit(jit));
+      TieredCode tiers = new TieredCode(code, assembled.getLabels()); // the profile goes on across the rounds
+      runCompiled("tiered", code, instructions, reps, rounds, vm -> vm.runTiered(tiers));
+    }
+
+    static long dispatches(int[] code) {
+      PrintStream out = System.out;
+      ExecuteVM counter = new ExecuteVM(code);
+      System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+      try {
+        counter.cpuDecoded();
+      } finally {
+        System.setOut(out);
+      }
+      return counter.getExecuted();
+    }
+
+    static void run(String suffix, int[] code, long instructions, int reps, int rounds) {
+      PrintStream out = System.out;
+      DecodedCode decoded = new DecodedCode(code);
+      for (Map.Entry<String, BiConsumer<ExecuteVM, DecodedCode>> engine : engines.entrySet()) {
+        long best = Long.MAX_VALUE;
+        System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+        try {
+          for (int r = 0; r < rounds + 2; r++) { // first two rounds are warm-up
+            long start = System.nanoTime();
+            for (int i = 0; i < reps; i++) engine.getValue().accept(new ExecuteVM(code), decoded);
+            long time = System.nanoTime() - start;
+            if (r >= 2) best = Math.min(best, time);
+          }
+        } finally {
+          System.setOut(out);
+        }
+        print(engine.getKey() + suffix, best, instructions);
+      }
+    }
+
+    // all the rounds run on one large stack thread, as ExecuteVM.cpuJit() would
+    static void runCompiled(String name, int[] code, long instructions, int reps, int rounds, Consumer<ExecuteVM> engine) {
+      PrintStream out = System.out;
+      long[] best = {Long.MAX_VALUE};
+      System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+      try {
+        ExecuteVM.onLargeStack(() -> {
+          for (int r = 0; r < rounds + 2; r++) {
+            long start = System.nanoTime();
+            for (int i = 0; i < reps; i++) engine.accept(new ExecuteVM(code));
+            long time = System.nanoTime() - start;
+            if (r >= 2) best[0] = Math.min(best[0], time);
+          }
+        });
+      } finally {
+        System.setOut(out);
+      }
+      print(name, best[0], instructions);
+    }
+
+    static void print(String engine, long time, long instructions) {
+      System.out.printf("  %-16s %8.2f ms  %10.1f Minstr/s%n", engine, time / 1e6, instructions * 1e3 / time);
+    }
+
+}
@@ -0,0 +1,14 @@
+package svm;
+
+public class VMException extends RuntimeException {
+
+	private static final long serialVersionUID = 1L;
+
+	public VMException(String message) {
+		super(message);
+	}
+
+	public VMException(String message, Throwable cause) {
+		super(message, cause);
+	}
+}
@@ -0,0 +1,24 @@
+package compiler;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.IOException;
+import java.nio.file.*;
+import org.antlr.v4.runtime.CharStreams;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+// the .asm files of the repository are the input of svm.VMBenchmark and
+// svm.AssemblerBenchmark: they must be what the compiler generates now
+class AsmFilesTest {
+
+	@ParameterizedTest
+	@ValueSource(strings = {"quicksort.fool", "prova.fool", "prova4.fool"})
+	void asmIsCurrent(String file) throws IOException {
+		FOOLCompiler compiler = new FOOLCompiler();
+		compiler.compileQuietly(CharStreams.fromFileName(file));
+		assertEquals(compiler.getAsm(), Files.readString(Path.of(file + ".asm")),
+			file + ".asm is out of date, regenerate it with: java compiler.FOOLCompiler " + file + " -asm");
+	}
+
+}
@@ -0,0 +1,63 @@
+package compiler;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.*;
+import org.antlr.v4.runtime.CharStreams;
+import org.junit.jupiter.api.Test;
+import svm.*;
+
+// objects created inside methods, with and without inlining and devirtualization
+class ClassTest {
+
+	private static List<String> run(String source, int inlineBudget, boolean devirtualize) {
+		FOOLCompiler compiler = new FOOLCompiler();
+		compiler.setInlineBudget(inlineBudget);
+		compiler.setDevirtualize(devirtualize);
+		Program program = compiler.compile(CharStreams.fromString(source));
+		assertNotNull(program, compiler.getErrors() + " compilation errors");
+		List<String> output = new ArrayList<>();
+		new ExecuteVM(program, OutputSink.to(output)).cpuDecoded(program.decoded());
+		return output;
+	}
+
+	private static void assertOutput(List<String> expected, String source) {
+		assertEquals(expected, run(source, InliningASTVisitor.BUDGET, true));
+		assertEquals(expected, run(source, 0, true), "without inlining");
+		assertEquals(expected, run(source, 0, false), "without inlining and devirtualization");
+	}
+
+	@Test
+	void newOfOwnClassInMethod() {
+		assertOutput(List.of("4"), "let\n" +
+			"  class Pair (a:int, b:int) {\n" +
+			"    fun first:int () a;\n" +
+			"    fun swap:Pair () new Pair(b, a);\n" +
+			"  }\n" +
+			"  var p:Pair = new Pair(3, 4);\n" +
+			"  var q:Pair = p.swap();\n" +
+			"in print(q.first());\n");
+	}
+
+	@Test
+	void newInMethodsWithUnreachableMethods() {
+		assertOutput(List.of("2", "30"), "let\n" +
+			"  class B (y:int) {\n" +
+			"    fun get:int () y;\n" +
+			"    fun unused:int () 0;\n" +
+			"  }\n" +
+			"  class A (x:int) {\n" +
+			"    fun get:int () x;\n" +
+			"    fun never:int () x + 1;\n" +
+			"    fun tens:B () new B(x * 10);\n" +
+			"    fun again:A () new A(x);\n" +
+			"    fun unused:int () 0;\n" +
+			"  }\n" +
+			"  var a:A = new A(3);\n" +
+			"  var b:B = a.tens();\n" +
+			"  var d:A = new A(2);\n" +
+			"  var c:A = d.again();\n" +
+			"in print(print(c.get()) + b.get() - 2);\n");
+	}
+
+}
@@ -0,0 +1,30 @@
+package compiler;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.*;
+import org.antlr.v4.runtime.CharStreams;
+import org.junit.jupiter.api.Test;
+
+class FOOLCompilerTest {
+
+	// compileQuietly prints nothing, not even the syntax errors of ANTLR
+	@Test
+	void compileQuietlyPrintsNothing() {
+		PrintStream out = System.out, err = System.err;
+		ByteArrayOutputStream printed = new ByteArrayOutputStream();
+		FOOLCompiler compiler = new FOOLCompiler();
+		try {
+			System.setOut(new PrintStream(printed, true));
+			System.setErr(new PrintStream(printed, true));
+			assertThrows(IllegalArgumentException.class, () -> compiler.compileQuietly(CharStreams.fromString("print(1 +);")));
+			assertThrows(IllegalArgumentException.class, () -> compiler.compileQuietly(CharStreams.fromString("print(if 1 then {1} else {2});")));
+		} finally {
+			System.setOut(out);
+			System.setErr(err);
+		}
+		assertEquals("", printed.toString());
+		assertEquals(1, compiler.typeErrors);
+	}
+
+}
@@ -0,0 +1,75 @@
+package compiler;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.*;
+import org.antlr.v4.runtime.CharStreams;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.EnumSource;
+import compiler.IR.Code;
+import compiler.PeepholeOptimizer.Rule;
+import svm.*;
+
+/*
+ * Every sample (the FOOL programs of the repository compiled without the
+ * optimizer, and PeepholeOptimizer.codeSamples()) is run without
+ * optimization, with each rule alone and with all of them: the outputs must
+ * be the same, and every rule must be hit by some sample.
+ */
+class PeepholeOptimizerTest {
+
+	private static final String[] FILES = {"quicksort.fool", "prova.fool", "prova2.fool", "prova3.fool", "prova4.fool"};
+
+	private static final Map<String, Code> samples = new LinkedHashMap<>();
+
+	@BeforeAll
+	static void compileSamples() throws Exception {
+		for (String file : FILES) {
+			FOOLCompiler compiler = new FOOLCompiler();
+			compiler.setPeephole(null);
+			compiler.compileQuietly(CharStreams.fromFileName(file));
+			samples.put(file, compiler.getCode());
+		}
+		for (Code code : PeepholeOptimizer.codeSamples()) samples.put(code.toString().replace('\n', ' '), code);
+	}
+
+	private static List<String> run(Code code) {
+		List<String> output = new ArrayList<>();
+		new ExecuteVM(new Program(code.encode(), Map.of()), OutputSink.to(output)).cpuDecoded();
+		return output;
+	}
+
+	// hits of the rules on all the samples, checking the outputs
+	private static PeepholeOptimizer optimizeAll(Set<Rule> rules) {
+		PeepholeOptimizer peephole = new PeepholeOptimizer(PeepholeOptimizer.WINDOW, rules);
+		for (Map.Entry<String, Code> sample : samples.entrySet()) {
+			List<String> expected = run(sample.getValue());
+			Code optimized = peephole.optimize(sample.getValue().copy());
+			assertEquals(expected, run(optimized), rules + " on " + sample.getKey());
+		}
+		return peephole;
+	}
+
+	@ParameterizedTest
+	@EnumSource(Rule.class)
+	void ruleAlonePreservesOutputAndIsCovered(Rule rule) {
+		PeepholeOptimizer peephole = optimizeAll(EnumSet.of(rule));
+		assertTrue(peephole.getHits(rule) > 0, rule + " not hit by any sample");
+	}
+
+	@Test
+	void allRulesPreserveOutput() {
+		optimizeAll(EnumSet.allOf(Rule.class)); // rules can hide each other: coverage is checked one rule at a time
+	}
+
+	@Test
+	void optimizedCodeIsNotLonger() {
+		for (Map.Entry<String, Code> sample : samples.entrySet()) {
+			Code optimized = new PeepholeOptimizer().optimize(sample.getValue().copy());
+			assertTrue(optimized.size() <= sample.getValue().size(), sample.getKey());
+		}
+	}
+
+}
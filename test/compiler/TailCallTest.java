@@ -0,0 +1,109 @@
+package compiler;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.*;
+import org.antlr.v4.runtime.CharStreams;
+import org.junit.jupiter.api.Test;
+import compiler.IR.Code;
+import svm.*;
+
+/*
+ * Tail recursion a million calls deep in a 4096 words address space: the
+ * calls compiled as jumps reuse the frame, so the stack never grows past its
+ * first segment. Without tail calls the same programs run out of memory.
+ */
+class TailCallTest {
+
+	private static final int CALLS = 1_000_000;
+	private static final int MEMORY = 4096;
+
+	private static final String SUM = "let\n" +
+		"  fun sum:int (n:int, acc:int) if (n == 0) then { acc } else { sum(n - 1, acc + n - n / 2 * 2) };\n" +
+		"in print(sum(" + CALLS + ", 0));\n";
+	private static final String NESTED = "let\n" +
+		"  fun scale:int (k:int, n:int)\n" +
+		"    let\n" +
+		"      fun go:int (m:int, acc:int) if (m == 0) then { acc } else { go(m - 1, acc + k) };\n" +
+		"    in go(n, 0);\n" +
+		"in print(scale(3, " + CALLS + "));\n";
+	// go enters pairs shifting the frame, pairs enters sum past its cfp lra
+	private static final String SIBLINGS = "let\n" +
+		"  fun sum:int (n:int, acc:int) if (n == 0) then { acc } else { sum(n - 1, acc + 1) };\n" +
+		"  fun pairs:int (n:int, acc:int) if (n <= 1) then { sum(acc, n) } else { pairs(n - 2, acc + 1) };\n" +
+		"  fun go:int (n:int) if (n <= 0) then { go(1 - n) } else { pairs(n, 0) };\n" +
+		"in print(go(" + CALLS + "));\n";
+	private static final String METHOD = "let\n" +
+		"  class Counter (step:int) {\n" +
+		"    fun run:int (n:int, acc:int, next:Counter)\n" +
+		"      if (n <= 0) then { acc } else { next.run(n - 1, acc + step, next) };\n" +
+		"  }\n" +
+		"  var c:Counter = new Counter(3);\n" +
+		"in print(c.run(" + CALLS + ", 0, c));\n";
+
+	// runs the program with every engine: the same output, and a stack within the first segment
+	private static void assertRunsInPlace(String source, String expected) {
+		FOOLCompiler compiler = new FOOLCompiler();
+		compiler.compileQuietly(CharStreams.fromString(source));
+		assertTrue(compiler.getTailCalls() > 0);
+		Code code = compiler.getCode();
+		int[] words = code.encode();
+		Map<String, Integer> labels = code.getLabels();
+		for (String engine : List.of("cpu", "decoded", "cached", "jit", "tiered")) {
+			List<String> output = new ArrayList<>();
+			ExecuteVM vm = new ExecuteVM(words, MEMORY, GarbageCollector.THRESHOLD, OutputSink.to(output));
+			switch (engine) {
+				case "cpu": vm.cpu(); break;
+				case "decoded": vm.cpuDecoded(); break;
+				case "cached": vm.cpuCached(); break;
+				case "tiered": vm.cpuTiered(new TieredCode(words, labels)); break;
+				default: vm.cpuJit(JitCompiler.compile(words, labels));
+			}
+			assertEquals(List.of(expected), output, engine);
+			assertTrue(vm.getStackHighWater() <= ExecuteVM.SEGMENT, engine + ": stack grew to " + vm.getStackHighWater() + " words");
+		}
+	}
+
+	@Test
+	void functionRecursesInPlace() {
+		assertRunsInPlace(SUM, Integer.toString(CALLS / 2));
+	}
+
+	@Test
+	void nestedFunctionRecursesInPlace() {
+		assertRunsInPlace(NESTED, Integer.toString(3 * CALLS));
+	}
+
+	@Test
+	void siblingsCallEachOtherInPlace() {
+		assertRunsInPlace(SIBLINGS, Integer.toString(CALLS / 2));
+	}
+
+	// the callee of a tail call takes the place of the caller on the shadow stack of the profiler
+	@Test
+	void profilerCountsTailCalls() {
+		Program program = new FOOLCompiler().compileQuietly(CharStreams.fromString(SIBLINGS.replace(Integer.toString(CALLS), "100")));
+		Profiler profiler = new Profiler(program.getLabels());
+		List<String> output = new ArrayList<>();
+		new ExecuteVM(program, OutputSink.to(output)).cpuProfiled(profiler);
+		assertEquals(List.of("50"), output);
+		String report = profiler.report();
+		for (String edge : List.of("function2 -> function1 1", "function1 -> function1 50", "function1 -> function0 1", "function0 -> function0 50"))
+			assertTrue(report.replaceAll(" +", " ").contains(edge + "\n"), edge + " in\n" + report);
+	}
+
+	@Test
+	void methodRecursesInPlace() {
+		assertRunsInPlace(METHOD, Integer.toString(3 * CALLS));
+	}
+
+	@Test
+	void ordinaryCallsRunOutOfMemory() {
+		FOOLCompiler compiler = new FOOLCompiler();
+		compiler.setTailCalls(false);
+		Program program = compiler.compileQuietly(CharStreams.fromString(SUM));
+		ExecuteVM vm = new ExecuteVM(program, MEMORY, OutputSink.DISCARD);
+		assertThrows(VMException.class, () -> vm.cpuDecoded(program.decoded()));
+	}
+
+}
@@ -0,0 +1,46 @@
+package compiler;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import org.antlr.v4.runtime.CharStreams;
+import org.junit.jupiter.api.Test;
+
+// class types: without inheritance a class is compatible only with itself (and null)
+class TypeCheckTest {
+
+	private static final String CLASSES =
+		"  class A (x:int) { fun get:int () x; }\n" +
+		"  class B (y:int) { fun other:int () y + 100; }\n";
+
+	private static FOOLCompiler compile(String source) {
+		FOOLCompiler compiler = new FOOLCompiler();
+		compiler.compile(CharStreams.fromString(source));
+		return compiler;
+	}
+
+	@Test
+	void rejectsObjectOfAnotherClassInVariable() {
+		FOOLCompiler compiler = compile("let\n" + CLASSES + "  var a:A = new B(5);\nin print(a.get());\n");
+		assertEquals(1, compiler.typeErrors);
+	}
+
+	@Test
+	void rejectsObjectOfAnotherClassAsArgument() {
+		FOOLCompiler compiler = compile("let\n" + CLASSES + "  fun f:int (a:A) a.get();\nin print(f(new B(5)));\n");
+		assertEquals(1, compiler.typeErrors);
+	}
+
+	@Test
+	void rejectsObjectOfAnotherClassAsResult() {
+		FOOLCompiler compiler = compile("let\n" + CLASSES + "  fun f:A () new B(5);\n  var a:A = f();\nin print(a.get());\n");
+		assertEquals(1, compiler.typeErrors);
+	}
+
+	@Test
+	void acceptsSameClassAndNull() {
+		FOOLCompiler compiler = compile("let\n" + CLASSES +
+			"  var a:A = new A(5);\n  var b:B = null;\n  fun f:int (a:A) a.get();\nin print(f(a));\n");
+		assertEquals(0, compiler.getErrors());
+	}
+
+}
@@ -0,0 +1,35 @@
+package svm;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import org.junit.jupiter.api.Test;
+
+// jumps that do not land on an instruction stop every engine with a VMException
+class BadJumpTest {
+
+    // push 100; js (past the end of the code)
+    private static final int[] OUT_OF_CODE = {SVMParser.PUSH, 100, SVMParser.JS, SVMParser.HALT};
+    // push 1; js (into the operand of the push)
+    private static final int[] INTO_OPERAND = {SVMParser.PUSH, 1, SVMParser.JS, SVMParser.HALT};
+
+    @Test
+    void outOfCode() {
+      assertThrows(VMException.class, () -> new ExecuteVM(OUT_OF_CODE).cpu());
+      assertThrows(VMException.class, () -> new ExecuteVM(OUT_OF_CODE).cpuDecoded());
+      assertThrows(VMException.class, () -> new ExecuteVM(OUT_OF_CODE).cpuCached());
+    }
+
+    @Test
+    void intoOperand() {
+      assertThrows(VMException.class, () -> new ExecuteVM(INTO_OPERAND).cpuDecoded());
+      assertThrows(VMException.class, () -> new ExecuteVM(INTO_OPERAND).cpuCached());
+    }
+
+    @Test
+    void branchIntoOperand() {
+      // b 1; halt
+      int[] code = {SVMParser.BRANCH, 1, SVMParser.HALT};
+      assertThrows(VMException.class, () -> new ExecuteVM(code).cpuDecoded());
+    }
+
+}
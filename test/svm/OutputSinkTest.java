@@ -0,0 +1,29 @@
+package svm;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.*;
+import org.junit.jupiter.api.Test;
+
+class OutputSinkTest {
+
+    // push 42; print; halt
+    private static final int[] PRINT_42 = {SVMParser.PUSH, 42, SVMParser.PRINT, SVMParser.HALT};
+
+    @Test
+    void standardFollowsSystemOut() {
+      PrintStream out = System.out;
+      ByteArrayOutputStream first = new ByteArrayOutputStream(), second = new ByteArrayOutputStream();
+      try {
+        System.setOut(new PrintStream(first, true));
+        new ExecuteVM(PRINT_42).cpu();
+        System.setOut(new PrintStream(second, true));
+        new ExecuteVM(PRINT_42).cpu();
+      } finally {
+        System.setOut(out);
+      }
+      assertEquals("42", first.toString().trim());
+      assertEquals("42", second.toString().trim());
+    }
+
+}